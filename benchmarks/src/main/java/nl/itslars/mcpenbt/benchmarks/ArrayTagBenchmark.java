@@ -0,0 +1,138 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.tags.ByteArrayTag;
+import nl.itslars.mcpenbt.tags.IntArrayTag;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for decoding and encoding large IntArrayTags and ByteArrayTags.
+ * The legacy benchmarks replicate the former per-element implementation, as a baseline for the bulk implementation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArrayTagBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int length;
+
+    private IntArrayTag intArrayTag;
+    private ByteArrayTag byteArrayTag;
+    private byte[] intArrayBytes;
+    private byte[] byteArrayBytes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        int[] ints = new int[length];
+        for (int i = 0; i < length; i++) {
+            ints[i] = random.nextInt();
+        }
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+
+        intArrayTag = new IntArrayTag("ints", ints);
+        byteArrayTag = new ByteArrayTag("bytes", bytes);
+        intArrayBytes = NBTUtil.write(intArrayTag);
+        byteArrayBytes = NBTUtil.write(byteArrayTag);
+    }
+
+    @Benchmark
+    public Tag readIntArray() {
+        return NBTUtil.read(false, intArrayBytes);
+    }
+
+    @Benchmark
+    public Tag readIntArrayStream() {
+        return NBTUtil.read(false, new ByteArrayInputStream(intArrayBytes));
+    }
+
+    @Benchmark
+    public int[] readIntArrayLegacy(Blackhole blackhole) throws IOException {
+        InputStream stream = new ByteArrayInputStream(intArrayBytes);
+        blackhole.consume(readLegacyHeader(stream));
+        byte[] arrayLength = new byte[]{(byte) stream.read(), (byte) stream.read(), (byte) stream.read(), (byte) stream.read()};
+        int length = ByteBuffer.wrap(arrayLength).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        int[] array = new int[length];
+        for (int i = 0; i < length; i++) {
+            byte[] buffer = new byte[]{(byte) stream.read(), (byte) stream.read(), (byte) stream.read(), (byte) stream.read()};
+            array[i] = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        }
+        return array;
+    }
+
+    @Benchmark
+    public byte[] writeIntArray() {
+        return NBTUtil.write(intArrayTag);
+    }
+
+    @Benchmark
+    public byte[] writeIntArrayLegacy() {
+        int[] values = intArrayTag.getValues();
+        ByteBuffer valuesBuffer = ByteBuffer.allocate(4 + 4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        valuesBuffer.putInt(values.length);
+        for (int value : values) {
+            valuesBuffer.putInt(value);
+        }
+        return valuesBuffer.array();
+    }
+
+    @Benchmark
+    public Tag readByteArray() {
+        return NBTUtil.read(false, byteArrayBytes);
+    }
+
+    @Benchmark
+    public Tag readByteArrayStream() {
+        return NBTUtil.read(false, new ByteArrayInputStream(byteArrayBytes));
+    }
+
+    @Benchmark
+    public byte[] readByteArrayLegacy(Blackhole blackhole) throws IOException {
+        InputStream stream = new ByteArrayInputStream(byteArrayBytes);
+        blackhole.consume(readLegacyHeader(stream));
+        byte[] arrayLength = new byte[]{(byte) stream.read(), (byte) stream.read(), (byte) stream.read(), (byte) stream.read()};
+        int length = ByteBuffer.wrap(arrayLength).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        byte[] array = new byte[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = (byte) stream.read();
+        }
+        return array;
+    }
+
+    @Benchmark
+    public byte[] writeByteArray() {
+        return NBTUtil.write(byteArrayTag);
+    }
+
+    /**
+     * Reads the type ID and name of a tag, the way the former implementation read them
+     * @param stream The input stream
+     * @return The tag name
+     * @throws IOException If the input stream threw an exception
+     */
+    private static String readLegacyHeader(InputStream stream) throws IOException {
+        stream.read();
+        byte[] stringLength = new byte[]{(byte) stream.read(), (byte) stream.read()};
+        short length = ByteBuffer.wrap(stringLength).order(ByteOrder.LITTLE_ENDIAN).getShort();
+        byte[] stringBuffer = new byte[length];
+        for (int i = 0; i < length; i++) {
+            stringBuffer[i] = (byte) stream.read();
+        }
+        return new String(stringBuffer);
+    }
+}
@@ -0,0 +1,60 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTResult;
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading and writing batches of level.dat-sized blobs, with an increasing amount of threads
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    private static final int BATCH_SIZE = 2000;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private List<byte[]> blobs;
+    private List<Tag> tags;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(threads);
+        byte[] bytes = Fixtures.levelDatBytes();
+        Tag tag = NBTUtil.read(false, bytes);
+        blobs = new ArrayList<>(BATCH_SIZE);
+        tags = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            blobs.add(bytes);
+            tags.add(tag);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<NBTResult<Tag>> readAll() {
+        return NBTUtil.readAll(false, blobs, pool);
+    }
+
+    @Benchmark
+    public List<NBTResult<byte[]>> writeAll() {
+        return NBTUtil.writeAll(tags, pool);
+    }
+}
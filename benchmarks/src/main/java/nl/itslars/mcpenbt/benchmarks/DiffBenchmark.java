@@ -0,0 +1,96 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTDiff;
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.tags.CompoundTag;
+import nl.itslars.mcpenbt.tags.ListTag;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for sending a tree of which a single, deeply nested value changed: either the whole tree is written
+ * ("write"), or only the diff is computed and written ("diff"). "diffFrozen" does the same for frozen copies of both
+ * trees, of which the hashes stay cached. The diff is applied to raw bytes ("applyBytes") and to a frozen copy of the
+ * old tree ("applyFrozen").
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+
+    @Param({"deep", "wide", "list", "levelDat"})
+    public String shape;
+
+    private Tag tag;
+    private Tag changed;
+    private byte[] bytes;
+    private Tag frozen;
+    private Tag frozenChanged;
+    private NBTDiff diff;
+
+    @Setup
+    public void setup() {
+        tag = Fixtures.create(shape);
+        bytes = NBTUtil.write(tag);
+        changed = NBTUtil.read(false, bytes);
+        innermost(changed.getAsCompound()).putInt("changed", 1);
+        frozen = NBTUtil.read(false, bytes).freeze();
+        frozenChanged = NBTUtil.read(false, NBTUtil.write(changed)).freeze();
+        diff = NBTDiff.compute(tag, changed);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return NBTUtil.write(changed);
+    }
+
+    @Benchmark
+    public byte[] diff() {
+        return NBTDiff.compute(tag, changed).getBytes();
+    }
+
+    @Benchmark
+    public byte[] diffFrozen() {
+        return NBTDiff.compute(frozen, frozenChanged).getBytes();
+    }
+
+    @Benchmark
+    public byte[] applyBytes() {
+        return diff.apply(bytes.clone(), false);
+    }
+
+    @Benchmark
+    public Tag applyFrozen() {
+        return diff.apply(frozen);
+    }
+
+    /**
+     * Finds the compound that is reached by following the last compound child, or the last element of the last list
+     * of compounds, of every compound
+     * @param compound The root compound
+     * @return The innermost compound
+     */
+    private static CompoundTag innermost(CompoundTag compound) {
+        while (true) {
+            CompoundTag next = null;
+            for (Tag child : compound) {
+                if (child instanceof CompoundTag) {
+                    next = (CompoundTag) child;
+                } else if (child instanceof ListTag && ((ListTag<?>) child).getElementType() == TagType.TAG_COMPOUND
+                        && ((ListTag<?>) child).size() > 0) {
+                    List<?> elements = ((ListTag<?>) child).getElements();
+                    next = (CompoundTag) elements.get(elements.size() - 1);
+                }
+            }
+            if (next == null) return compound;
+            compound = next;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTPath;
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for retrieving a single nested value from the level.dat fixture: by path extraction, by a lazy read,
+ * and by a full read followed by lookups
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractBenchmark {
+
+    private static final NBTPath PATH = NBTPath.compile("abilities.flySpeed");
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        bytes = Fixtures.levelDatBytes();
+    }
+
+    @Benchmark
+    public Tag extract() {
+        return NBTUtil.extract(PATH, false, bytes);
+    }
+
+    @Benchmark
+    public Tag readLazyAndGet() {
+        return NBTUtil.readLazy(false, bytes).getAsCompound().getCompound("abilities").getByName("flySpeed").get();
+    }
+
+    @Benchmark
+    public Tag readAndGet() {
+        return NBTUtil.read(false, bytes).getAsCompound().getCompound("abilities").getByName("flySpeed").get();
+    }
+}
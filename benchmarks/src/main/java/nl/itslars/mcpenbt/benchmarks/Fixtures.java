@@ -0,0 +1,162 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.tags.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the NBT trees that the benchmarks operate on
+ */
+final class Fixtures {
+
+    private Fixtures() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Creates the tree with the given shape
+     * @param shape One of small, deep, wide, list, arrays and levelDat
+     * @return The tree
+     */
+    static Tag create(String shape) {
+        switch (shape) {
+            case "small":
+                return small();
+            case "deep":
+                return deep(64);
+            case "wide":
+                return wide(1024);
+            case "list":
+                return list(4096);
+            case "arrays":
+                return arrays(65536);
+            case "levelDat":
+                return levelDat();
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+
+    /**
+     * Creates a small compound, like the NBT of a single item
+     * @return The tree
+     */
+    static CompoundTag small() {
+        CompoundTag compound = new CompoundTag("", new ArrayList<>());
+        compound.putString("Name", "minecraft:diamond_sword");
+        compound.putByte("Count", (byte) 1);
+        compound.putShort("Damage", (short) 0);
+        compound.putByte("WasPickedUp", (byte) 0);
+        return compound;
+    }
+
+    /**
+     * Creates a chain of nested compounds
+     * @param depth The amount of nested compounds
+     * @return The tree
+     */
+    static CompoundTag deep(int depth) {
+        CompoundTag compound = small();
+        for (int i = 0; i < depth; i++) {
+            List<Tag> elements = new ArrayList<>();
+            elements.add(new IntTag("depth", i));
+            elements.add(new CompoundTag("child", new ArrayList<>(compound.getElements())));
+            compound = new CompoundTag("", elements);
+        }
+        return compound;
+    }
+
+    /**
+     * Creates a compound with many keys of different types
+     * @param width The amount of keys
+     * @return The tree
+     */
+    static CompoundTag wide(int width) {
+        CompoundTag compound = new CompoundTag("", new ArrayList<>());
+        for (int i = 0; i < width; i++) {
+            switch (i % 4) {
+                case 0:
+                    compound.putInt("key" + i, i);
+                    break;
+                case 1:
+                    compound.putLong("key" + i, i);
+                    break;
+                case 2:
+                    compound.putString("key" + i, "value" + i);
+                    break;
+                default:
+                    compound.putDouble("key" + i, i);
+            }
+        }
+        return compound;
+    }
+
+    /**
+     * Creates a compound with a long list of compounds, and a long list of floats
+     * @param length The length of the lists
+     * @return The tree
+     */
+    static CompoundTag list(int length) {
+        List<Tag> compounds = new ArrayList<>(length);
+        float[] floats = new float[length];
+        for (int i = 0; i < length; i++) {
+            compounds.add(new CompoundTag(null, new ArrayList<>(small().getElements())));
+            floats[i] = i;
+        }
+        List<Tag> elements = new ArrayList<>();
+        elements.add(new ListTag<>("compounds", TagType.TAG_COMPOUND, compounds));
+        elements.add(ListTag.ofFloats("floats", floats));
+        return new CompoundTag("", elements);
+    }
+
+    /**
+     * Creates a compound with a large int array and a large byte array
+     * @param length The length of the arrays
+     * @return The tree
+     */
+    static CompoundTag arrays(int length) {
+        Random random = new Random(0);
+        int[] ints = new int[length];
+        for (int i = 0; i < length; i++) {
+            ints[i] = random.nextInt();
+        }
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+
+        CompoundTag compound = new CompoundTag("", new ArrayList<>());
+        compound.putIntArray("ints", ints);
+        compound.putByteArray("bytes", bytes);
+        return compound;
+    }
+
+    /**
+     * Reads the level.dat file of the library tests. Its location can be changed with the "level.dat" system property.
+     * @return The tree
+     */
+    static Tag levelDat() {
+        return NBTUtil.read(false, levelDatBytes());
+    }
+
+    /**
+     * Reads the NBT bytes (without header) of the level.dat file of the library tests
+     * @return The bytes
+     */
+    static byte[] levelDatBytes() {
+        try {
+            byte[] bytes = Files.readAllBytes(Paths.get(System.getProperty("level.dat", "../src/test/level.dat")));
+            byte[] result = new byte[bytes.length - 8];
+            System.arraycopy(bytes, 8, result, 0, result.length);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
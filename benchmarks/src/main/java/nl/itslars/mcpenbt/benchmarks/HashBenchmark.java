@@ -0,0 +1,62 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.tags.CompoundTag;
+import nl.itslars.mcpenbt.tags.StringTag;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for hashing and comparing trees, like when they are used as keys of a hash map.
+ * The "different" tree only differs from the original tree in its last element.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    @Param({"wide", "list", "levelDat"})
+    public String shape;
+
+    private Tag tag;
+    private Tag copy;
+    private Tag different;
+
+    @Setup
+    public void setup() {
+        tag = Fixtures.create(shape);
+        byte[] bytes = NBTUtil.write(tag);
+        copy = NBTUtil.read(false, bytes);
+        CompoundTag compound = NBTUtil.read(false, bytes).getAsCompound();
+        List<Tag> elements = compound.getElements();
+        Tag last = elements.remove(elements.size() - 1);
+        elements.add(new StringTag(last.getName(), "different"));
+        different = compound;
+
+        // Trees that are used as keys have their hashes computed already
+        tag.hashCode();
+        copy.hashCode();
+        different.hashCode();
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return tag.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        return tag.equals(copy);
+    }
+
+    @Benchmark
+    public boolean equalsDifferent() {
+        return tag.equals(different);
+    }
+}
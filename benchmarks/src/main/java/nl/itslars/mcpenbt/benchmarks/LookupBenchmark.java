@@ -0,0 +1,53 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.tags.CompoundTag;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for looking up tags by name in compounds of different widths
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    @Param({"4", "64", "1024"})
+    public int width;
+
+    private CompoundTag compound;
+    private String lastKey;
+
+    @Setup
+    public void setup() {
+        compound = Fixtures.wide(width);
+        // The last key is the worst case for a linear scan. Its type is int, as width is a multiple of 4
+        lastKey = "key" + (width - 4);
+    }
+
+    @Benchmark
+    public Optional<Tag> getByName() {
+        return compound.getByName(lastKey);
+    }
+
+    @Benchmark
+    public int getByNameChain() {
+        return compound.getByName(lastKey).get().getAsInt().getValue();
+    }
+
+    @Benchmark
+    public int getInt() {
+        return compound.getInt(lastKey, 0);
+    }
+
+    @Benchmark
+    public boolean containsMissing() {
+        return compound.contains("missing");
+    }
+}
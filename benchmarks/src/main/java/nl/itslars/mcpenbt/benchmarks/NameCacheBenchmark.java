@@ -0,0 +1,46 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NameCache;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading trees with and without a name cache. The "list" shape repeats the same few names many
+ * times, the "wide" shape has only unique names.
+ * Run with "-prof gc" to see the allocations that the cache saves.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NameCacheBenchmark {
+
+    @Param({"wide", "list", "levelDat"})
+    public String shape;
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private byte[] bytes;
+    private NameCache nameCache;
+
+    @Setup
+    public void setup() {
+        bytes = NBTUtil.write(Fixtures.create(shape));
+        nameCache = cache ? new NameCache(4096) : null;
+    }
+
+    @Benchmark
+    public Tag read() throws IOException {
+        NBTInput input = NBTInput.of(bytes);
+        input.setNameCache(nameCache);
+        return Tag.read(input);
+    }
+}
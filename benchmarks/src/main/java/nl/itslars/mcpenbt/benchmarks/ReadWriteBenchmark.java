@@ -0,0 +1,47 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading, writing and round-tripping NBT trees of different shapes.
+ * Run with "-prof gc" to report the allocation rate as well.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadWriteBenchmark {
+
+    @Param({"small", "deep", "wide", "list", "arrays", "levelDat"})
+    public String shape;
+
+    private Tag tag;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        tag = Fixtures.create(shape);
+        bytes = NBTUtil.write(tag);
+    }
+
+    @Benchmark
+    public Tag read() {
+        return NBTUtil.read(false, bytes);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return NBTUtil.write(tag);
+    }
+
+    @Benchmark
+    public byte[] roundTrip() {
+        return NBTUtil.write(NBTUtil.read(false, bytes));
+    }
+}
@@ -0,0 +1,118 @@
+package nl.itslars.mcpenbt.benchmarks;
+
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.chunk.SubChunk;
+import nl.itslars.mcpenbt.chunk.SubChunkStorage;
+import nl.itslars.mcpenbt.io.PaletteCache;
+import nl.itslars.mcpenbt.tags.CompoundTag;
+import nl.itslars.mcpenbt.tags.Tag;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for decoding and encoding a synthetic 16x16x16 sub-chunk, with palettes that take 1, 5 and 16 bits per
+ * block. The "manual" benchmark decodes the palette one compound at a time with {@link NBTUtil#read(boolean, java.io.InputStream)},
+ * and unpacks the indices by hand. The "decodeCached" benchmark looks up the palette in a {@link PaletteCache}.
+ * Run with "-prof gc" to see the allocations that the cache saves.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubChunkBenchmark {
+
+    @Param({"2", "24", "300"})
+    public int paletteSize;
+
+    private byte[] bytes;
+    private SubChunk subChunk;
+    private PaletteCache cache;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        SubChunkStorage storage = new SubChunkStorage(block(0));
+        List<CompoundTag> palette = new ArrayList<>();
+        for (int i = 0; i < paletteSize; i++) {
+            palette.add(block(i));
+        }
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    storage.setBlock(x, y, z, palette.get(random.nextInt(paletteSize)));
+                }
+            }
+        }
+        subChunk = new SubChunk(9, 0, Collections.singletonList(storage));
+        bytes = subChunk.getBytes();
+        cache = new PaletteCache(4096);
+    }
+
+    @Benchmark
+    public SubChunk decode() {
+        return SubChunk.read(bytes);
+    }
+
+    @Benchmark
+    public SubChunkStorage decodeCached() {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        // Version, storage count and Y index
+        buffer.position(3);
+        return SubChunkStorage.read(buffer, cache);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return subChunk.getBytes();
+    }
+
+    @Benchmark
+    public Object manual() {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        // Version, storage count and Y index
+        buffer.position(3);
+        int bits = (buffer.get() & 0xFF) >>> 1;
+        int perWord = 32 / bits;
+        int[] indices = new int[SubChunkStorage.SIZE];
+        for (int i = 0; i < SubChunkStorage.SIZE; i++) {
+            int word = buffer.getInt(4 + 4 * (i / perWord));
+            indices[i] = (word >>> ((i % perWord) * bits)) & ((1 << bits) - 1);
+        }
+        buffer.position(4 + 4 * ((SubChunkStorage.SIZE + perWord - 1) / perWord));
+
+        int size = buffer.getInt();
+        ByteArrayInputStream stream = new ByteArrayInputStream(bytes, buffer.position(), bytes.length - buffer.position());
+        Tag[] palette = new Tag[size];
+        for (int i = 0; i < size; i++) {
+            palette[i] = NBTUtil.read(false, stream);
+        }
+        return new Object[]{indices, palette};
+    }
+
+    /**
+     * Creates a block compound, with a few states
+     * @param id The ID of the block
+     * @return The block compound
+     */
+    private static CompoundTag block(int id) {
+        CompoundTag states = new CompoundTag("states", new ArrayList<>());
+        states.putString("color", "color_" + (id % 16));
+        states.putByte("top_slot_bit", (byte) (id & 1));
+        states.putInt("growth", id % 8);
+        CompoundTag block = new CompoundTag("", new ArrayList<>());
+        block.putString("name", "minecraft:block_" + id);
+        block.add(states);
+        block.putInt("version", 17959425);
+        return block;
+    }
+}
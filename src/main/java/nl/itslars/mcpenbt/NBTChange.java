@@ -0,0 +1,71 @@
+package nl.itslars.mcpenbt;
+
+import nl.itslars.mcpenbt.enums.ChangeType;
+import nl.itslars.mcpenbt.tags.Tag;
+
+/**
+ * A single change in an {@link NBTDiff}: a tag that was added to a compound, removed from a compound, or replaced.
+ * The path of the change consists of names of compound children and list indices.
+ */
+public class NBTChange {
+
+    private final ChangeType type;
+    // The name of every name segment, or null for index segments
+    private final String[] names;
+    // The index of every index segment, or -1 for name segments
+    private final int[] indices;
+    private final Tag value;
+
+    NBTChange(ChangeType type, String[] names, int[] indices, Tag value) {
+        this.type = type;
+        this.names = names;
+        this.indices = indices;
+        this.value = value;
+    }
+
+    /**
+     * Retrieves the kind of this change
+     * @return The type
+     */
+    public ChangeType getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the path of the changed tag, relative to the root tag. The path is empty if the root tag itself
+     * was replaced.
+     * @return The path
+     */
+    public NBTPath getPath() {
+        return NBTPath.of(names, indices, names.length);
+    }
+
+    /**
+     * Retrieves the new tag. Changes to the tag are reflected in this change.
+     * @return The tag, or null if the tag was removed
+     */
+    public Tag getValue() {
+        return value;
+    }
+
+    /**
+     * Retrieves the name of every segment of the path
+     * @return The names, with null for list indices
+     */
+    String[] getNames() {
+        return names;
+    }
+
+    /**
+     * Retrieves the index of every segment of the path
+     * @return The indices, with -1 for names
+     */
+    int[] getIndices() {
+        return indices;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + getPath();
+    }
+}
@@ -0,0 +1,597 @@
+package nl.itslars.mcpenbt;
+
+import nl.itslars.mcpenbt.enums.ChangeType;
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.StringCodec;
+import nl.itslars.mcpenbt.tags.ByteArrayTag;
+import nl.itslars.mcpenbt.tags.ByteTag;
+import nl.itslars.mcpenbt.tags.CompoundTag;
+import nl.itslars.mcpenbt.tags.IntArrayTag;
+import nl.itslars.mcpenbt.tags.ListTag;
+import nl.itslars.mcpenbt.tags.StringTag;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Structural difference between two NBT trees, as a list of tags that were added to a compound, removed from a
+ * compound, or replaced. Compounds are compared child by child, and lists of compounds or lists with the same size
+ * element by element. Any other tag that differs, like a list that grew, is replaced as a whole.
+ * Subtrees that did not change are skipped without descending into them: the hashes of compounds and lists are
+ * cached, so after the first comparison only subtrees with equal hashes still have to be compared for equality.
+ * Frozen trees are compared fastest, as their hashes never have to be computed again, and subtrees that two frozen
+ * trees share (see {@link CompoundTag#with(String, Tag)}) are skipped right away.
+ * The order of the children of a compound is ignored, and compounds with duplicate names are compared by the first
+ * tag with each name.
+ * <p>
+ * A diff is stored as an NBT compound (see {@link #toTag()}), with a list named {@code changes} that holds a compound
+ * for every change: its {@code type} (see {@link ChangeType#getId()}), its {@code path} as a list of names (with an
+ * empty name for every list index, and an int array named {@code indices} with the indices, or -1 for names), and,
+ * unless the tag was removed, the type ({@code tagType}) and little-endian value bytes ({@code value}) of the new
+ * tag. If the root tag itself was replaced, its name is stored in {@code name}.
+ * A diff can be applied to a tree, or directly to raw NBT bytes.
+ */
+public class NBTDiff {
+
+    // The maximum amount of children of two compounds that are looked up by name, instead of indexing them
+    private static final int MAX_LOOKUPS = 8;
+
+    private final List<NBTChange> changes;
+
+    private NBTDiff(List<NBTChange> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * Computes the changes that turn the given tree into the other given tree.
+     * The new tags in the changes are the tags of the new tree, not copies.
+     * @param from The old tree
+     * @param to The new tree
+     * @return The diff
+     */
+    public static NBTDiff compute(Tag from, Tag to) {
+        List<NBTChange> changes = new ArrayList<>();
+        if (!Objects.equals(from.getName(), to.getName())) {
+            changes.add(new NBTChange(ChangeType.CHANGED, new String[0], new int[0], to));
+        } else {
+            compare(from, to, new ArrayList<>(), new ArrayList<>(), changes);
+        }
+        return new NBTDiff(changes);
+    }
+
+    /**
+     * Reads a diff from the given bytes, as written by {@link #getBytes()}
+     * @param bytes The bytes
+     * @return The diff
+     * @throws IllegalArgumentException If the bytes do not hold a diff
+     */
+    public static NBTDiff read(byte... bytes) {
+        Tag tag = NBTUtil.read(false, bytes);
+        if (!(tag instanceof CompoundTag)) throw invalid();
+        return fromTag((CompoundTag) tag);
+    }
+
+    /**
+     * Converts the given compound, as created by {@link #toTag()}, to a diff
+     * @param patch The compound
+     * @return The diff
+     * @throws IllegalArgumentException If the compound does not hold a diff
+     */
+    public static NBTDiff fromTag(CompoundTag patch) {
+        ListTag<Tag> list = patch.getList("changes");
+        if (list == null) throw invalid();
+        List<NBTChange> changes = new ArrayList<>(list.size());
+        for (Tag element : list) {
+            if (!(element instanceof CompoundTag)) throw invalid();
+            changes.add(readChange((CompoundTag) element));
+        }
+        return new NBTDiff(changes);
+    }
+
+    /**
+     * Retrieves the changes, in the order in which they are applied
+     * @return The changes
+     */
+    public List<NBTChange> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Checks whether the two trees were equal
+     * @return True if there are no changes, false otherwise
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Converts this diff to a compound, in the patch format that is described above
+     * @return The compound
+     */
+    public CompoundTag toTag() {
+        List<CompoundTag> entries = new ArrayList<>(changes.size());
+        for (NBTChange change : changes) {
+            entries.add(writeChange(change));
+        }
+        List<Tag> elements = new ArrayList<>();
+        elements.add(new ListTag<>("changes", TagType.TAG_COMPOUND, entries));
+        return new CompoundTag("", elements);
+    }
+
+    /**
+     * Converts this diff to a byte array, in the patch format that is described above
+     * @return The byte array
+     */
+    public byte[] getBytes() {
+        return NBTUtil.write(toTag());
+    }
+
+    /**
+     * Applies this diff to the given tree. A mutable tree is changed in place. A frozen tree is not changed; instead,
+     * a new frozen tree is created, which shares all untouched children with the given tree.
+     * The new tags are copied, so a diff can be applied to multiple trees.
+     * @param tree The tree, which should be equal to the old tree of this diff
+     * @return The new tree. This is the given tree if it is mutable, unless the root tag itself was replaced
+     * @throws IllegalArgumentException If the tree does not match this diff
+     */
+    public Tag apply(Tag tree) {
+        for (NBTChange change : changes) {
+            tree = apply(tree, change, 0);
+        }
+        return tree;
+    }
+
+    /**
+     * Applies this diff to the given little-endian NBT bytes, without reading the tree. Every change is located by
+     * skipping all other tags, and only the bytes of the changed tag are replaced.
+     * @param bytes The NBT bytes, which should hold the old tree of this diff
+     * @param header Whether the NBT contains a header. Its length is updated
+     * @return The new NBT bytes. This is the given array if nothing had to be shifted
+     * @throws IllegalArgumentException If the bytes do not match this diff
+     */
+    public byte[] apply(byte[] bytes, boolean header) {
+        for (NBTChange change : changes) {
+            bytes = apply(bytes, header, change);
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "NBTDiff{changes=" + changes + "}";
+    }
+
+    /**
+     * Adds the changes that turn the given tag into the other given tag, which have the same name and path
+     * @param from The old tag
+     * @param to The new tag
+     * @param names The name of every segment of the path, or null for index segments
+     * @param indices The index of every segment of the path, or -1 for name segments
+     * @param changes The list to add the changes to
+     */
+    private static void compare(Tag from, Tag to, List<String> names, List<Integer> indices, List<NBTChange> changes) {
+        if (unchanged(from, to)) return;
+
+        if (from instanceof CompoundTag && to instanceof CompoundTag) {
+            compareChildren((CompoundTag) from, (CompoundTag) to, names, indices, changes);
+            return;
+        }
+
+        if (from instanceof ListTag && to instanceof ListTag) {
+            ListTag<?> oldList = (ListTag<?>) from;
+            ListTag<?> newList = (ListTag<?>) to;
+            TagType elementType = newList.getElementType();
+            if (oldList.getElementType() == elementType && oldList.size() == newList.size()
+                    && (elementType == TagType.TAG_COMPOUND || elementType == TagType.TAG_LIST)) {
+                Iterator<?> oldElements = oldList.iterator();
+                Iterator<?> newElements = newList.iterator();
+                for (int i = 0; oldElements.hasNext(); i++) {
+                    Tag old = (Tag) oldElements.next();
+                    Tag element = (Tag) newElements.next();
+                    if (unchanged(old, element)) continue;
+                    names.add(null);
+                    indices.add(i);
+                    compare(old, element, names, indices, changes);
+                    names.remove(names.size() - 1);
+                    indices.remove(indices.size() - 1);
+                }
+                return;
+            }
+        }
+
+        changes.add(new NBTChange(ChangeType.CHANGED, names.toArray(new String[0]), toArray(indices), to));
+    }
+
+    /**
+     * Adds the changes that turn the children of the given compound into the children of the other given compound.
+     * Children are usually in the same order in both compounds, so they are compared by position for as long as
+     * their names are equal. The remaining children are looked up by name.
+     * @param from The old compound
+     * @param to The new compound
+     * @param names The names of the path to the compounds
+     * @param indices The indices of the path to the compounds
+     * @param changes The list to add the changes to
+     */
+    private static void compareChildren(CompoundTag from, CompoundTag to, List<String> names, List<Integer> indices, List<NBTChange> changes) {
+        List<Tag> oldElements = from.getElements();
+        List<Tag> newElements = to.getElements();
+        int common = 0;
+        int length = Math.min(oldElements.size(), newElements.size());
+        while (common < length && Objects.equals(oldElements.get(common).getName(), newElements.get(common).getName())) {
+            common++;
+        }
+
+        Map<String, Tag> oldChildren;
+        Map<String, Tag> newChildren;
+        int start;
+        if (oldElements.size() + newElements.size() - 2 * common <= MAX_LOOKUPS) {
+            for (int i = 0; i < common; i++) {
+                compareChild(oldElements.get(i), newElements.get(i), names, indices, changes);
+            }
+            // Lazily read compounds look names up by scanning, which is only done for a few children
+            oldChildren = null;
+            newChildren = null;
+            start = common;
+        } else {
+            oldChildren = children(oldElements);
+            newChildren = children(newElements);
+            start = 0;
+        }
+
+        for (int i = start; i < oldElements.size(); i++) {
+            String name = oldElements.get(i).getName();
+            if (newChildren == null ? !to.contains(name) : !newChildren.containsKey(name)) {
+                changes.add(change(ChangeType.REMOVED, names, indices, name, null));
+            }
+        }
+        for (int i = start; i < newElements.size(); i++) {
+            Tag child = newElements.get(i);
+            String name = child.getName();
+            // Only the first child with a name is compared
+            if ((newChildren == null ? to.getByName(name).orElse(null) : newChildren.get(name)) != child) continue;
+            Tag old = oldChildren == null ? from.getByName(name).orElse(null) : oldChildren.get(name);
+            if (old == null) {
+                changes.add(change(ChangeType.ADDED, names, indices, name, child));
+            } else {
+                compareChild(old, child, names, indices, changes);
+            }
+        }
+    }
+
+    /**
+     * Adds the changes that turn the given child into the other given child, which have the same name
+     * @param old The old child
+     * @param child The new child
+     * @param names The names of the path to the parent compound
+     * @param indices The indices of the path to the parent compound
+     * @param changes The list to add the changes to
+     */
+    private static void compareChild(Tag old, Tag child, List<String> names, List<Integer> indices, List<NBTChange> changes) {
+        if (unchanged(old, child)) return;
+        if (old.getType() != child.getType()) {
+            changes.add(change(ChangeType.CHANGED, names, indices, child.getName(), child));
+            return;
+        }
+        names.add(child.getName());
+        indices.add(-1);
+        compare(old, child, names, indices, changes);
+        names.remove(names.size() - 1);
+        indices.remove(indices.size() - 1);
+    }
+
+    /**
+     * Checks whether the given tags are equal. Tags that are shared or that have different hashes are not compared
+     * at all. The hashes of compounds and lists are cached, so they are only computed once for the whole tree.
+     * @param from The old tag
+     * @param to The new tag
+     * @return True if they are equal, false otherwise
+     */
+    private static boolean unchanged(Tag from, Tag to) {
+        return from == to || (from.hashCode() == to.hashCode() && from.equals(to));
+    }
+
+    /**
+     * Maps the names of the given children to the first child with that name
+     * @param elements The children
+     * @return The map
+     */
+    private static Map<String, Tag> children(List<Tag> elements) {
+        Map<String, Tag> children = new HashMap<>(elements.size() * 2);
+        for (Tag child : elements) {
+            children.putIfAbsent(child.getName(), child);
+        }
+        return children;
+    }
+
+    /**
+     * Creates a change of a child of the compound at the given path
+     * @param type The type of the change
+     * @param names The names of the path to the compound
+     * @param indices The indices of the path to the compound
+     * @param name The name of the child
+     * @param value The new child, or null if it was removed
+     * @return The change
+     */
+    private static NBTChange change(ChangeType type, List<String> names, List<Integer> indices, String name, Tag value) {
+        String[] nameArray = names.toArray(new String[names.size() + 1]);
+        nameArray[names.size()] = name;
+        int[] indexArray = new int[indices.size() + 1];
+        for (int i = 0; i < indices.size(); i++) {
+            indexArray[i] = indices.get(i);
+        }
+        indexArray[indices.size()] = -1;
+        return new NBTChange(type, nameArray, indexArray, value);
+    }
+
+    /**
+     * Converts the given indices of a path to an array
+     * @param values The indices
+     * @return The array
+     */
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the given change to the tag at the given depth of its path
+     * @param tag The tag at the given depth
+     * @param change The change
+     * @param depth The amount of segments of the path that lead to the tag
+     * @return The tag that replaces the given tag in its parent, which is the given tag if it was changed in place
+     */
+    @SuppressWarnings("unchecked")
+    private static Tag apply(Tag tag, NBTChange change, int depth) {
+        String[] names = change.getNames();
+        if (depth == names.length) return copy(change.getValue());
+        boolean last = depth == names.length - 1;
+
+        String name = names[depth];
+        if (name != null) {
+            if (!(tag instanceof CompoundTag)) throw mismatch(change);
+            CompoundTag compound = (CompoundTag) tag;
+            Tag child = compound.getByName(name).orElse(null);
+            if ((child == null) != (last && change.getType() == ChangeType.ADDED)) throw mismatch(change);
+
+            if (last && change.getType() == ChangeType.REMOVED) {
+                if (compound.isFrozen()) return compound.without(name);
+                compound.remove(name);
+                return compound;
+            }
+            Tag replacement = apply(child, change, depth + 1);
+            if (compound.isFrozen()) return compound.with(name, replacement);
+            if (child == null) {
+                compound.add(replacement);
+            } else if (replacement != child) {
+                // Keep the position of the child
+                List<Tag> elements = compound.getElements();
+                for (int i = 0; i < elements.size(); i++) {
+                    if (elements.get(i) == child) {
+                        elements.set(i, replacement);
+                        break;
+                    }
+                }
+            }
+            return compound;
+        }
+
+        int index = change.getIndices()[depth];
+        if (!(tag instanceof ListTag) || index >= ((ListTag<?>) tag).size()) throw mismatch(change);
+        ListTag<Tag> list = (ListTag<Tag>) tag;
+        Tag element = list.getElements().get(index);
+        Tag replacement = apply(element, change, depth + 1);
+        if (replacement.getType() != list.getElementType()) throw mismatch(change);
+        if (list.isFrozen()) return list.with(index, replacement);
+        if (replacement != element) list.getElements().set(index, replacement);
+        return list;
+    }
+
+    /**
+     * Applies the given change to the given NBT bytes
+     * @param bytes The NBT bytes
+     * @param header Whether the NBT contains a header
+     * @param change The change
+     * @return The new NBT bytes
+     */
+    private static byte[] apply(byte[] bytes, boolean header, NBTChange change) {
+        int[] range = locate(bytes, header, change);
+        Tag value = change.getValue();
+        byte[] replacement;
+        if (value == null) {
+            replacement = new byte[0];
+        } else if (change.getNames().length > 0 && change.getNames()[change.getNames().length - 1] == null) {
+            // List elements have no type ID and name
+            replacement = value.getValueBytes();
+        } else {
+            replacement = value.getBytes();
+        }
+        return splice(bytes, header, range[0], range[1], replacement);
+    }
+
+    /**
+     * Finds the byte range that the given change replaces. For a tag in a compound, this includes its type ID and
+     * name. A tag that is added is inserted in front of the end of its compound.
+     * @param bytes The NBT bytes
+     * @param header Whether the NBT contains a header
+     * @param change The change
+     * @return The start (inclusive) and end (exclusive) position of the range
+     */
+    private static int[] locate(byte[] bytes, boolean header, NBTChange change) {
+        String[] names = change.getNames();
+        NBTInput input = NBTInput.of(bytes);
+        try {
+            if (header) input.skip(8);
+            int start = input.getPosition();
+            if (names.length == 0) {
+                int id = input.readByte();
+                input.skip(input.readStringLength());
+                input.skipValue(id);
+                return new int[]{start, input.getPosition()};
+            }
+
+            int id = NBTPath.of(names, change.getIndices(), names.length - 1).seek(input);
+            String name = names[names.length - 1];
+            if (name == null) {
+                int index = change.getIndices()[names.length - 1];
+                if (id != TagType.TAG_LIST.getId()) throw mismatch(change);
+                int elementId = input.readByte();
+                if (index >= input.readInt() || elementId != change.getValue().getType().getId()) throw mismatch(change);
+                input.skipValues(elementId, index);
+                start = input.getPosition();
+                input.skipValue(elementId);
+                return new int[]{start, input.getPosition()};
+            }
+
+            if (id != TagType.TAG_COMPOUND.getId()) throw mismatch(change);
+            byte[] nameBytes = StringCodec.encode(name, false);
+            start = input.getPosition();
+            while ((id = input.readByte()) != 0) {
+                int length = input.readStringLength();
+                boolean found = length == nameBytes.length && input.matchBytes(nameBytes);
+                if (length != nameBytes.length) input.skip(length);
+                input.skipValue(id);
+                if (found) {
+                    if (change.getType() == ChangeType.ADDED) throw mismatch(change);
+                    return new int[]{start, input.getPosition()};
+                }
+                start = input.getPosition();
+            }
+            if (change.getType() != ChangeType.ADDED) throw mismatch(change);
+            return new int[]{start, start};
+        } catch (IOException e) {
+            // Cannot happen, the bytes are kept in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces the given range of the given NBT bytes
+     * @param bytes The NBT bytes
+     * @param header Whether the NBT contains a header, of which the length is updated
+     * @param start The start of the range (inclusive)
+     * @param end The end of the range (exclusive)
+     * @param replacement The new bytes
+     * @return The given array if the range has the same length as the new bytes, and a new array otherwise
+     */
+    private static byte[] splice(byte[] bytes, boolean header, int start, int end, byte[] replacement) {
+        if (replacement.length == end - start) {
+            System.arraycopy(replacement, 0, bytes, start, replacement.length);
+            return bytes;
+        }
+        byte[] result = new byte[bytes.length - (end - start) + replacement.length];
+        System.arraycopy(bytes, 0, result, 0, start);
+        System.arraycopy(replacement, 0, result, start, replacement.length);
+        System.arraycopy(bytes, end, result, start + replacement.length, bytes.length - end);
+        if (header) {
+            ByteBuffer.wrap(result).order(ByteOrder.LITTLE_ENDIAN).putInt(4, result.length - 8);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a copy of the given tag that can be put in another tree
+     * @param tag The tag
+     * @return The tag itself if it is frozen, and a deep copy otherwise
+     */
+    private static Tag copy(Tag tag) {
+        if (tag.isFrozen()) return tag;
+        try {
+            return Tag.readValue(tag.getName(), tag.getType().getId(), NBTInput.of(tag.getValueBytes()));
+        } catch (IOException e) {
+            // Cannot happen, the bytes are kept in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Converts the given change to a compound in the patch format
+     * @param change The change
+     * @return The compound
+     */
+    private static CompoundTag writeChange(NBTChange change) {
+        String[] names = change.getNames();
+        List<Tag> elements = new ArrayList<>();
+        elements.add(new ByteTag("type", change.getType().getId()));
+        List<StringTag> path = new ArrayList<>(names.length);
+        boolean hasIndices = false;
+        for (String name : names) {
+            path.add(new StringTag(null, name == null ? "" : name));
+            hasIndices |= name == null;
+        }
+        elements.add(new ListTag<>("path", TagType.TAG_STRING, path));
+        if (hasIndices) elements.add(new IntArrayTag("indices", change.getIndices().clone()));
+
+        Tag value = change.getValue();
+        if (value != null) {
+            elements.add(new ByteTag("tagType", value.getType().getId()));
+            elements.add(new ByteArrayTag("value", value.getValueBytes()));
+            if (names.length == 0 && value.getName() != null) elements.add(new StringTag("name", value.getName()));
+        }
+        return new CompoundTag(null, elements);
+    }
+
+    /**
+     * Converts the given compound in the patch format to a change
+     * @param entry The compound
+     * @return The change
+     */
+    private static NBTChange readChange(CompoundTag entry) {
+        ChangeType type = ChangeType.fromId(entry.getByte("type", (byte) -1));
+        ListTag<Tag> path = entry.getList("path");
+        if (path == null) throw invalid();
+        int[] indices = entry.getIntArray("indices");
+        if (indices == null) {
+            indices = new int[path.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = -1;
+            }
+        }
+        if (indices.length != path.size()) throw invalid();
+
+        String[] names = new String[path.size()];
+        int i = 0;
+        for (Tag segment : path) {
+            if (!(segment instanceof StringTag)) throw invalid();
+            if (indices[i] < 0) names[i] = ((StringTag) segment).getValue();
+            i++;
+        }
+        if (type != ChangeType.CHANGED && (names.length == 0 || names[names.length - 1] == null)) throw invalid();
+
+        Tag value = null;
+        if (type != ChangeType.REMOVED) {
+            byte[] bytes = entry.getByteArray("value");
+            byte tagType = entry.getByte("tagType", (byte) 0);
+            if (bytes == null || tagType == 0) throw invalid();
+            String name = names.length == 0 ? entry.getString("name") : names[names.length - 1];
+            try {
+                value = Tag.readValue(name, tagType, NBTInput.of(bytes));
+            } catch (IOException e) {
+                // Cannot happen, the bytes are kept in memory
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new NBTChange(type, names, indices, value);
+    }
+
+    private static IllegalArgumentException mismatch(NBTChange change) {
+        return new IllegalArgumentException("The diff does not match the tree at: " + change);
+    }
+
+    private static IllegalArgumentException invalid() {
+        return new IllegalArgumentException("Invalid NBT diff.");
+    }
+}
@@ -0,0 +1,190 @@
+package nl.itslars.mcpenbt;
+
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utility class for changing a single value in raw NBT data, without reading and writing the whole tree.
+ * The value at a path is located by skipping all other tags, and is then overwritten at its byte offset.
+ * If the new value has the same encoded length (which is always the case for fixed-size values like ints and
+ * doubles), nothing else is touched. Otherwise, only the bytes behind the value are shifted, and the length in the
+ * header (if there is one) is updated.
+ */
+public class NBTPatcher {
+
+    private NBTPatcher() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Replaces the value of the tag at the given path in the given byte array
+     * @param bytes The NBT bytes
+     * @param header Whether the NBT contains a header
+     * @param path The path of the tag
+     * @param value The tag that holds the new value. Its name is ignored
+     * @return The given array if the value was overwritten in place, a new array if the length of the value changed,
+     * or null if there is no tag at the given path
+     */
+    public static byte[] patch(byte[] bytes, boolean header, NBTPath path, Tag value) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] range = locate(buffer, header, path, value);
+        if (range == null) return null;
+
+        byte[] valueBytes = value.getValueBytes();
+        int oldLength = range[1] - range[0];
+        if (valueBytes.length == oldLength) {
+            System.arraycopy(valueBytes, 0, bytes, range[0], valueBytes.length);
+            return bytes;
+        }
+
+        byte[] result = new byte[bytes.length - oldLength + valueBytes.length];
+        System.arraycopy(bytes, 0, result, 0, range[0]);
+        System.arraycopy(valueBytes, 0, result, range[0], valueBytes.length);
+        System.arraycopy(bytes, range[1], result, range[0] + valueBytes.length, bytes.length - range[1]);
+        if (header) {
+            ByteBuffer.wrap(result).order(ByteOrder.LITTLE_ENDIAN).putInt(4, result.length - 8);
+        }
+        return result;
+    }
+
+    /**
+     * Overwrites the value of the tag at the given path in the given buffer (for example a MappedByteBuffer),
+     * starting at the current position of the buffer. The position of the buffer is not changed.
+     * The new value must have the same encoded length as the old one, as a buffer cannot grow or shrink.
+     * @param buffer The buffer
+     * @param header Whether the NBT contains a header
+     * @param path The path of the tag
+     * @param value The tag that holds the new value. Its name is ignored
+     * @return True if the value was overwritten, false if there is no tag at the given path
+     * @throws IllegalArgumentException If the new value has a different length
+     */
+    public static boolean patch(ByteBuffer buffer, boolean header, NBTPath path, Tag value) {
+        int[] range = locate(buffer, header, path, value);
+        if (range == null) return false;
+
+        byte[] valueBytes = value.getValueBytes();
+        if (valueBytes.length != range[1] - range[0]) {
+            throw new IllegalArgumentException("The new value has a different length, and cannot be written in place.");
+        }
+        ByteBuffer target = buffer.duplicate();
+        ((Buffer) target).position(range[0]);
+        target.put(valueBytes);
+        return true;
+    }
+
+    /**
+     * Replaces the value of the tag at the given path in the given file. A value with the same encoded length is
+     * written with a single positional write. Otherwise, the rest of the file is shifted as well.
+     * The file is changed in place, which is not atomic: if writing fails halfway, the file may be left corrupted.
+     * To replace a file atomically, patch its bytes with {@link #patch(byte[], boolean, NBTPath, Tag)} instead, write
+     * them to a temporary file, and move that over the original.
+     * @param file The file
+     * @param header Whether the NBT contains a header
+     * @param path The path of the tag
+     * @param value The tag that holds the new value. Its name is ignored
+     * @return True if the value was replaced, false if there is no tag at the given path
+     * @throws IOException If the file could not be read or written
+     */
+    public static boolean patch(Path file, boolean header, NBTPath path, Tag value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return patch(channel, header, path, value);
+        }
+    }
+
+    /**
+     * Replaces the value of the tag at the given path in the file of the given channel, which must be readable and
+     * writable. The NBT must start at the beginning of the file, and the file is read with positional reads, so the
+     * position of the channel is not changed. A value with the same encoded length is written with a single
+     * positional write. Otherwise, the rest of the file is shifted as well. Like
+     * {@link #patch(Path, boolean, NBTPath, Tag)}, this is not atomic.
+     * @param channel The channel
+     * @param header Whether the NBT contains a header
+     * @param path The path of the tag
+     * @param value The tag that holds the new value. Its name is ignored
+     * @return True if the value was replaced, false if there is no tag at the given path
+     * @throws IOException If the channel threw an exception
+     */
+    public static boolean patch(FileChannel channel, boolean header, NBTPath path, Tag value) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("The file is too large to be patched.");
+        // The file is read instead of mapped, as some platforms cannot write or truncate a file while it is mapped
+        ByteBuffer contents = ByteBuffer.allocate((int) size);
+        while (contents.hasRemaining()) {
+            if (channel.read(contents, contents.position()) < 0) break;
+        }
+        ((Buffer) contents).flip();
+        int[] range = locate(contents, header, path, value);
+        if (range == null) return false;
+
+        byte[] valueBytes = value.getValueBytes();
+        int delta = valueBytes.length - (range[1] - range[0]);
+        if (delta == 0) {
+            write(channel, ByteBuffer.wrap(valueBytes), range[0]);
+            return true;
+        }
+
+        // Write everything behind the old value back behind the new value
+        ByteBuffer tail = contents.duplicate();
+        ((Buffer) tail).position(range[1]);
+        write(channel, ByteBuffer.wrap(valueBytes), range[0]);
+        write(channel, tail, range[0] + valueBytes.length);
+        if (delta < 0) channel.truncate(size + delta);
+
+        if (header) {
+            ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            length.putInt(0, (int) (size + delta - 8));
+            write(channel, length, 4);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the byte range of the value of the tag at the given path
+     * @param buffer The buffer, positioned at the start of the NBT
+     * @param header Whether the NBT contains a header
+     * @param path The path of the tag
+     * @param value The tag that holds the new value, which must have the same type as the existing tag
+     * @return The start (inclusive) and end (exclusive) position of the value, or null if there is no tag at the path
+     */
+    private static int[] locate(ByteBuffer buffer, boolean header, NBTPath path, Tag value) {
+        NBTInput input = NBTInput.of(buffer);
+        try {
+            if (header) input.skip(8);
+            int id = path.seek(input);
+            if (id == 0) return null;
+            if (id != value.getType().getId()) {
+                throw new IllegalArgumentException("Expected a tag of type " + TagType.fromId((byte) id) + ", but is " + value.getType() + ".");
+            }
+
+            int start = input.getPosition();
+            input.skipValue(id);
+            return new int[]{start, input.getPosition()};
+        } catch (IOException e) {
+            // Cannot happen, the buffer is kept in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes all bytes of the given buffer to the given position in the channel
+     * @param channel The channel
+     * @param bytes The bytes
+     * @param position The position in the file
+     * @throws IOException If the channel threw an exception
+     */
+    private static void write(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+}
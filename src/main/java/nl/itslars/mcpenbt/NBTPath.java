@@ -0,0 +1,186 @@
+package nl.itslars.mcpenbt;
+
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.StringCodec;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled path to a tag inside an NBT tree, like {@code abilities.flySpeed} or {@code Items[3].Name}.
+ * A path consists of names of compound children, separated by dots, and list indices between brackets. It is relative
+ * to the root tag. When a path is extracted from raw NBT, all tags that are not on the path are skipped without
+ * decoding them, and only the target tag is decoded.
+ * Paths are immutable, so a compiled path can be reused by multiple threads.
+ */
+public class NBTPath {
+
+    private final String path;
+    // The UTF-8 bytes of every name segment, or null for index segments
+    private final byte[][] names;
+    // The same, in Modified UTF-8
+    private final byte[][] modifiedNames;
+    // The index of every index segment
+    private final int[] indices;
+    // The name of the target tag, or null if it is a list element
+    private final String targetName;
+
+    private NBTPath(String path, byte[][] names, byte[][] modifiedNames, int[] indices, String targetName) {
+        this.path = path;
+        this.names = names;
+        this.modifiedNames = modifiedNames;
+        this.indices = indices;
+        this.targetName = targetName;
+    }
+
+    /**
+     * Compiles the given path
+     * @param path The path, like {@code path.to[3].key}
+     * @return The compiled path
+     * @throws IllegalArgumentException If the path is malformed
+     */
+    public static NBTPath compile(String path) {
+        List<byte[]> names = new ArrayList<>();
+        List<byte[]> modifiedNames = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        String targetName = null;
+        int i = 0;
+        while (i < path.length()) {
+            if (path.charAt(i) == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0) throw invalid(path);
+                try {
+                    int index = Integer.parseInt(path.substring(i + 1, end));
+                    if (index < 0) throw invalid(path);
+                    names.add(null);
+                    modifiedNames.add(null);
+                    indices.add(index);
+                    targetName = null;
+                } catch (NumberFormatException e) {
+                    throw invalid(path);
+                }
+                i = end + 1;
+            } else {
+                // Every name except the first one is preceded by a dot. A name runs until the next separator
+                if (i > 0) {
+                    if (path.charAt(i) != '.') throw invalid(path);
+                    i++;
+                }
+                int end = i;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') end++;
+                if (end == i) throw invalid(path);
+                targetName = path.substring(i, end);
+                names.add(StringCodec.encode(targetName, false));
+                modifiedNames.add(StringCodec.encode(targetName, true));
+                indices.add(-1);
+                i = end;
+            }
+        }
+
+        int[] indexArray = new int[indices.size()];
+        for (int j = 0; j < indexArray.length; j++) {
+            indexArray[j] = indices.get(j);
+        }
+        return new NBTPath(path, names.toArray(new byte[0][]), modifiedNames.toArray(new byte[0][]), indexArray, targetName);
+    }
+
+    /**
+     * Creates a path from the given segments. Unlike {@link #compile(String)}, names may contain dots and brackets.
+     * @param names The name of every segment, or null for index segments
+     * @param indices The index of every segment, which is ignored for name segments
+     * @param length The amount of segments to use
+     * @return The path
+     */
+    static NBTPath of(String[] names, int[] indices, int length) {
+        StringBuilder path = new StringBuilder();
+        byte[][] nameBytes = new byte[length][];
+        byte[][] modifiedNames = new byte[length][];
+        int[] indexArray = new int[length];
+        String targetName = null;
+        for (int i = 0; i < length; i++) {
+            targetName = names[i];
+            if (targetName != null) {
+                if (i > 0) path.append('.');
+                path.append(targetName);
+                nameBytes[i] = StringCodec.encode(targetName, false);
+                modifiedNames[i] = StringCodec.encode(targetName, true);
+                indexArray[i] = -1;
+            } else {
+                path.append('[').append(indices[i]).append(']');
+                indexArray[i] = indices[i];
+            }
+        }
+        return new NBTPath(path.toString(), nameBytes, modifiedNames, indexArray, targetName);
+    }
+
+    /**
+     * Walks from the root tag at the current position of the given input to the tag at this path, and decodes it.
+     * Afterwards, the input is positioned directly behind the target tag, or somewhere in the tree if it was not found.
+     * @param input The input
+     * @return The tag, or null if there is no tag at this path
+     * @throws IOException If the input threw an exception
+     */
+    public Tag extract(NBTInput input) throws IOException {
+        int id = seek(input);
+        return id == 0 ? null : Tag.readValue(targetName, id, input);
+    }
+
+    /**
+     * Walks from the root tag at the current position of the given input to the value of the tag at this path
+     * @param input The input
+     * @return The type ID of the tag, or 0 if there is no tag at this path
+     * @throws IOException If the input threw an exception
+     */
+    int seek(NBTInput input) throws IOException {
+        int id = input.readByte();
+        if (id == 0) return 0;
+        input.skip(input.readStringLength());
+
+        byte[][] names = input.getFormat().isModifiedUtf8() ? modifiedNames : this.names;
+        for (int i = 0; i < indices.length; i++) {
+            if (names[i] != null) {
+                if (id != TagType.TAG_COMPOUND.getId()) return 0;
+                id = findChild(input, names[i]);
+                if (id == 0) return 0;
+            } else {
+                if (id != TagType.TAG_LIST.getId()) return 0;
+                int elementId = input.readByte();
+                int length = input.readInt();
+                if (indices[i] >= length) return 0;
+                input.skipValues(elementId, indices[i]);
+                id = elementId;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Moves the input to the value of the child with the given name, skipping all children before it
+     * @param input The input, positioned at the first child of a compound
+     * @param name The raw bytes of the name
+     * @return The type ID of the child, or 0 if the compound has no such child
+     * @throws IOException If the input threw an exception
+     */
+    private static int findChild(NBTInput input, byte[] name) throws IOException {
+        int id;
+        while ((id = input.readByte()) != 0) {
+            int length = input.readStringLength();
+            if (length == name.length && input.matchBytes(name)) return id;
+            if (length != name.length) input.skip(length);
+            input.skipValue(id);
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    private static IllegalArgumentException invalid(String path) {
+        return new IllegalArgumentException("Invalid NBT path: " + path);
+    }
+}
@@ -0,0 +1,65 @@
+package nl.itslars.mcpenbt;
+
+/**
+ * The outcome of reading or writing a single item in a batch: either a value, or the error that occurred
+ * @param <T> The type of the value
+ */
+public class NBTResult<T> {
+
+    private final T value;
+    private final Throwable error;
+
+    private NBTResult(T value, Throwable error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * Creates a successful result
+     * @param value The value
+     * @param <T> The type of the value
+     * @return The result
+     */
+    public static <T> NBTResult<T> success(T value) {
+        return new NBTResult<>(value, null);
+    }
+
+    /**
+     * Creates a failed result
+     * @param error The error that occurred
+     * @param <T> The type of the value
+     * @return The result
+     */
+    public static <T> NBTResult<T> failure(Throwable error) {
+        return new NBTResult<>(null, error);
+    }
+
+    /**
+     * Checks whether the item was processed successfully
+     * @return True if it was, false if an error occurred
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Retrieves the value
+     * @return The value, or null if an error occurred
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Retrieves the error that occurred
+     * @return The error, or null if the item was processed successfully
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? "NBTResult{value=" + value + "}" : "NBTResult{error=" + error + "}";
+    }
+}
@@ -0,0 +1,49 @@
+package nl.itslars.mcpenbt;
+
+import nl.itslars.mcpenbt.tags.Tag;
+
+/**
+ * A root tag that was read from a sequence of concatenated root tags, like the block palette of a Bedrock sub-chunk,
+ * together with the bytes that it was read from
+ */
+public class NBTRoot {
+
+    private final Tag tag;
+    private final int offset;
+    private final int length;
+
+    NBTRoot(Tag tag, int offset, int length) {
+        this.tag = tag;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Retrieves the tag
+     * @return The tag
+     */
+    public Tag getTag() {
+        return tag;
+    }
+
+    /**
+     * Retrieves the position in the buffer of the first byte of the tag
+     * @return The offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Retrieves the amount of bytes of the tag
+     * @return The length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "NBTRoot{offset=" + offset + ", length=" + length + ", tag=" + tag + "}";
+    }
+}
@@ -1,20 +1,41 @@
 package nl.itslars.mcpenbt;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.ByteArrayNBTOutput;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 import nl.itslars.mcpenbt.tags.Tag;
 import nl.itslars.mcpenbt.enums.HeaderType;
 
 import java.io.*;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Main NBT Utility class. Can be accessed for reading and writing NBT data
  */
 public class NBTUtil {
 
+    // The amount of chunks per processor that batches are split into, to even out the load between threads
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+    // The largest output buffer that a batch thread keeps for its next item
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+    // The reusable output buffer of every thread that writes batch items
+    private static final ThreadLocal<ByteArrayNBTOutput> BATCH_OUTPUTS = ThreadLocal.withInitial(ByteArrayNBTOutput::new);
+
     private NBTUtil() {
         throw new IllegalStateException("Utility class");
     }
@@ -40,7 +61,9 @@ public class NBTUtil {
     }
 
     /**
-     * Reads the NBT from the given input stream
+     * Reads the NBT from the given input stream.
+     * Streams that do not support marks are never read further than the NBT, which takes a separate read for every
+     * value. Wrap such a stream in a {@link java.io.BufferedInputStream} if it may be read past the end of the NBT.
      * @param header Whether the NBT contains a header
      * @param stream The input stream
      * @return The resulting NBT Tag
@@ -49,6 +72,112 @@ public class NBTUtil {
         return read(null, header, stream);
     }
 
+    /**
+     * Reads the NBT from the given buffer, starting at its current position.
+     * Heap, direct and memory-mapped buffers are all parsed in place. Afterwards, the position of the buffer is set to
+     * directly behind the NBT that was read.
+     * @param header Whether the NBT contains a header
+     * @param buffer The buffer
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(boolean header, ByteBuffer buffer) {
+        return read(null, header, buffer);
+    }
+
+    /**
+     * Reads the NBT in the given file, by mapping the file into memory instead of copying it to the heap
+     * @param header Whether the NBT contains a header
+     * @param path The file path
+     * @return The resulting NBT Tag
+     */
+    public static Tag readMapped(boolean header, Path path) {
+        return readMapped(null, header, path);
+    }
+
+    /**
+     * Reads the NBT in the given format from the given byte array
+     * @param format The format of the NBT
+     * @param bytes The bytes
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(NBTFormat format, byte... bytes) {
+        return read(null, format, false, bytes);
+    }
+
+    /**
+     * Reads the NBT in the given format from the given buffer, starting at its current position.
+     * Afterwards, the position of the buffer is set to directly behind the NBT that was read.
+     * @param format The format of the NBT
+     * @param buffer The buffer
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(NBTFormat format, ByteBuffer buffer) {
+        return read(null, format, false, buffer);
+    }
+
+    /**
+     * Reads the NBT in the given format from the given input stream.
+     * Streams that do not support marks are never read further than the NBT, which takes a separate read for every
+     * value. Wrap such a stream in a {@link java.io.BufferedInputStream} if it may be read past the end of the NBT.
+     * @param format The format of the NBT
+     * @param stream The input stream
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(NBTFormat format, InputStream stream) {
+        return read(null, format, false, stream);
+    }
+
+    /**
+     * Lazily reads the NBT from the given byte array. Compound and list tags only decode their children when those are
+     * accessed, and copy untouched children verbatim when written. The array must not be changed afterwards.
+     * @param header Whether the NBT contains a header
+     * @param bytes The bytes
+     * @return The resulting NBT Tag
+     */
+    public static Tag readLazy(boolean header, byte... bytes) {
+        return readLazy(header, ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Lazily reads the NBT from the given buffer, starting at its current position. Compound and list tags only decode
+     * their children when those are accessed, and copy untouched children verbatim when written.
+     * The buffer contents must not be changed afterwards.
+     * @param header Whether the NBT contains a header
+     * @param buffer The buffer
+     * @return The resulting NBT Tag
+     */
+    public static Tag readLazy(boolean header, ByteBuffer buffer) {
+        NBTInput input = NBTInput.of(buffer);
+        try {
+            try {
+                if (header) skipHeader(input);
+
+                return Tag.readLazy(input);
+            } finally {
+                input.release();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Lazily reads the NBT in the given file, by mapping the file into memory.
+     * Compound and list tags only decode their children when those are accessed.
+     * @param header Whether the NBT contains a header
+     * @param path The file path
+     * @return The resulting NBT Tag
+     */
+    public static Tag readLazy(boolean header, Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readLazy(header, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * Reads the NBT in the given file
      * @param expectedType The expected resulting tag type
@@ -73,7 +202,37 @@ public class NBTUtil {
      * @return The resulting NBT Tag
      */
     public static Tag read(TagType expectedType, boolean header, byte... bytes) {
-        return read(expectedType, header, new ByteArrayInputStream(bytes));
+        return read(expectedType, header, NBTInput.of(bytes));
+    }
+
+    /**
+     * Reads the NBT from the given buffer, starting at its current position.
+     * Heap, direct and memory-mapped buffers are all parsed in place. Afterwards, the position of the buffer is set to
+     * directly behind the NBT that was read.
+     * @param expectedType The expected resulting tag type
+     * @param header Whether the NBT contains a header
+     * @param buffer The buffer
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(TagType expectedType, boolean header, ByteBuffer buffer) {
+        return read(expectedType, header, NBTInput.of(buffer));
+    }
+
+    /**
+     * Reads the NBT in the given file, by mapping the file into memory instead of copying it to the heap
+     * @param expectedType The expected resulting tag type
+     * @param header Whether the NBT contains a header
+     * @param path The file path
+     * @return The resulting NBT Tag
+     */
+    public static Tag readMapped(TagType expectedType, boolean header, Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel has been closed
+            return read(expectedType, header, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     /**
@@ -84,13 +243,158 @@ public class NBTUtil {
      * @return The resulting NBT Tag
      */
     public static Tag read(TagType expectedType, boolean header, InputStream stream) {
+        return read(expectedType, header, NBTInput.of(stream));
+    }
+
+    /**
+     * Reads the NBT in the given format from the given byte array
+     * @param expectedType The expected resulting tag type
+     * @param format The format of the NBT
+     * @param header Whether the NBT contains a header
+     * @param bytes The bytes
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(TagType expectedType, NBTFormat format, boolean header, byte... bytes) {
+        return read(expectedType, header, NBTInput.of(bytes, format));
+    }
+
+    /**
+     * Reads the NBT in the given format from the given buffer, starting at its current position.
+     * Afterwards, the position of the buffer is set to directly behind the NBT that was read.
+     * @param expectedType The expected resulting tag type
+     * @param format The format of the NBT
+     * @param header Whether the NBT contains a header
+     * @param buffer The buffer
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(TagType expectedType, NBTFormat format, boolean header, ByteBuffer buffer) {
+        return read(expectedType, header, NBTInput.of(buffer, format));
+    }
+
+    /**
+     * Reads the NBT in the given format from the given input stream
+     * @param expectedType The expected resulting tag type
+     * @param format The format of the NBT
+     * @param header Whether the NBT contains a header
+     * @param stream The input stream
+     * @return The resulting NBT Tag
+     */
+    public static Tag read(TagType expectedType, NBTFormat format, boolean header, InputStream stream) {
+        return read(expectedType, header, NBTInput.of(stream, format));
+    }
+
+    /**
+     * Extracts a single tag from the NBT in the given byte array. Only the tag at the given path is decoded;
+     * all other tags are skipped.
+     * @param path The path of the tag, relative to the root tag, like {@code abilities.flySpeed}
+     * @param header Whether the NBT contains a header
+     * @param bytes The bytes
+     * @return The tag, or null if there is no tag at the given path
+     */
+    public static Tag extract(String path, boolean header, byte... bytes) {
+        return extract(NBTPath.compile(path), header, bytes);
+    }
+
+    /**
+     * Extracts a single tag from the NBT in the given byte array. Only the tag at the given path is decoded;
+     * all other tags are skipped.
+     * @param path The compiled path of the tag
+     * @param header Whether the NBT contains a header
+     * @param bytes The bytes
+     * @return The tag, or null if there is no tag at the given path
+     */
+    public static Tag extract(NBTPath path, boolean header, byte... bytes) {
+        return extract(path, header, NBTInput.of(bytes));
+    }
+
+    /**
+     * Extracts a single tag from the NBT in the given buffer, starting at its current position.
+     * Only the tag at the given path is decoded; all other tags are skipped.
+     * @param path The path of the tag, relative to the root tag, like {@code abilities.flySpeed}
+     * @param header Whether the NBT contains a header
+     * @param buffer The buffer
+     * @return The tag, or null if there is no tag at the given path
+     */
+    public static Tag extract(String path, boolean header, ByteBuffer buffer) {
+        return extract(NBTPath.compile(path), header, buffer);
+    }
+
+    /**
+     * Extracts a single tag from the NBT in the given buffer, starting at its current position.
+     * Only the tag at the given path is decoded; all other tags are skipped.
+     * @param path The compiled path of the tag
+     * @param header Whether the NBT contains a header
+     * @param buffer The buffer
+     * @return The tag, or null if there is no tag at the given path
+     */
+    public static Tag extract(NBTPath path, boolean header, ByteBuffer buffer) {
+        return extract(path, header, NBTInput.of(buffer));
+    }
+
+    /**
+     * Extracts a single tag from the NBT in the given input stream. Only the tag at the given path is decoded;
+     * all other tags are skipped. If the tag is found, the stream is left directly behind it, and the rest of the NBT
+     * is not read. Streams without mark support are read in small steps for this; see {@link NBTInput#of(InputStream)}.
+     * @param path The path of the tag, relative to the root tag, like {@code abilities.flySpeed}
+     * @param header Whether the NBT contains a header
+     * @param stream The input stream
+     * @return The tag, or null if there is no tag at the given path
+     */
+    public static Tag extract(String path, boolean header, InputStream stream) {
+        return extract(NBTPath.compile(path), header, stream);
+    }
+
+    /**
+     * Extracts a single tag from the NBT in the given input stream. Only the tag at the given path is decoded;
+     * all other tags are skipped. If the tag is found, the stream is left directly behind it, and the rest of the NBT
+     * is not read. Streams without mark support are read in small steps for this; see {@link NBTInput#of(InputStream)}.
+     * @param path The compiled path of the tag
+     * @param header Whether the NBT contains a header
+     * @param stream The input stream
+     * @return The tag, or null if there is no tag at the given path
+     */
+    public static Tag extract(NBTPath path, boolean header, InputStream stream) {
+        return extract(path, header, NBTInput.of(stream));
+    }
+
+    /**
+     * Extracts a single tag from the given input, and releases the input afterwards
+     * @param path The compiled path of the tag
+     * @param header Whether the NBT contains a header
+     * @param input The input
+     * @return The tag, or null if there is no tag at the given path
+     */
+    private static Tag extract(NBTPath path, boolean header, NBTInput input) {
         try {
-            // Ignore the first 8 header bytes
-            if (header && stream.skip(8) != 8) {
-                throw new IllegalStateException("No header found.");
+            try {
+                if (header) skipHeader(input);
+
+                return path.extract(input);
+            } finally {
+                input.release();
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            return expectedType == null ? Tag.read(stream) : Tag.read(stream, expectedType.getId());
+    /**
+     * Reads the NBT from the given input, and releases the input afterwards
+     * @param expectedType The expected resulting tag type
+     * @param header Whether the NBT contains a header
+     * @param input The input
+     * @return The resulting NBT Tag
+     */
+    private static Tag read(TagType expectedType, boolean header, NBTInput input) {
+        try {
+            try {
+                if (header) skipHeader(input);
+
+                return expectedType == null ? Tag.read(input) : Tag.read(input, expectedType.getId());
+            } finally {
+                input.release();
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -113,18 +417,360 @@ public class NBTUtil {
      * @return The byte array
      */
     public static byte[] write(Tag tag, HeaderType headerType) {
-        byte[] result = tag.getBytes();
-
-        // If there is a header, add it
-        if (headerType != HeaderType.NONE) {
-            result = ByteBuffer.allocate(8 + result.length)
-                    .order(ByteOrder.LITTLE_ENDIAN)
-                    .putInt(headerType.getHeaderTypeNumber())
-                    .putInt(result.length)
-                    .put(result)
-                    .array();
+        // The exact size is known up front, so the array is allocated once and returned without copying
+        int size = tag.serializedSize();
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput(headerType == HeaderType.NONE ? size : size + 8);
+        try {
+            if (headerType != HeaderType.NONE) {
+                output.writeInt(headerType.getHeaderTypeNumber());
+                output.writeInt(size);
+            }
+
+            tag.write(output);
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
         }
+        return output.toByteArray();
+    }
 
-        return result;
+    /**
+     * Computes the exact amount of bytes that the given NBT Tag takes when it is written with the given header.
+     * See {@link Tag#serializedSize()}.
+     * @param tag The NBT Tag
+     * @param headerType The header type that should be added to the NBT
+     * @return The amount of bytes
+     */
+    public static int serializedSize(Tag tag, HeaderType headerType) {
+        int size = tag.serializedSize();
+        return headerType == HeaderType.NONE ? size : size + 8;
+    }
+
+    /**
+     * Converts the given NBT Tag to a byte array, using the threads of the given pool for large compounds and lists.
+     * The result is identical to that of {@link #write(Tag)}. The tag must not be changed while it is being written.
+     * @param tag The NBT Tag
+     * @param pool The pool, like {@link java.util.concurrent.ForkJoinPool#commonPool()}
+     * @return The byte array
+     */
+    public static byte[] writeParallel(Tag tag, ForkJoinPool pool) {
+        return tag.getBytes(pool);
+    }
+
+    /**
+     * Converts the given NBT Tag to a byte array in the given format
+     * @param tag The NBT Tag
+     * @param format The format of the NBT
+     * @return The byte array
+     */
+    public static byte[] write(Tag tag, NBTFormat format) {
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput(tag.serializedSize(format), format);
+        try {
+            tag.write(output);
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes the given NBT Tag in the given format to the given output stream. The stream is not flushed or closed.
+     * @param tag The NBT Tag
+     * @param format The format of the NBT
+     * @param stream The output stream
+     * @throws IOException If the output stream threw an exception
+     */
+    public static void write(Tag tag, NBTFormat format, OutputStream stream) throws IOException {
+        write(tag, HeaderType.NONE, NBTOutput.of(stream, format));
+    }
+
+    /**
+     * Converts NBT from one format to another, without creating any tags
+     * @param from The format of the given bytes
+     * @param to The format of the result
+     * @param bytes The bytes
+     * @return The converted bytes
+     */
+    public static byte[] transcode(NBTFormat from, NBTFormat to, byte... bytes) {
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput(bytes.length + 16, to);
+        try {
+            NBTInput.of(bytes, from).transfer(output);
+        } catch (IOException e) {
+            // Cannot happen, the input and output are kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Converts NBT read from the given input stream from one format to another, and writes it to the given output
+     * stream, without creating any tags. The output stream is not flushed or closed.
+     * @param from The format of the input stream
+     * @param stream The input stream
+     * @param to The format of the output stream
+     * @param outputStream The output stream
+     * @throws IOException If one of the streams threw an exception
+     */
+    public static void transcode(NBTFormat from, InputStream stream, NBTFormat to, OutputStream outputStream) throws IOException {
+        NBTInput input = NBTInput.of(stream, from);
+        NBTOutput output = NBTOutput.of(outputStream, to);
+        try {
+            input.transfer(output);
+        } finally {
+            input.release();
+        }
+        output.flush();
+    }
+
+    /**
+     * Writes the given NBT Tag to the given output stream. The stream is not flushed or closed.
+     * @param tag The NBT Tag
+     * @param headerType The header type that should be added to the NBT
+     * @param stream The output stream
+     * @throws IOException If the output stream threw an exception
+     */
+    public static void write(Tag tag, HeaderType headerType, OutputStream stream) throws IOException {
+        write(tag, headerType, NBTOutput.of(stream));
+    }
+
+    /**
+     * Writes the given NBT Tag to the given channel
+     * @param tag The NBT Tag
+     * @param headerType The header type that should be added to the NBT
+     * @param channel The channel
+     * @throws IOException If the channel threw an exception
+     */
+    public static void write(Tag tag, HeaderType headerType, WritableByteChannel channel) throws IOException {
+        write(tag, headerType, NBTOutput.of(channel));
+    }
+
+    /**
+     * Writes the given NBT Tag to the given output, and flushes the output
+     * @param tag The NBT Tag
+     * @param headerType The header type that should be added to the NBT
+     * @param output The output
+     * @throws IOException If the output threw an exception
+     */
+    private static void write(Tag tag, HeaderType headerType, NBTOutput output) throws IOException {
+        if (headerType == HeaderType.NONE) {
+            tag.write(output);
+        } else {
+            // The length in the header is computed up front, so the tag can be written directly behind it
+            output.writeInt(headerType.getHeaderTypeNumber());
+            output.writeInt(tag.serializedSize());
+            tag.write(output);
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads all consecutive root tags from the given buffer, from its current position up to its limit.
+     * Bedrock stores many values this way, like the block palettes of sub-chunks and the entities of a chunk.
+     * Afterwards, the position of the buffer is set to its limit.
+     * @param buffer The buffer
+     * @return The resulting NBT Tags, in the order in which they were stored
+     * @throws IllegalStateException If the buffer does not end directly behind the last root tag
+     */
+    public static List<Tag> readConcatenated(ByteBuffer buffer) {
+        return readConcatenated(NBTFormat.LITTLE_ENDIAN, buffer);
+    }
+
+    /**
+     * Reads all consecutive root tags in the given format from the given buffer, from its current position up to its
+     * limit. Afterwards, the position of the buffer is set to its limit.
+     * @param format The format of the NBT
+     * @param buffer The buffer
+     * @return The resulting NBT Tags, in the order in which they were stored
+     * @throws IllegalStateException If the buffer does not end directly behind the last root tag
+     */
+    public static List<Tag> readConcatenated(NBTFormat format, ByteBuffer buffer) {
+        List<Tag> tags = new ArrayList<>();
+        new RootSpliterator(buffer, format).forEachRemaining(root -> tags.add(root.getTag()));
+        ((Buffer) buffer).position(buffer.limit());
+        return tags;
+    }
+
+    /**
+     * Creates an iterator over the consecutive root tags in the given buffer, from its current position up to its
+     * limit. Every tag is read when it is iterated over. The position of the buffer is not changed, and the buffer
+     * contents must not be changed while iterating.
+     * @param buffer The buffer
+     * @return The iterator
+     */
+    public static Iterator<NBTRoot> iterate(ByteBuffer buffer) {
+        return iterate(NBTFormat.LITTLE_ENDIAN, buffer);
+    }
+
+    /**
+     * Creates an iterator over the consecutive root tags in the given format in the given buffer, from its current
+     * position up to its limit. See {@link #iterate(ByteBuffer)}.
+     * @param format The format of the NBT
+     * @param buffer The buffer
+     * @return The iterator
+     */
+    public static Iterator<NBTRoot> iterate(NBTFormat format, ByteBuffer buffer) {
+        return Spliterators.iterator(new RootSpliterator(buffer, format));
+    }
+
+    /**
+     * Creates a stream of the consecutive root tags in the given format in the given buffer, from its current position
+     * up to its limit. Every tag is read when it is processed. A parallel stream first skips over all tags to find
+     * where they start, and then reads them on multiple threads.
+     * The position of the buffer is not changed, and the buffer contents must not be changed while streaming.
+     * @param format The format of the NBT
+     * @param buffer The buffer
+     * @param parallel Whether the stream is parallel
+     * @return The stream
+     */
+    public static Stream<NBTRoot> stream(NBTFormat format, ByteBuffer buffer, boolean parallel) {
+        return StreamSupport.stream(new RootSpliterator(buffer, format), parallel);
+    }
+
+    /**
+     * Converts the given NBT Tags to a single byte array, in which they are stored back to back.
+     * The result can be read with {@link #readConcatenated(ByteBuffer)}.
+     * @param tags The NBT Tags
+     * @return The byte array
+     */
+    public static byte[] writeConcatenated(Collection<? extends Tag> tags) {
+        return writeConcatenated(tags, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Converts the given NBT Tags to a single byte array in the given format, in which they are stored back to back
+     * @param tags The NBT Tags
+     * @param format The format of the NBT
+     * @return The byte array
+     */
+    public static byte[] writeConcatenated(Collection<? extends Tag> tags, NBTFormat format) {
+        int size = 0;
+        for (Tag tag : tags) {
+            size += tag.serializedSize(format);
+        }
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput(size, format);
+        try {
+            for (Tag tag : tags) {
+                tag.write(output);
+            }
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Reads the NBT from all given byte arrays, spread out over the threads of the given executor.
+     * Failures do not affect the other items, and are reported in the result of the failed item.
+     * @param header Whether the NBT contains a header
+     * @param blobs The byte arrays
+     * @param executor The executor, like a ForkJoinPool
+     * @return The results, in the order of the given byte arrays
+     */
+    public static List<NBTResult<Tag>> readAll(boolean header, List<byte[]> blobs, Executor executor) {
+        return runAll(blobs, executor, bytes -> readItem(header, NBTInput.of(bytes)));
+    }
+
+    /**
+     * Reads the NBT from all given buffers (from their current positions), spread out over the threads of the given
+     * executor. The positions of the buffers are not changed.
+     * Failures do not affect the other items, and are reported in the result of the failed item.
+     * @param header Whether the NBT contains a header
+     * @param buffers The buffers
+     * @param executor The executor, like a ForkJoinPool
+     * @return The results, in the order of the given buffers
+     */
+    public static List<NBTResult<Tag>> readAll(boolean header, Stream<ByteBuffer> buffers, Executor executor) {
+        return runAll(buffers.collect(Collectors.toList()), executor, buffer -> readItem(header, NBTInput.of(buffer)));
+    }
+
+    /**
+     * Converts all given NBT Tags to byte arrays, spread out over the threads of the given executor.
+     * Every thread reuses its own output buffer. Failures do not affect the other items, and are reported in the
+     * result of the failed item.
+     * @param tags The NBT Tags, which must not be changed while they are being written
+     * @param executor The executor, like a ForkJoinPool
+     * @return The results, in the order of the given tags
+     */
+    public static List<NBTResult<byte[]>> writeAll(Collection<? extends Tag> tags, Executor executor) {
+        return runAll(new ArrayList<>(tags), executor, tag -> {
+            ByteArrayNBTOutput output = BATCH_OUTPUTS.get();
+            output.reset();
+            tag.write(output);
+            byte[] result = output.toByteArray();
+            // Do not hold on to the memory of exceptionally large items
+            if (output.size() > MAX_RETAINED_BUFFER) BATCH_OUTPUTS.remove();
+            return result;
+        });
+    }
+
+    /**
+     * Reads a single batch item from the given input
+     * @param header Whether the NBT contains a header
+     * @param input The input
+     * @return The resulting NBT Tag
+     * @throws IOException If the input threw an exception
+     */
+    private static Tag readItem(boolean header, NBTInput input) throws IOException {
+        if (header) skipHeader(input);
+        return Tag.read(input);
+    }
+
+    /**
+     * Applies the given task to all items, in chunks of consecutive items that are run on the given executor.
+     * Returns when all items have been processed.
+     * @param items The items
+     * @param executor The executor
+     * @param task The task
+     * @param <T> The type of the items
+     * @param <R> The type of the results
+     * @return The results, in the order of the items
+     */
+    private static <T, R> List<NBTResult<R>> runAll(List<T> items, Executor executor, BatchTask<T, R> task) {
+        List<T> list = items instanceof RandomAccess ? items : new ArrayList<>(items);
+        int size = list.size();
+        // Every chunk sets its own slots. Joining the chunks makes their results visible to this thread
+        List<NBTResult<R>> results = new ArrayList<>(Collections.nCopies(size, null));
+        int chunks = Math.min(size, Runtime.getRuntime().availableProcessors() * CHUNKS_PER_PROCESSOR);
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = (int) ((long) size * chunk / chunks);
+            int to = (int) ((long) size * (chunk + 1) / chunks);
+            futures[chunk] = CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    // Errors (like a StackOverflowError on deeply nested NBT) only fail their own item as well
+                    try {
+                        results.set(i, NBTResult.success(task.apply(list.get(i))));
+                    } catch (Throwable e) {
+                        results.set(i, NBTResult.failure(e));
+                    }
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).join();
+        return results;
+    }
+
+    /**
+     * Functional interface for processing a single batch item
+     * @param <T> The type of the item
+     * @param <R> The type of the result
+     */
+    @FunctionalInterface
+    private interface BatchTask<T, R> {
+
+        R apply(T item) throws IOException;
+    }
+
+    /**
+     * Skips the 8 header bytes of the given input
+     * @param input The input
+     * @throws IOException If the input threw an exception
+     */
+    private static void skipHeader(NBTInput input) throws IOException {
+        if (!input.hasRemaining(8)) throw new IllegalStateException("No header found.");
+        input.skip(8);
     }
 }
@@ -0,0 +1,135 @@
+package nl.itslars.mcpenbt;
+
+import nl.itslars.mcpenbt.enums.NBTFormat;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator that reads consecutive root tags from a buffer, until the end of the buffer.
+ * Roots are read one at a time. The first split skips over the remaining roots without decoding them, to find where
+ * every root starts, after which the roots can be divided over threads.
+ */
+class RootSpliterator implements Spliterator<NBTRoot> {
+
+    // The smallest amount of roots that is split into two halves
+    private static final int MIN_SPLIT = 2;
+
+    private final ByteBuffer buffer;
+    private final NBTFormat format;
+    // The position of the next root, and the end of the last root
+    private int position;
+    private final int end;
+    // The start position of every root, followed by the end of the last one. Null until the first split
+    private int[] offsets;
+    // The range of roots in the offsets that this spliterator covers
+    private int index;
+    private int fence;
+
+    RootSpliterator(ByteBuffer buffer, NBTFormat format) {
+        this.buffer = buffer.duplicate();
+        this.format = format;
+        this.position = buffer.position();
+        this.end = buffer.limit();
+    }
+
+    private RootSpliterator(ByteBuffer buffer, NBTFormat format, int[] offsets, int index, int fence) {
+        this.buffer = buffer;
+        this.format = format;
+        this.end = offsets[fence];
+        this.offsets = offsets;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super NBTRoot> action) {
+        int start;
+        if (offsets == null) {
+            if (position >= end) return false;
+            start = position;
+        } else {
+            if (index >= fence) return false;
+            start = offsets[index++];
+        }
+
+        NBTInput input = inputAt(start);
+        try {
+            Tag tag = Tag.read(input);
+            // An end byte is not a valid root tag
+            if (tag == null) throw new IllegalStateException("Invalid NBT formatting.");
+            position = input.getPosition();
+            action.accept(new NBTRoot(tag, start, position - start));
+        } catch (IOException e) {
+            // Cannot happen, the input is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public Spliterator<NBTRoot> trySplit() {
+        if (offsets == null) scan();
+        if (fence - index < MIN_SPLIT) return null;
+        int middle = (index + fence) >>> 1;
+        RootSpliterator prefix = new RootSpliterator(buffer, format, offsets, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return offsets == null ? Long.MAX_VALUE : fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        int characteristics = ORDERED | NONNULL | IMMUTABLE;
+        return offsets == null ? characteristics : characteristics | SIZED | SUBSIZED;
+    }
+
+    /**
+     * Finds the start position of every remaining root, by skipping over them
+     */
+    private void scan() {
+        int[] found = new int[16];
+        int count = 0;
+        NBTInput input = inputAt(position);
+        try {
+            while (input.hasRemaining()) {
+                if (count + 1 >= found.length) found = Arrays.copyOf(found, found.length * 2);
+                found[count++] = input.getPosition();
+                int id = input.readByte();
+                if (id == 0) throw new IllegalStateException("Invalid NBT formatting.");
+                input.skip(input.readStringLength());
+                input.skipValue(id);
+            }
+        } catch (IOException e) {
+            // Cannot happen, the input is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        found[count] = input.getPosition();
+        this.offsets = found;
+        this.index = 0;
+        this.fence = count;
+    }
+
+    /**
+     * Creates an input that reads the buffer from the given position up to the end of the last root
+     * @param start The position
+     * @return The input
+     */
+    private NBTInput inputAt(int start) {
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).limit(end);
+        ((Buffer) view).position(start);
+        return NBTInput.of(view, format);
+    }
+}
@@ -0,0 +1,156 @@
+package nl.itslars.mcpenbt.chunk;
+
+import nl.itslars.mcpenbt.io.ByteArrayNBTOutput;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bedrock sub-chunk: a 16x16x16 section of a chunk, as it is stored in the world database.
+ * It consists of a version, and one or more storages of blocks; usually one for the blocks, and one for the blocks
+ * that are waterlogged. Versions 1 (a single storage), 8 and 9 (which also stores the Y index) are supported.
+ */
+public class SubChunk {
+
+    private final int version;
+    private final int y;
+    private final List<SubChunkStorage> storages;
+
+    /**
+     * Creates a new sub-chunk
+     * @param version The version; 1, 8 or 9
+     * @param y The Y index of the sub-chunk in its chunk. Only written in version 9
+     * @param storages The storages. Version 1 requires exactly one
+     */
+    public SubChunk(int version, int y, List<SubChunkStorage> storages) {
+        if (version != 1 && version != 8 && version != 9) {
+            throw new IllegalArgumentException("Unsupported sub-chunk version: " + version);
+        }
+        this.version = version;
+        this.y = y;
+        this.storages = storages;
+    }
+
+    /**
+     * Reads a sub-chunk from the given byte array
+     * @param bytes The bytes
+     * @return The sub-chunk
+     */
+    public static SubChunk read(byte... bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads a sub-chunk from the given buffer, starting at its current position.
+     * Afterwards, the position of the buffer is set to directly behind the sub-chunk.
+     * @param buffer The buffer
+     * @return The sub-chunk
+     */
+    public static SubChunk read(ByteBuffer buffer) {
+        NBTInput input = NBTInput.of(buffer);
+        try {
+            try {
+                return read(input);
+            } finally {
+                input.release();
+            }
+        } catch (IOException e) {
+            // Cannot happen, the input is kept in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a sub-chunk from the given little-endian input
+     * @param input The input
+     * @return The sub-chunk
+     * @throws IOException If the input threw an exception
+     * @throws IllegalStateException If the sub-chunk is malformed, or has an unsupported version
+     */
+    public static SubChunk read(NBTInput input) throws IOException {
+        int version = input.readUnsignedByte();
+        int count;
+        int y = 0;
+        switch (version) {
+            case 1:
+                count = 1;
+                break;
+            case 8:
+                count = input.readUnsignedByte();
+                break;
+            case 9:
+                count = input.readUnsignedByte();
+                y = input.readByte();
+                break;
+            default:
+                throw new IllegalStateException("Unsupported sub-chunk version: " + version);
+        }
+
+        List<SubChunkStorage> storages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            storages.add(SubChunkStorage.read(input));
+        }
+        return new SubChunk(version, y, storages);
+    }
+
+    /**
+     * Retrieves the version
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Retrieves the Y index of this sub-chunk in its chunk
+     * @return The Y index, or 0 if the version does not store it
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Retrieves the storages. Changes to the list are reflected in this sub-chunk.
+     * @return The storages
+     */
+    public List<SubChunkStorage> getStorages() {
+        return storages;
+    }
+
+    /**
+     * Converts this sub-chunk to a byte array
+     * @return The byte array
+     */
+    public byte[] getBytes() {
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput();
+        try {
+            write(output);
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes this sub-chunk to the given little-endian output
+     * @param output The output
+     * @throws IOException If the output threw an exception
+     */
+    public void write(NBTOutput output) throws IOException {
+        if (version == 1 && storages.size() != 1) {
+            throw new IllegalStateException("Version 1 sub-chunks have exactly one storage.");
+        }
+        output.writeByte(version);
+        if (version != 1) output.writeByte(storages.size());
+        if (version == 9) output.writeByte(y);
+        for (SubChunkStorage storage : storages) {
+            storage.write(output);
+        }
+    }
+}
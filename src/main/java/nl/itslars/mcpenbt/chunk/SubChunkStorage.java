@@ -0,0 +1,381 @@
+package nl.itslars.mcpenbt.chunk;
+
+import nl.itslars.mcpenbt.NBTUtil;
+import nl.itslars.mcpenbt.enums.NBTFormat;
+import nl.itslars.mcpenbt.io.ByteArrayNBTOutput;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
+import nl.itslars.mcpenbt.io.PaletteCache;
+import nl.itslars.mcpenbt.tags.CompoundTag;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A layer of blocks of a Bedrock sub-chunk: the palette index of each of the 16x16x16 blocks, and a palette of block
+ * compounds (name, states and version).
+ * On disk, the indices are packed into little-endian words with a fixed amount of bits per block, followed by the
+ * palette. Here, they are unpacked into a plain array.
+ * Palette entries are deduplicated by their serialized bytes, and are frozen, so that they can be shared between
+ * storages. When written, unused palette entries are left out, and the smallest amount of bits per block is used.
+ */
+public class SubChunkStorage {
+
+    /**
+     * The amount of blocks in a storage
+     */
+    public static final int SIZE = 4096;
+    // The amounts of bits per block that Bedrock supports, from small to large
+    private static final int[] BITS_PER_BLOCK = {1, 2, 3, 4, 5, 6, 8, 16};
+    // The largest amount of palette entries that 16 bits per block can address
+    private static final int MAX_PALETTE_SIZE = 1 << 16;
+
+    // The palette index of every block, as an unsigned short, in XZY order
+    private final short[] indices;
+    private final List<CompoundTag> palette;
+    // The palette index of the serialized bytes of every palette entry. Only created when blocks are added
+    private Map<ByteBuffer, Integer> paletteIndices;
+
+    /**
+     * Creates a new storage in which all blocks are the given block, like air
+     * @param block The block compound, which is frozen
+     */
+    public SubChunkStorage(CompoundTag block) {
+        this(new short[SIZE], new ArrayList<>());
+        getPaletteIndex(block);
+    }
+
+    private SubChunkStorage(short[] indices, List<CompoundTag> palette) {
+        this.indices = indices;
+        this.palette = palette;
+    }
+
+    /**
+     * Reads a storage from the given buffer, starting at its current position.
+     * Afterwards, the position of the buffer is set to directly behind the storage.
+     * Palette entries are looked up in {@link PaletteCache#getDefault()}, if it is set.
+     * @param buffer The buffer
+     * @return The storage
+     */
+    public static SubChunkStorage read(ByteBuffer buffer) {
+        return read(buffer, PaletteCache.getDefault());
+    }
+
+    /**
+     * Reads a storage from the given buffer, starting at its current position.
+     * Afterwards, the position of the buffer is set to directly behind the storage.
+     * @param buffer The buffer
+     * @param cache The cache that palette entries are looked up in, or null to decode all of them
+     * @return The storage
+     */
+    public static SubChunkStorage read(ByteBuffer buffer, PaletteCache cache) {
+        NBTInput input = NBTInput.of(buffer);
+        try {
+            try {
+                return read(input, cache);
+            } finally {
+                input.release();
+            }
+        } catch (IOException e) {
+            // Cannot happen, the input is kept in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a storage from the given little-endian input. Palette entries are looked up in
+     * {@link PaletteCache#getDefault()}, if it is set.
+     * @param input The input
+     * @return The storage
+     * @throws IOException If the input threw an exception
+     * @throws IllegalStateException If the storage is malformed, or has a palette of runtime IDs
+     */
+    public static SubChunkStorage read(NBTInput input) throws IOException {
+        return read(input, PaletteCache.getDefault());
+    }
+
+    /**
+     * Reads a storage from the given little-endian input
+     * @param input The input
+     * @param cache The cache that palette entries are looked up in, or null to decode all of them
+     * @return The storage
+     * @throws IOException If the input threw an exception
+     * @throws IllegalStateException If the storage is malformed, or has a palette of runtime IDs
+     */
+    public static SubChunkStorage read(NBTInput input, PaletteCache cache) throws IOException {
+        if (input.getFormat() != NBTFormat.LITTLE_ENDIAN) {
+            throw new IllegalArgumentException("Sub-chunks can only be read in the little-endian format.");
+        }
+        int header = input.readUnsignedByte();
+        if ((header & 1) != 0) throw new IllegalStateException("Runtime ID palettes are not supported.");
+        int bits = header >>> 1;
+
+        short[] indices = new short[SIZE];
+        int paletteSize;
+        if (bits == 0) {
+            // All blocks are the single palette entry, whose count is not stored
+            paletteSize = 1;
+        } else {
+            if (Arrays.binarySearch(BITS_PER_BLOCK, bits) < 0) throw new IllegalStateException("Invalid NBT formatting.");
+            int[] words = new int[wordCount(bits)];
+            input.readInts(words, 0, words.length);
+            unpack(words, bits, indices);
+            paletteSize = input.readInt();
+            if (paletteSize <= 0 || paletteSize > MAX_PALETTE_SIZE) throw new IllegalStateException("Invalid NBT formatting.");
+        }
+
+        // Entries with the same bytes are merged, so every palette index is mapped to the index of the first of them
+        List<CompoundTag> palette = new ArrayList<>(paletteSize);
+        Map<ByteBuffer, Integer> merged = new HashMap<>();
+        int[] mapping = new int[paletteSize];
+        ByteBuffer source = input.getSource();
+        for (int i = 0; i < paletteSize; i++) {
+            int start = input.getPosition();
+            CompoundTag block = cache == null ? readBlock(input) : cache.read(input);
+            // The bytes are only needed while reading, so they do not have to be copied
+            ByteBuffer key = source == null ? ByteBuffer.wrap(NBTUtil.write(block)) : slice(source, start, input.getPosition());
+            Integer existing = merged.putIfAbsent(key, palette.size());
+            if (existing == null) {
+                mapping[i] = palette.size();
+                palette.add(block);
+            } else {
+                mapping[i] = existing;
+            }
+        }
+
+        for (int i = 0; i < SIZE; i++) {
+            int index = indices[i] & 0xFFFF;
+            if (index >= paletteSize) throw new IllegalStateException("Invalid NBT formatting.");
+            indices[i] = (short) mapping[index];
+        }
+        return new SubChunkStorage(indices, palette);
+    }
+
+    /**
+     * Computes the index of the block at the given position in the index array
+     * @param x The x coordinate within the sub-chunk, between 0 and 15
+     * @param y The y coordinate within the sub-chunk, between 0 and 15
+     * @param z The z coordinate within the sub-chunk, between 0 and 15
+     * @return The index
+     */
+    public static int index(int x, int y, int z) {
+        return (x << 8) | (z << 4) | y;
+    }
+
+    /**
+     * Retrieves the block at the given position
+     * @param x The x coordinate within the sub-chunk, between 0 and 15
+     * @param y The y coordinate within the sub-chunk, between 0 and 15
+     * @param z The z coordinate within the sub-chunk, between 0 and 15
+     * @return The frozen block compound
+     */
+    public CompoundTag getBlock(int x, int y, int z) {
+        return palette.get(indices[index(x, y, z)] & 0xFFFF);
+    }
+
+    /**
+     * Sets the block at the given position. The block is added to the palette if there is no entry with the same bytes.
+     * @param x The x coordinate within the sub-chunk, between 0 and 15
+     * @param y The y coordinate within the sub-chunk, between 0 and 15
+     * @param z The z coordinate within the sub-chunk, between 0 and 15
+     * @param block The block compound, which is frozen if it is added to the palette
+     */
+    public void setBlock(int x, int y, int z, CompoundTag block) {
+        indices[index(x, y, z)] = (short) getPaletteIndex(block);
+    }
+
+    /**
+     * Retrieves the palette index of the given block, and adds the block to the palette if there is no entry with the
+     * same bytes yet
+     * @param block The block compound, which is frozen if it is added to the palette
+     * @return The palette index
+     * @throws IllegalStateException If the palette is full
+     */
+    public int getPaletteIndex(CompoundTag block) {
+        if (paletteIndices == null) {
+            paletteIndices = new HashMap<>();
+            for (int i = 0; i < palette.size(); i++) {
+                paletteIndices.put(ByteBuffer.wrap(NBTUtil.write(palette.get(i))), i);
+            }
+        }
+
+        ByteBuffer key = ByteBuffer.wrap(NBTUtil.write(block));
+        Integer index = paletteIndices.get(key);
+        if (index != null) return index;
+
+        if (palette.size() == MAX_PALETTE_SIZE) throw new IllegalStateException("The palette is full.");
+        palette.add(block.freeze());
+        paletteIndices.put(key, palette.size() - 1);
+        return palette.size() - 1;
+    }
+
+    /**
+     * Retrieves the palette. Entries are never removed from it, but unused entries are not written.
+     * @return An unmodifiable view of the palette
+     */
+    public List<CompoundTag> getPalette() {
+        return Collections.unmodifiableList(palette);
+    }
+
+    /**
+     * Retrieves the palette index of every block, in the order of {@link #index(int, int, int)}.
+     * The indices are unsigned shorts (use {@code index & 0xFFFF}). The array is not copied, so changes to it are
+     * reflected in this storage; every index must be smaller than the size of the palette.
+     * @return The index array
+     */
+    public short[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Converts this storage to a byte array
+     * @return The byte array
+     */
+    public byte[] getBytes() {
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput();
+        try {
+            write(output);
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes this storage to the given little-endian output
+     * @param output The output
+     * @throws IOException If the output threw an exception
+     */
+    public void write(NBTOutput output) throws IOException {
+        if (output.getFormat() != NBTFormat.LITTLE_ENDIAN) {
+            throw new IllegalArgumentException("Sub-chunks can only be written in the little-endian format.");
+        }
+
+        // Number the used palette entries in their current order, so that unused entries are left out
+        int[] mapping = new int[palette.size()];
+        for (short index : indices) {
+            mapping[index & 0xFFFF] = 1;
+        }
+        int used = 0;
+        for (int i = 0; i < mapping.length; i++) {
+            mapping[i] = mapping[i] == 0 ? -1 : used++;
+        }
+
+        int bits = bitsPerBlock(used);
+        output.writeByte(bits << 1);
+        if (bits != 0) {
+            int[] words = pack(indices, mapping, bits);
+            output.writeInts(words, 0, words.length);
+            output.writeInt(used);
+        }
+        for (int i = 0; i < mapping.length; i++) {
+            if (mapping[i] != -1) palette.get(i).write(output);
+        }
+    }
+
+    /**
+     * Computes the smallest supported amount of bits per block for a palette of the given size.
+     * A palette of a single entry takes 0 bits, as Bedrock writes since 1.18.
+     * @param paletteSize The amount of palette entries
+     * @return The amount of bits per block
+     */
+    static int bitsPerBlock(int paletteSize) {
+        if (paletteSize <= 1) return 0;
+        int needed = 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+        for (int bits : BITS_PER_BLOCK) {
+            if (bits >= needed) return bits;
+        }
+        throw new IllegalStateException("The palette is full.");
+    }
+
+    /**
+     * Computes the amount of words that the indices take with the given amount of bits per block.
+     * Blocks do not span two words, so the highest bits of a word may be unused.
+     * @param bits The amount of bits per block
+     * @return The amount of words
+     */
+    private static int wordCount(int bits) {
+        int perWord = 32 / bits;
+        return (SIZE + perWord - 1) / perWord;
+    }
+
+    /**
+     * Unpacks the given words into palette indices. The lowest bits of a word hold the first block.
+     * @param words The words
+     * @param bits The amount of bits per block
+     * @param indices The index array to fill
+     */
+    private static void unpack(int[] words, int bits, short[] indices) {
+        int perWord = 32 / bits;
+        int mask = (1 << bits) - 1;
+        int fullWords = SIZE / perWord;
+        int index = 0;
+        for (int w = 0; w < fullWords; w++) {
+            int word = words[w];
+            for (int i = 0; i < perWord; i++) {
+                indices[index++] = (short) (word & mask);
+                word >>>= bits;
+            }
+        }
+        // The last word is only partly used if the amount of blocks per word does not divide 4096
+        if (index < SIZE) {
+            int word = words[fullWords];
+            while (index < SIZE) {
+                indices[index++] = (short) (word & mask);
+                word >>>= bits;
+            }
+        }
+    }
+
+    /**
+     * Packs the given palette indices into words
+     * @param indices The palette indices
+     * @param mapping The written palette index of every palette index
+     * @param bits The amount of bits per block
+     * @return The words
+     */
+    private static int[] pack(short[] indices, int[] mapping, int bits) {
+        int perWord = 32 / bits;
+        int[] words = new int[wordCount(bits)];
+        int index = 0;
+        for (int w = 0; w < words.length; w++) {
+            int word = 0;
+            for (int i = 0; i < perWord && index < SIZE; i++) {
+                word |= mapping[indices[index++] & 0xFFFF] << (i * bits);
+            }
+            words[w] = word;
+        }
+        return words;
+    }
+
+    /**
+     * Decodes a block compound from the given input, and freezes it
+     * @param input The input
+     * @return The frozen block compound
+     * @throws IOException If the input threw an exception
+     */
+    private static CompoundTag readBlock(NBTInput input) throws IOException {
+        Tag tag = Tag.read(input);
+        if (!(tag instanceof CompoundTag)) throw new IllegalStateException("Invalid NBT formatting.");
+        return ((CompoundTag) tag).freeze();
+    }
+
+    /**
+     * Creates a view of the given range of the given buffer, without copying it
+     * @param buffer The buffer
+     * @param start The position of the first byte
+     * @param end The position behind the last byte
+     * @return The view
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).limit(end);
+        ((Buffer) view).position(start);
+        return view.slice();
+    }
+}
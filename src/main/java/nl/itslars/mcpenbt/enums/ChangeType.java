@@ -0,0 +1,43 @@
+package nl.itslars.mcpenbt.enums;
+
+/**
+ * Represents the kind of a change in an NBT diff
+ */
+public enum ChangeType {
+
+    // A tag was added to a compound
+    ADDED((byte) 0),
+    // A tag was removed from a compound
+    REMOVED((byte) 1),
+    // The value of a tag was replaced
+    CHANGED((byte) 2),
+    ;
+
+    // The ID of the change, as it is stored in a patch
+    private final byte id;
+
+    ChangeType(byte id) {
+        this.id = id;
+    }
+
+    /**
+     * Retrieves the ID of a change type
+     * @return The id
+     */
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the change type with the given ID
+     * @param id The id
+     * @return The change type
+     * @throws IllegalArgumentException If there is no change type with the given ID
+     */
+    public static ChangeType fromId(byte id) {
+        for (ChangeType type : values()) {
+            if (type.id == id) return type;
+        }
+        throw new IllegalArgumentException("Unknown change type: " + id);
+    }
+}
@@ -0,0 +1,102 @@
+package nl.itslars.mcpenbt.enums;
+
+import java.nio.ByteOrder;
+
+/**
+ * Enum that represents the binary formats in which NBT can be encoded.
+ * All formats share the same tag structure, and only differ in how numbers and lengths are encoded.
+ */
+public enum NBTFormat {
+
+    /**
+     * The format of Bedrock Edition files (level.dat, world databases): fixed-width little-endian values, and UTF-8
+     * strings
+     */
+    LITTLE_ENDIAN(ByteOrder.LITTLE_ENDIAN, false, false),
+    /**
+     * The format of Java Edition: fixed-width big-endian values, and Modified UTF-8 strings (like
+     * {@link java.io.DataOutput#writeUTF(String)})
+     */
+    BIG_ENDIAN(ByteOrder.BIG_ENDIAN, false, true),
+    /**
+     * The format of the Bedrock Edition network protocol. Int and long values, and the lengths of arrays and lists,
+     * are zig-zag encoded VarInts. String lengths are unsigned VarInts. All other values are little-endian, and strings
+     * are UTF-8.
+     */
+    NETWORK_VARINT(ByteOrder.LITTLE_ENDIAN, true, false);
+
+    private final ByteOrder order;
+    private final boolean varInt;
+    private final boolean modifiedUtf8;
+
+    NBTFormat(ByteOrder order, boolean varInt, boolean modifiedUtf8) {
+        this.order = order;
+        this.varInt = varInt;
+        this.modifiedUtf8 = modifiedUtf8;
+    }
+
+    /**
+     * Retrieves the byte order of the fixed-width values
+     * @return The byte order
+     */
+    public ByteOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Retrieves whether ints, longs and lengths are encoded as VarInts
+     * @return True if they are, false if they are fixed-width
+     */
+    public boolean isVarInt() {
+        return varInt;
+    }
+
+    /**
+     * Retrieves whether strings and names are encoded in Modified UTF-8 instead of UTF-8
+     * @return True if they are Modified UTF-8, false if they are UTF-8
+     */
+    public boolean isModifiedUtf8() {
+        return modifiedUtf8;
+    }
+
+    /**
+     * Computes the amount of bytes that the given int (or array or list length) takes in this format
+     * @param value The int
+     * @return The amount of bytes
+     */
+    public int intSize(int value) {
+        return varInt ? varIntSize(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL) : 4;
+    }
+
+    /**
+     * Computes the amount of bytes that the given long takes in this format
+     * @param value The long
+     * @return The amount of bytes
+     */
+    public int longSize(long value) {
+        return varInt ? varIntSize((value << 1) ^ (value >> 63)) : 8;
+    }
+
+    /**
+     * Computes the amount of bytes that the length of a string with the given amount of bytes takes in this format
+     * @param length The amount of string bytes
+     * @return The amount of bytes of the length
+     */
+    public int stringLengthSize(int length) {
+        return varInt ? varIntSize(length & 0xFFFFFFFFL) : 2;
+    }
+
+    /**
+     * Computes the amount of bytes of an unsigned VarInt
+     * @param value The unsigned value
+     * @return The amount of bytes, between 1 and 10
+     */
+    private static int varIntSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
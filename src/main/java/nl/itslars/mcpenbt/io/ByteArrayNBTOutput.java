@@ -0,0 +1,111 @@
+package nl.itslars.mcpenbt.io;
+
+import nl.itslars.mcpenbt.enums.NBTFormat;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Output that writes into a heap byte array, which grows (doubling its size) when it runs full
+ */
+public class ByteArrayNBTOutput extends NBTOutput {
+
+    // Whether the backing array was handed out by toByteArray, so that it must not be written to anymore
+    private boolean shared;
+
+    public ByteArrayNBTOutput() {
+        this(256);
+    }
+
+    public ByteArrayNBTOutput(int initialCapacity) {
+        this(initialCapacity, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    public ByteArrayNBTOutput(int initialCapacity, NBTFormat format) {
+        super(ByteBuffer.allocate(Math.max(initialCapacity, 16)), format);
+    }
+
+    @Override
+    protected void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            grow(bytes);
+        }
+    }
+
+    @Override
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        // Grow once for the whole array, instead of once per chunk
+        ensure(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    @Override
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        if (format.isVarInt()) {
+            super.writeInts(values, offset, length);
+            return;
+        }
+        ensure(4 * length);
+        buffer.asIntBuffer().put(values, offset, length);
+        ((Buffer) buffer).position(buffer.position() + 4 * length);
+    }
+
+    /**
+     * Overwrites a previously written int at the given position
+     * @param position The byte position of the int
+     * @param value The new value
+     */
+    public void setInt(int position, int value) {
+        buffer.putInt(position, value);
+    }
+
+    /**
+     * Retrieves the amount of bytes that were written so far
+     * @return The amount of bytes
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Retrieves a copy of all bytes that were written so far.
+     * If the buffer is filled exactly, the backing array is returned without copying it.
+     * @return The byte array
+     */
+    public byte[] toByteArray() {
+        byte[] array = buffer.array();
+        if (array.length == buffer.position()) {
+            shared = true;
+            return array;
+        }
+        return Arrays.copyOf(array, buffer.position());
+    }
+
+    /**
+     * Discards everything that was written, so that this output can be reused while keeping its capacity.
+     * Arrays that were returned by {@link #toByteArray()} are not affected.
+     */
+    public void reset() {
+        if (shared) {
+            buffer = ByteBuffer.allocate(buffer.capacity()).order(buffer.order());
+            shared = false;
+        } else {
+            ((Buffer) buffer).clear();
+        }
+    }
+
+    /**
+     * Grows the backing array, so that it can hold at least the given amount of additional bytes
+     * @param bytes The amount of additional bytes
+     */
+    private void grow(int bytes) {
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+        byte[] array = Arrays.copyOf(buffer.array(), capacity);
+        int position = buffer.position();
+        buffer = ByteBuffer.wrap(array).order(buffer.order());
+        shared = false;
+        ((Buffer) buffer).position(position);
+    }
+}
@@ -0,0 +1,858 @@
+package nl.itslars.mcpenbt.io;
+
+import nl.itslars.mcpenbt.enums.NBTFormat;
+import nl.itslars.mcpenbt.enums.TagType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Input that NBT tags are read from, in one of the {@link NBTFormat}s (little-endian by default).
+ * All values are decoded from a single buffer. Depending on the implementation, that buffer is either the complete
+ * source (a byte array or ByteBuffer), or a reusable window that is refilled from a stream in large blocks.
+ */
+public abstract class NBTInput {
+
+    // The default size of the window of stream inputs
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // The format of the values
+    protected final NBTFormat format;
+    // The buffer that values are decoded from. Always in the byte order of the format
+    protected ByteBuffer buffer;
+    // The cache that tag names are looked up in, or null if names are not cached
+    private NameCache nameCache = NameCache.getDefault();
+
+    protected NBTInput(ByteBuffer buffer) {
+        this(buffer, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    protected NBTInput(ByteBuffer buffer, NBTFormat format) {
+        this.format = format;
+        this.buffer = buffer.order(format.getOrder());
+    }
+
+    /**
+     * Attempts to make at least the given amount of bytes available in the buffer.
+     * The amount is never larger than 8 bytes; bulk reads are split up by the caller.
+     * @param bytes The amount of bytes
+     * @return True if the bytes are available, false if the input ended before that
+     * @throws IOException If the underlying source threw an exception
+     */
+    protected abstract boolean fill(int bytes) throws IOException;
+
+    /**
+     * Makes sure that at least the given amount of bytes is available in the buffer
+     * @param bytes The amount of bytes
+     * @throws IOException If the underlying source threw an exception
+     * @throws IllegalStateException If the input ended before that
+     */
+    protected void require(int bytes) throws IOException {
+        if (buffer.remaining() < bytes && !fill(bytes)) {
+            throw new IllegalStateException("Invalid NBT formatting.");
+        }
+    }
+
+    /**
+     * Makes sure that at least the given amount of bytes is available in the buffer, as part of a larger read.
+     * Inputs that may not read further than needed use the total to fill the buffer in fewer steps.
+     * @param bytes The amount of bytes that is needed now (at most 8)
+     * @param total The amount of bytes that the larger read still needs, including those bytes
+     * @throws IOException If the underlying source threw an exception
+     * @throws IllegalStateException If the input ended before that
+     */
+    protected void require(int bytes, long total) throws IOException {
+        require(bytes);
+    }
+
+    /**
+     * Checks whether there is at least one more byte available in this input
+     * @return True if there is, false if the input has ended
+     * @throws IOException If the underlying source threw an exception
+     */
+    public boolean hasRemaining() throws IOException {
+        return hasRemaining(1);
+    }
+
+    /**
+     * Checks whether there are at least the given amount of bytes (at most 8) available in this input
+     * @param bytes The amount of bytes
+     * @return True if there are, false if the input ends before that
+     * @throws IOException If the underlying source threw an exception
+     */
+    public boolean hasRemaining(int bytes) throws IOException {
+        return buffer.remaining() >= bytes || fill(bytes);
+    }
+
+    /**
+     * Retrieves the cache that tag names are looked up in
+     * @return The cache, or null if names are not cached
+     */
+    public NameCache getNameCache() {
+        return nameCache;
+    }
+
+    /**
+     * Sets the cache that tag names are looked up in. By default, this is {@link NameCache#getDefault()}, which is null
+     * unless it was set.
+     * @param nameCache The cache, or null to not cache names
+     */
+    public void setNameCache(NameCache nameCache) {
+        this.nameCache = nameCache;
+    }
+
+    /**
+     * Retrieves the format that this input reads
+     * @return The format
+     */
+    public NBTFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Retrieves the buffer that contains the complete source of this input, in the byte order of its format.
+     * Inputs that read from a stream have no such buffer, and return null.
+     * @return The source buffer, or null
+     */
+    public ByteBuffer getSource() {
+        return null;
+    }
+
+    /**
+     * Retrieves the position of the next byte that will be read, in the buffer returned by {@link #getSource()}
+     * @return The position
+     */
+    public int getPosition() {
+        return buffer.position();
+    }
+
+    /**
+     * Moves this input to the given position in the buffer returned by {@link #getSource()}
+     * @param position The position
+     */
+    public void setPosition(int position) {
+        if (getSource() == null) throw new UnsupportedOperationException("Stream inputs cannot be repositioned.");
+        ((Buffer) buffer).position(position);
+    }
+
+    /**
+     * Hands back everything that was buffered but not consumed to the underlying source, if possible.
+     * Afterwards, the source is positioned directly behind the last value that was read.
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void release() throws IOException {
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    /**
+     * Reads an int, which is either fixed-width or a zig-zag encoded VarInt, depending on the format.
+     * Lengths of arrays and lists are encoded the same way.
+     * @return The int
+     * @throws IOException If the underlying source threw an exception
+     */
+    public int readInt() throws IOException {
+        if (format.isVarInt()) {
+            int value = readUnsignedVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+        require(4);
+        return buffer.getInt();
+    }
+
+    /**
+     * Reads a long, which is either fixed-width or a zig-zag encoded VarInt, depending on the format
+     * @return The long
+     * @throws IOException If the underlying source threw an exception
+     */
+    public long readLong() throws IOException {
+        if (format.isVarInt()) {
+            long value = readUnsignedVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+        require(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    /**
+     * Reads the length of a string, which is either an unsigned short or an unsigned VarInt, depending on the format
+     * @return The length
+     * @throws IOException If the underlying source threw an exception
+     */
+    public int readStringLength() throws IOException {
+        return format.isVarInt() ? readUnsignedVarInt() : readUnsignedShort();
+    }
+
+    /**
+     * Reads bytes into the given array
+     * @param bytes The byte array
+     * @param offset The offset in the array of the first byte to read
+     * @param length The amount of bytes to read
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(1, length);
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Skips the given amount of bytes
+     * @param bytes The amount of bytes
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void skip(int bytes) throws IOException {
+        skip((long) bytes);
+    }
+
+    /**
+     * Skips the given amount of bytes, which may be more than an int holds, like the elements of a large list
+     * @param bytes The amount of bytes
+     * @throws IOException If the underlying source threw an exception
+     */
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            require(1, bytes);
+            int chunk = (int) Math.min(bytes, buffer.remaining());
+            ((Buffer) buffer).position(buffer.position() + chunk);
+            bytes -= chunk;
+        }
+    }
+
+    /**
+     * Reads as many bytes as the given array holds, and checks whether they are equal to the bytes in the array.
+     * This allows matching a name without decoding it.
+     * @param expected The expected bytes
+     * @return True if the bytes are equal
+     * @throws IOException If the underlying source threw an exception
+     */
+    public boolean matchBytes(byte[] expected) throws IOException {
+        boolean result = true;
+        int offset = 0;
+        while (offset < expected.length) {
+            require(1, expected.length - offset);
+            int chunk = Math.min(expected.length - offset, buffer.remaining());
+            int position = buffer.position();
+            for (int i = 0; i < chunk && result; i++) {
+                result = buffer.get(position + i) == expected[offset + i];
+            }
+            ((Buffer) buffer).position(position + chunk);
+            offset += chunk;
+        }
+        return result;
+    }
+
+    /**
+     * Skips the value of a tag with the given type, without decoding it.
+     * Fixed-size values and arrays are skipped in one step, lists of fixed-size elements as well.
+     * @param typeId The ID of the tag type
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void skipValue(int typeId) throws IOException {
+        TagType type = TagType.fromId((byte) typeId);
+        if (type == null || type == TagType.TAG_END) throw new IllegalStateException("Invalid NBT formatting.");
+        int size = fixedSize(type);
+        if (size > 0) {
+            skip(size);
+            return;
+        }
+
+        switch (type) {
+            case TAG_INT:
+                readInt();
+                break;
+            case TAG_LONG:
+                readLong();
+                break;
+            case TAG_BYTE_ARRAY:
+                skip(readInt());
+                break;
+            case TAG_STRING:
+                skip(readStringLength());
+                break;
+            case TAG_INT_ARRAY:
+                int arrayLength = readInt();
+                if (format.isVarInt()) {
+                    for (int i = 0; i < arrayLength; i++) {
+                        readInt();
+                    }
+                } else {
+                    skip(4L * arrayLength);
+                }
+                break;
+            case TAG_LIST:
+                int elementId = readByte();
+                skipValues(elementId, readInt());
+                break;
+            case TAG_COMPOUND:
+                // Skip all named tags, until we reach an end byte
+                int nextId;
+                while ((nextId = readByte()) != 0) {
+                    skip(readStringLength());
+                    skipValue(nextId);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Skips the given amount of values of the given type, like the elements of a list.
+     * Fixed-size values are skipped in one step.
+     * @param typeId The ID of the tag type
+     * @param count The amount of values
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void skipValues(int typeId, int count) throws IOException {
+        if (count <= 0) return;
+        TagType type = TagType.fromId((byte) typeId);
+        // Only empty lists have end tags as their elements
+        if (type == null || type == TagType.TAG_END) throw new IllegalStateException("Invalid NBT formatting.");
+        int size = fixedSize(type);
+        if (size > 0) {
+            skip((long) size * count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                skipValue(typeId);
+            }
+        }
+    }
+
+    /**
+     * Reads the value of a tag with the given type, and writes it to the given output in the format of that output.
+     * No tags are created; strings and byte arrays are copied without decoding them.
+     * @param typeId The ID of the tag type
+     * @param output The output
+     * @throws IOException If the underlying source or the output threw an exception
+     */
+    public void transferValue(int typeId, NBTOutput output) throws IOException {
+        TagType type = TagType.fromId((byte) typeId);
+        if (type == null || type == TagType.TAG_END) throw new IllegalStateException("Invalid NBT formatting.");
+
+        switch (type) {
+            case TAG_BYTE:
+                output.writeByte(readByte());
+                break;
+            case TAG_SHORT:
+                output.writeShort(readShort());
+                break;
+            case TAG_INT:
+                output.writeInt(readInt());
+                break;
+            case TAG_LONG:
+                output.writeLong(readLong());
+                break;
+            case TAG_FLOAT:
+                output.writeFloat(readFloat());
+                break;
+            case TAG_DOUBLE:
+                output.writeDouble(readDouble());
+                break;
+            case TAG_BYTE_ARRAY:
+                int byteLength = readInt();
+                output.writeInt(byteLength);
+                transferBytes(byteLength, output);
+                break;
+            case TAG_STRING:
+                transferString(output);
+                break;
+            case TAG_INT_ARRAY:
+                int intLength = readInt();
+                output.writeInt(intLength);
+                for (int i = 0; i < intLength; i++) {
+                    output.writeInt(readInt());
+                }
+                break;
+            case TAG_LIST:
+                int elementId = readByte();
+                int length = readInt();
+                output.writeByte(elementId);
+                output.writeInt(length);
+                for (int i = 0; i < length; i++) {
+                    transferValue(elementId, output);
+                }
+                break;
+            case TAG_COMPOUND:
+                // Transfer all named tags, including the end byte
+                while (transfer(output)) {
+                    // Continue until the end byte has been transferred
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads a named tag (or the end of a compound), and writes it to the given output in the format of that output.
+     * No tags are created; see {@link #transferValue(int, NBTOutput)}.
+     * @param output The output
+     * @return True if a tag was transferred, false if it was the end of a compound
+     * @throws IOException If the underlying source or the output threw an exception
+     */
+    public boolean transfer(NBTOutput output) throws IOException {
+        int id = readByte();
+        output.writeByte(id);
+        if (id == 0) return false;
+
+        transferString(output);
+        transferValue(id, output);
+        return true;
+    }
+
+    /**
+     * Copies a string or name to the given output. It is only decoded if the output uses another string encoding
+     * @param output The output
+     * @throws IOException If the underlying source or the output threw an exception
+     */
+    private void transferString(NBTOutput output) throws IOException {
+        if (format.isModifiedUtf8() != output.getFormat().isModifiedUtf8()) {
+            output.writeString(readString());
+            return;
+        }
+        int length = readStringLength();
+        output.writeStringLength(length);
+        transferBytes(length, output);
+    }
+
+    /**
+     * Copies the given amount of bytes to the given output, directly from the buffer
+     * @param length The amount of bytes
+     * @param output The output
+     * @throws IOException If the underlying source or the output threw an exception
+     */
+    private void transferBytes(int length, NBTOutput output) throws IOException {
+        while (length > 0) {
+            require(1, length);
+            int chunk = Math.min(length, buffer.remaining());
+            output.writeBytes(buffer, buffer.position(), chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk);
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Retrieves the amount of bytes that a value of the given type always takes in the format of this input
+     * @param type The tag type
+     * @return The amount of bytes, or 0 if the size of the value is variable
+     */
+    private int fixedSize(TagType type) {
+        if (format.isVarInt() && (type == TagType.TAG_INT || type == TagType.TAG_LONG)) return 0;
+        return type.getSize();
+    }
+
+    /**
+     * Reads integers (fixed-width or VarInts, depending on the format) into the given array
+     * @param values The integer array
+     * @param offset The offset in the array of the first integer to read
+     * @param length The amount of integers to read
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void readInts(int[] values, int offset, int length) throws IOException {
+        if (format.isVarInt()) {
+            for (int i = 0; i < length; i++) {
+                values[offset + i] = readInt();
+            }
+            return;
+        }
+        while (length > 0) {
+            require(4, (long) length * 4);
+            int chunk = Math.min(length, buffer.remaining() / 4);
+            buffer.asIntBuffer().get(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 4);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Reads shorts (2 bytes each) into the given array
+     * @param values The short array
+     * @param offset The offset in the array of the first short to read
+     * @param length The amount of shorts to read
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void readShorts(short[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(2, (long) length * 2);
+            int chunk = Math.min(length, buffer.remaining() / 2);
+            buffer.asShortBuffer().get(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 2);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Reads longs (fixed-width or VarInts, depending on the format) into the given array
+     * @param values The long array
+     * @param offset The offset in the array of the first long to read
+     * @param length The amount of longs to read
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void readLongs(long[] values, int offset, int length) throws IOException {
+        if (format.isVarInt()) {
+            for (int i = 0; i < length; i++) {
+                values[offset + i] = readLong();
+            }
+            return;
+        }
+        while (length > 0) {
+            require(8, (long) length * 8);
+            int chunk = Math.min(length, buffer.remaining() / 8);
+            buffer.asLongBuffer().get(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 8);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Reads floats (4 bytes each) into the given array
+     * @param values The float array
+     * @param offset The offset in the array of the first float to read
+     * @param length The amount of floats to read
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void readFloats(float[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(4, (long) length * 4);
+            int chunk = Math.min(length, buffer.remaining() / 4);
+            buffer.asFloatBuffer().get(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 4);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Reads doubles (8 bytes each) into the given array
+     * @param values The double array
+     * @param offset The offset in the array of the first double to read
+     * @param length The amount of doubles to read
+     * @throws IOException If the underlying source threw an exception
+     */
+    public void readDoubles(double[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(8, (long) length * 8);
+            int chunk = Math.min(length, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().get(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 8);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Reads a string, which is a length followed by the string bytes in UTF-8, or in Modified UTF-8 if the format uses
+     * that
+     * @return The string
+     * @throws IOException If the underlying source threw an exception
+     */
+    public String readString() throws IOException {
+        int length = readStringLength();
+        // Decode straight from the buffer, unless the string is split over two windows of a stream
+        if (buffer.remaining() >= length) {
+            String result = StringCodec.decode(buffer, buffer.position(), length, format.isModifiedUtf8());
+            ((Buffer) buffer).position(buffer.position() + length);
+            return result;
+        }
+        return StringCodec.decode(ByteBuffer.wrap(readBytes(length)), 0, length, format.isModifiedUtf8());
+    }
+
+    /**
+     * Reads the given amount of bytes into a new array
+     * @param length The amount of bytes
+     * @return The array
+     * @throws IOException If the underlying source threw an exception
+     */
+    private byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        readBytes(bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Reads the name of a tag, which is encoded like a string. The name is looked up in the name cache of this input,
+     * so that repeated names are neither decoded nor allocated again.
+     * @return The name
+     * @throws IOException If the underlying source threw an exception
+     */
+    public String readName() throws IOException {
+        NameCache cache = nameCache;
+        if (cache == null) return readString();
+        int length = readStringLength();
+        // Names that are split over two windows of a stream are decoded without the cache
+        if (buffer.remaining() < length) {
+            return StringCodec.decode(ByteBuffer.wrap(readBytes(length)), 0, length, format.isModifiedUtf8());
+        }
+        String result = cache.get(buffer, buffer.position(), length, format.isModifiedUtf8());
+        ((Buffer) buffer).position(buffer.position() + length);
+        return result;
+    }
+
+    /**
+     * Reads an unsigned VarInt: 7 bits per byte, least significant group first, with the high bit set on all bytes
+     * except the last
+     * @return The value
+     * @throws IOException If the underlying source threw an exception
+     */
+    private int readUnsignedVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("Invalid NBT formatting.");
+    }
+
+    /**
+     * Reads an unsigned VarInt of at most 64 bits
+     * @return The value
+     * @throws IOException If the underlying source threw an exception
+     */
+    private long readUnsignedVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("Invalid NBT formatting.");
+    }
+
+    /**
+     * Creates an input that reads from the given byte array, without copying it
+     * @param bytes The bytes
+     * @return The input
+     */
+    public static NBTInput of(byte[] bytes) {
+        return of(bytes, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates an input that reads the given format from the given byte array, without copying it
+     * @param bytes The bytes
+     * @param format The format
+     * @return The input
+     */
+    public static NBTInput of(byte[] bytes, NBTFormat format) {
+        return new BufferInput(ByteBuffer.wrap(bytes), format);
+    }
+
+    /**
+     * Creates an input that reads from the given buffer, starting at its current position.
+     * The order of the given buffer is not changed. After {@link #release()}, its position is set to directly behind the
+     * last value that was read.
+     * @param buffer The buffer
+     * @return The input
+     */
+    public static NBTInput of(ByteBuffer buffer) {
+        return of(buffer, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates an input that reads the given format from the given buffer, starting at its current position.
+     * The order of the given buffer is not changed.
+     * @param buffer The buffer
+     * @param format The format
+     * @return The input
+     */
+    public static NBTInput of(ByteBuffer buffer, NBTFormat format) {
+        return new BufferInput(buffer, format);
+    }
+
+    /**
+     * Creates an input that reads from the given stream.
+     * If the stream supports marks, it is read in large blocks, and the bytes that were read ahead are handed back on
+     * {@link #release()}. Otherwise, the stream is never read further than the values that were read, which takes more
+     * (smaller) reads; wrap it in a {@link java.io.BufferedInputStream} to read it in large blocks instead.
+     * @param stream The input stream
+     * @return The input
+     */
+    public static NBTInput of(InputStream stream) {
+        return of(stream, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates an input that reads the given format from the given stream. See {@link #of(InputStream)}.
+     * @param stream The input stream
+     * @param format The format
+     * @return The input
+     */
+    public static NBTInput of(InputStream stream, NBTFormat format) {
+        return new StreamInput(stream, format);
+    }
+
+    /**
+     * Input that reads directly from a (possibly direct or memory-mapped) byte buffer
+     */
+    private static class BufferInput extends NBTInput {
+
+        // The buffer that was given by the caller. Its position is updated on release
+        private final ByteBuffer source;
+
+        BufferInput(ByteBuffer source, NBTFormat format) {
+            super(source.duplicate(), format);
+            this.source = source;
+        }
+
+        @Override
+        protected boolean fill(int bytes) {
+            // The buffer already contains all data there is
+            return false;
+        }
+
+        @Override
+        public ByteBuffer getSource() {
+            return buffer;
+        }
+
+        @Override
+        public void release() {
+            ((Buffer) source).position(buffer.position());
+        }
+    }
+
+    /**
+     * Input that reads an input stream through a reusable window
+     */
+    private static class StreamInput extends NBTInput {
+
+        private final InputStream stream;
+        // Whether the stream may be read ahead, as the bytes that were read ahead can be handed back through its mark
+        private final boolean readAhead;
+        // Whether the stream is marked at the start of the window, so that read-ahead bytes can be handed back
+        private boolean marked;
+
+        StreamInput(InputStream stream, NBTFormat format) {
+            super((ByteBuffer) ByteBuffer.allocate(DEFAULT_BUFFER_SIZE).limit(0), format);
+            this.stream = stream;
+            this.readAhead = stream.markSupported();
+        }
+
+        @Override
+        protected boolean fill(int bytes) throws IOException {
+            return fill(bytes, bytes);
+        }
+
+        @Override
+        protected void require(int bytes, long total) throws IOException {
+            if (buffer.remaining() < bytes && !fill(bytes, (int) Math.min(total, buffer.capacity()))) {
+                throw new IllegalStateException("Invalid NBT formatting.");
+            }
+        }
+
+        /**
+         * Makes at least the given amount of bytes available in the window. Streams that cannot be read ahead are read
+         * up to the wanted amount of bytes, and no further.
+         * @param bytes The amount of bytes that is needed
+         * @param wanted The amount of bytes that may be read, counted from the first unconsumed byte
+         * @return True if the bytes are available, false if the stream ended before that
+         * @throws IOException If the stream threw an exception
+         */
+        private boolean fill(int bytes, int wanted) throws IOException {
+            if (marked) {
+                // Rewind the stream to the first unconsumed byte, and read the rest of the window again
+                rewind();
+                ((Buffer) buffer).clear();
+            } else {
+                buffer.compact();
+            }
+
+            if (readAhead) {
+                stream.mark(buffer.capacity());
+                marked = true;
+            }
+
+            // Read until the requested amount of bytes is available
+            int end = readAhead ? buffer.capacity() : Math.max(bytes, wanted);
+            while (buffer.position() < bytes) {
+                int read = stream.read(buffer.array(), buffer.position(), end - buffer.position());
+                if (read < 0) break;
+                ((Buffer) buffer).position(buffer.position() + read);
+            }
+            ((Buffer) buffer).flip();
+            return buffer.remaining() >= bytes;
+        }
+
+        @Override
+        public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+            if (length <= buffer.capacity()) {
+                super.readBytes(bytes, offset, length);
+                return;
+            }
+
+            // Large arrays are read directly from the stream, after the remaining window bytes
+            int buffered = buffer.remaining();
+            buffer.get(bytes, offset, buffered);
+            offset += buffered;
+            length -= buffered;
+            // The window is empty, so the stream is positioned at the first unconsumed byte
+            ((Buffer) buffer).clear().limit(0);
+            marked = false;
+            while (length > 0) {
+                int read = stream.read(bytes, offset, length);
+                if (read < 0) throw new IllegalStateException("Invalid NBT formatting.");
+                offset += read;
+                length -= read;
+            }
+        }
+
+        @Override
+        public void release() throws IOException {
+            if (marked) {
+                rewind();
+                ((Buffer) buffer).clear().limit(0);
+                marked = false;
+            }
+        }
+
+        /**
+         * Resets the stream to the start of the window, and skips the bytes that were consumed
+         * @throws IOException If the stream threw an exception
+         */
+        private void rewind() throws IOException {
+            stream.reset();
+            long toSkip = buffer.position();
+            while (toSkip > 0) {
+                long skipped = stream.skip(toSkip);
+                if (skipped <= 0) {
+                    if (stream.read() < 0) break;
+                    skipped = 1;
+                }
+                toSkip -= skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package nl.itslars.mcpenbt.io;
+
+import nl.itslars.mcpenbt.enums.NBTFormat;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output that NBT tags are written to, in one of the {@link NBTFormat}s (little-endian by default).
+ * Every value is put into a single working buffer exactly once. Depending on the implementation, that buffer is
+ * either the final destination, or it is drained to a stream or channel whenever it runs full.
+ */
+public abstract class NBTOutput {
+
+    // The default size of the working buffer of stream and channel outputs
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // The format of the values
+    protected final NBTFormat format;
+    // The buffer that values are written to. Always in the byte order of the format
+    protected ByteBuffer buffer;
+
+    protected NBTOutput(ByteBuffer buffer) {
+        this(buffer, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    protected NBTOutput(ByteBuffer buffer, NBTFormat format) {
+        this.format = format;
+        this.buffer = buffer.order(format.getOrder());
+    }
+
+    /**
+     * Makes sure that the working buffer has room for the given amount of bytes, as far as the output can.
+     * Primitive values ask for at most 10 bytes (the longest VarInt), which always fit. Bulk writes, like the bytes of a
+     * string, may ask for more than the working buffer of a stream or channel output holds. Those callers check the
+     * remaining room afterwards, and write in parts if it is still too small.
+     * @param bytes The amount of bytes
+     * @throws IOException If draining the buffer to the underlying sink failed
+     */
+    protected abstract void ensure(int bytes) throws IOException;
+
+    /**
+     * Retrieves the format that this output writes
+     * @return The format
+     */
+    public NBTFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Pushes all buffered bytes to the underlying sink. Outputs that write directly to their destination do nothing.
+     * The underlying sink itself is not flushed or closed.
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void flush() throws IOException {
+    }
+
+    public void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    public void writeShort(int value) throws IOException {
+        ensure(2);
+        buffer.putShort((short) value);
+    }
+
+    /**
+     * Writes an int, either fixed-width or as a zig-zag encoded VarInt, depending on the format.
+     * Lengths of arrays and lists are encoded the same way.
+     * @param value The int
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeInt(int value) throws IOException {
+        if (format.isVarInt()) {
+            writeUnsignedVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+            return;
+        }
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Writes a long, either fixed-width or as a zig-zag encoded VarInt, depending on the format
+     * @param value The long
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeLong(long value) throws IOException {
+        if (format.isVarInt()) {
+            writeUnsignedVarLong((value << 1) ^ (value >> 63));
+            return;
+        }
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    public void writeFloat(float value) throws IOException {
+        ensure(4);
+        buffer.putFloat(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Writes the length of a string, either as an unsigned short or as an unsigned VarInt, depending on the format
+     * @param length The length
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeStringLength(int length) throws IOException {
+        if (format.isVarInt()) {
+            writeUnsignedVarLong(length & 0xFFFFFFFFL);
+        } else {
+            writeShort(length);
+        }
+    }
+
+    /**
+     * Writes the given bytes
+     * @param bytes The byte array
+     * @param offset The offset of the first byte to write
+     * @param length The amount of bytes to write
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int chunk = Math.min(length, buffer.remaining());
+            if (chunk == 0) throw new BufferOverflowException();
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes bytes from the given buffer, without changing its position
+     * @param source The buffer
+     * @param offset The position in the buffer of the first byte to write
+     * @param length The amount of bytes to write
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeBytes(ByteBuffer source, int offset, int length) throws IOException {
+        if (source.hasArray()) {
+            writeBytes(source.array(), source.arrayOffset() + offset, length);
+            return;
+        }
+        ByteBuffer view = source.duplicate();
+        while (length > 0) {
+            ensure(1);
+            int chunk = Math.min(length, buffer.remaining());
+            if (chunk == 0) throw new BufferOverflowException();
+            ((Buffer) view).limit(offset + chunk).position(offset);
+            buffer.put(view);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes the given integers, fixed-width or as VarInts, depending on the format
+     * @param values The integer array
+     * @param offset The offset of the first integer to write
+     * @param length The amount of integers to write
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        if (format.isVarInt()) {
+            for (int i = 0; i < length; i++) {
+                writeInt(values[offset + i]);
+            }
+            return;
+        }
+        while (length > 0) {
+            ensure(4);
+            int chunk = Math.min(length, buffer.remaining() / 4);
+            if (chunk == 0) throw new BufferOverflowException();
+            buffer.asIntBuffer().put(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 4);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes the given shorts, 2 bytes each
+     * @param values The short array
+     * @param offset The offset of the first short to write
+     * @param length The amount of shorts to write
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeShorts(short[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(2);
+            int chunk = Math.min(length, buffer.remaining() / 2);
+            if (chunk == 0) throw new BufferOverflowException();
+            buffer.asShortBuffer().put(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 2);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes the given longs, fixed-width or as VarInts, depending on the format
+     * @param values The long array
+     * @param offset The offset of the first long to write
+     * @param length The amount of longs to write
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeLongs(long[] values, int offset, int length) throws IOException {
+        if (format.isVarInt()) {
+            for (int i = 0; i < length; i++) {
+                writeLong(values[offset + i]);
+            }
+            return;
+        }
+        while (length > 0) {
+            ensure(8);
+            int chunk = Math.min(length, buffer.remaining() / 8);
+            if (chunk == 0) throw new BufferOverflowException();
+            buffer.asLongBuffer().put(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 8);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes the given floats, 4 bytes each
+     * @param values The float array
+     * @param offset The offset of the first float to write
+     * @param length The amount of floats to write
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeFloats(float[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(4);
+            int chunk = Math.min(length, buffer.remaining() / 4);
+            if (chunk == 0) throw new BufferOverflowException();
+            buffer.asFloatBuffer().put(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 4);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes the given doubles, 8 bytes each
+     * @param values The double array
+     * @param offset The offset of the first double to write
+     * @param length The amount of doubles to write
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeDoubles(double[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(8);
+            int chunk = Math.min(length, buffer.remaining() / 8);
+            if (chunk == 0) throw new BufferOverflowException();
+            buffer.asDoubleBuffer().put(values, offset, chunk);
+            ((Buffer) buffer).position(buffer.position() + chunk * 8);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes a string, as a length followed by the string bytes. The string is encoded in UTF-8, or in Modified UTF-8
+     * if the format uses that, straight into the buffer
+     * @param value The string
+     * @throws IOException If the underlying sink threw an exception
+     */
+    public void writeString(String value) throws IOException {
+        boolean modified = format.isModifiedUtf8();
+        boolean ascii = StringCodec.isAscii(value, modified);
+        int remaining = ascii ? value.length() : StringCodec.encodedLength(value, modified);
+        writeStringLength(remaining);
+        if (ascii) {
+            // Every character is a single byte, so copy them all at once
+            ensure(remaining);
+            if (buffer.hasArray() && buffer.remaining() >= remaining) {
+                StringCodec.putLatin1(value, buffer);
+                return;
+            }
+        }
+        int index = 0;
+        while (index < value.length()) {
+            // Never ask for more room than the rest of the string needs, so that exactly sized outputs do not grow
+            ensure(Math.min(4, remaining));
+            int start = buffer.position();
+            int next = StringCodec.putAscii(value, index, Math.min(value.length(), index + buffer.remaining()), modified, buffer);
+            if (next == index) next = StringCodec.putChar(value, index, modified, buffer);
+            remaining -= buffer.position() - start;
+            index = next;
+        }
+    }
+
+    /**
+     * Writes an unsigned VarInt: 7 bits per byte, least significant group first, with the high bit set on all bytes
+     * except the last
+     * @param value The value
+     * @throws IOException If the underlying sink threw an exception
+     */
+    private void writeUnsignedVarLong(long value) throws IOException {
+        // Ensure the exact length, so that an output of exactly the serialized size never grows or flushes.
+        // Every byte holds 7 bits, and the value 0 still takes 1 byte
+        ensure((64 - Long.numberOfLeadingZeros(value | 1) + 6) / 7);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Creates an output that writes directly into the given buffer.
+     * The order of the buffer is set to little-endian. If the buffer runs full, a BufferOverflowException is thrown.
+     * @param buffer The buffer
+     * @return The output
+     */
+    public static NBTOutput of(ByteBuffer buffer) {
+        return of(buffer, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates an output that writes the given format directly into the given buffer.
+     * The order of the buffer is set to the byte order of the format.
+     * @param buffer The buffer
+     * @param format The format
+     * @return The output
+     */
+    public static NBTOutput of(ByteBuffer buffer, NBTFormat format) {
+        return new BufferOutput(buffer, format);
+    }
+
+    /**
+     * Creates a buffered output that writes to the given stream. Call {@link #flush()} when done writing.
+     * @param stream The output stream
+     * @return The output
+     */
+    public static NBTOutput of(OutputStream stream) {
+        return of(stream, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a buffered output that writes the given format to the given stream. Call {@link #flush()} when done
+     * writing.
+     * @param stream The output stream
+     * @param format The format
+     * @return The output
+     */
+    public static NBTOutput of(OutputStream stream, NBTFormat format) {
+        return new StreamOutput(stream, format);
+    }
+
+    /**
+     * Creates a buffered output that writes to the given DataOutput. Call {@link #flush()} when done writing.
+     * This is not an overload of {@link #of(OutputStream)}, so that a DataOutputStream can be passed to either.
+     * @param dataOutput The data output
+     * @return The output
+     */
+    public static NBTOutput ofDataOutput(DataOutput dataOutput) {
+        if (dataOutput instanceof OutputStream) return of((OutputStream) dataOutput);
+        return of(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                dataOutput.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                dataOutput.write(b, off, len);
+            }
+        });
+    }
+
+    /**
+     * Creates a buffered output that writes to the given channel. Call {@link #flush()} when done writing.
+     * @param channel The channel
+     * @return The output
+     */
+    public static NBTOutput of(WritableByteChannel channel) {
+        return of(channel, NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a buffered output that writes the given format to the given channel. Call {@link #flush()} when done
+     * writing.
+     * @param channel The channel
+     * @param format The format
+     * @return The output
+     */
+    public static NBTOutput of(WritableByteChannel channel, NBTFormat format) {
+        return new ChannelOutput(channel, format);
+    }
+
+    /**
+     * Output that writes directly into a (possibly direct or memory-mapped) byte buffer
+     */
+    private static class BufferOutput extends NBTOutput {
+
+        BufferOutput(ByteBuffer buffer, NBTFormat format) {
+            super(buffer, format);
+        }
+
+        @Override
+        protected void ensure(int bytes) {
+            // The ByteBuffer itself throws a BufferOverflowException when it runs full
+        }
+    }
+
+    /**
+     * Output that drains its working buffer into an output stream
+     */
+    private static class StreamOutput extends NBTOutput {
+
+        private final OutputStream stream;
+
+        StreamOutput(OutputStream stream, NBTFormat format) {
+            super(ByteBuffer.allocate(DEFAULT_BUFFER_SIZE), format);
+            this.stream = stream;
+        }
+
+        @Override
+        protected void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        @Override
+        public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+            // Large arrays skip the working buffer entirely
+            if (length > buffer.capacity()) {
+                flush();
+                stream.write(bytes, offset, length);
+                return;
+            }
+            super.writeBytes(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            stream.write(buffer.array(), 0, buffer.position());
+            ((Buffer) buffer).clear();
+        }
+    }
+
+    /**
+     * Output that drains its working buffer into a byte channel
+     */
+    private static class ChannelOutput extends NBTOutput {
+
+        private final WritableByteChannel channel;
+
+        ChannelOutput(WritableByteChannel channel, NBTFormat format) {
+            super(ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE), format);
+            this.channel = channel;
+        }
+
+        @Override
+        protected void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+    }
+}
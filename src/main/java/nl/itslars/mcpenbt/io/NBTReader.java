@@ -0,0 +1,367 @@
+package nl.itslars.mcpenbt.io;
+
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.tags.ListTag;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Pull-based reader, that walks through NBT data as a sequence of events without building a tag tree.
+ * Every call to {@link #next()} moves the cursor to the next event:
+ * <ul>
+ *     <li>START_COMPOUND and END_COMPOUND surround the named children of a compound</li>
+ *     <li>START_LIST and END_LIST surround the (unnamed) elements of a list</li>
+ *     <li>VALUE is any other tag</li>
+ * </ul>
+ * The value of a VALUE event is only decoded when one of the read methods is called. Otherwise, it is skipped by the
+ * next call to {@link #next()}. Compounds and lists can be skipped as a whole with {@link #skipValue()}.
+ * The reader only keeps the current nesting path in memory, so it can walk arbitrarily large data.
+ */
+public class NBTReader implements Closeable {
+
+    /**
+     * Enum that represents the events of the reader
+     */
+    public enum Event {
+        START_COMPOUND,
+        END_COMPOUND,
+        START_LIST,
+        END_LIST,
+        VALUE
+    }
+
+    private final NBTInput input;
+
+    // The element type ID of every open container, or -1 for compounds
+    private int[] elementTypes = new int[16];
+    // The amount of elements that remain in every open list
+    private int[] remaining = new int[16];
+    private int depth;
+
+    // The current event, with the type and name of the tag it belongs to
+    private Event event;
+    private TagType type;
+    private String name;
+    // Whether the value of the current VALUE event has not been consumed yet
+    private boolean pending;
+    // Whether the root tag has been read completely
+    private boolean done;
+
+    public NBTReader(NBTInput input) {
+        this.input = input;
+    }
+
+    /**
+     * Creates a reader over the given byte array
+     * @param bytes The bytes
+     * @return The reader
+     */
+    public static NBTReader of(byte[] bytes) {
+        return new NBTReader(NBTInput.of(bytes));
+    }
+
+    /**
+     * Creates a reader over the given buffer, starting at its current position.
+     * After {@link #close()}, the position of the buffer is set to directly behind the last value that was read.
+     * @param buffer The buffer
+     * @return The reader
+     */
+    public static NBTReader of(ByteBuffer buffer) {
+        return new NBTReader(NBTInput.of(buffer));
+    }
+
+    /**
+     * Creates a reader over the given stream
+     * @param stream The input stream
+     * @return The reader
+     */
+    public static NBTReader of(InputStream stream) {
+        return new NBTReader(NBTInput.of(stream));
+    }
+
+    /**
+     * Checks whether there are more events, which is the case until the root tag has been read completely
+     * @return True if there are more events
+     */
+    public boolean hasNext() {
+        return !done;
+    }
+
+    /**
+     * Moves the cursor to the next event. If the value of the current event was not read, it is skipped.
+     * @return The next event
+     * @throws IOException If the input threw an exception
+     * @throws NoSuchElementException If the root tag has been read completely
+     */
+    public Event next() throws IOException {
+        if (done) throw new NoSuchElementException();
+        if (pending) {
+            input.skipValue(type.getId());
+            pending = false;
+        }
+
+        // The root tag is always named
+        if (depth == 0) {
+            int id = input.readByte();
+            return start(id, input.readName());
+        }
+
+        int top = depth - 1;
+        if (elementTypes[top] < 0) {
+            int id = input.readByte();
+            if (id == 0) return end(Event.END_COMPOUND, TagType.TAG_COMPOUND);
+            return start(id, input.readName());
+        }
+
+        if (remaining[top] == 0) return end(Event.END_LIST, TagType.TAG_LIST);
+        remaining[top]--;
+        return start(elementTypes[top], null);
+    }
+
+    /**
+     * Skips the rest of the current tag. For START_COMPOUND and START_LIST events, this skips all children, and moves
+     * the cursor to the matching end event. For a VALUE event, it skips the value.
+     * Fixed-size values and lists of fixed-size values are skipped in one step.
+     * @throws IOException If the input threw an exception
+     * @throws IllegalStateException If there is nothing to skip
+     */
+    public void skipValue() throws IOException {
+        if (event == Event.START_COMPOUND) {
+            // The type and name have been read, and the value starts with the first child
+            input.skipValue(TagType.TAG_COMPOUND.getId());
+            end(Event.END_COMPOUND, TagType.TAG_COMPOUND);
+        } else if (event == Event.START_LIST) {
+            input.skipValues(elementTypes[depth - 1], remaining[depth - 1]);
+            end(Event.END_LIST, TagType.TAG_LIST);
+        } else if (pending) {
+            input.skipValue(type.getId());
+            pending = false;
+        } else {
+            throw new IllegalStateException("There is no value to skip.");
+        }
+    }
+
+    /**
+     * Retrieves the current event
+     * @return The event, or null if {@link #next()} has not been called yet
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Retrieves the type of the tag that the current event belongs to
+     * @return The tag type
+     */
+    public TagType getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the name of the tag that the current event belongs to.
+     * For end events and list elements, the name is null.
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the element type of the list of the current START_LIST event
+     * @return The element type
+     */
+    public TagType getListType() {
+        checkEvent(Event.START_LIST);
+        return TagType.fromId((byte) elementTypes[depth - 1]);
+    }
+
+    /**
+     * Retrieves the length of the list of the current START_LIST event
+     * @return The length
+     */
+    public int getListLength() {
+        checkEvent(Event.START_LIST);
+        return remaining[depth - 1];
+    }
+
+    /**
+     * Retrieves the amount of compounds and lists that the cursor is currently in
+     * @return The depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public byte readByte() throws IOException {
+        consume(TagType.TAG_BYTE);
+        return input.readByte();
+    }
+
+    public short readShort() throws IOException {
+        consume(TagType.TAG_SHORT);
+        return input.readShort();
+    }
+
+    public int readInt() throws IOException {
+        consume(TagType.TAG_INT);
+        return input.readInt();
+    }
+
+    public long readLong() throws IOException {
+        consume(TagType.TAG_LONG);
+        return input.readLong();
+    }
+
+    public float readFloat() throws IOException {
+        consume(TagType.TAG_FLOAT);
+        return input.readFloat();
+    }
+
+    public double readDouble() throws IOException {
+        consume(TagType.TAG_DOUBLE);
+        return input.readDouble();
+    }
+
+    public String readString() throws IOException {
+        consume(TagType.TAG_STRING);
+        return input.readString();
+    }
+
+    public byte[] readByteArray() throws IOException {
+        consume(TagType.TAG_BYTE_ARRAY);
+        byte[] values = new byte[input.readInt()];
+        input.readBytes(values, 0, values.length);
+        return values;
+    }
+
+    public int[] readIntArray() throws IOException {
+        consume(TagType.TAG_INT_ARRAY);
+        int[] values = new int[input.readInt()];
+        input.readInts(values, 0, values.length);
+        return values;
+    }
+
+    /**
+     * Decodes the rest of the current tag into a Tag object. For START_COMPOUND and START_LIST events, this reads all
+     * children, and moves the cursor to the matching end event.
+     * @return The resulting Tag
+     * @throws IOException If the input threw an exception
+     * @throws IllegalStateException If there is no tag to decode
+     */
+    public Tag readTag() throws IOException {
+        if (event == Event.START_COMPOUND) {
+            Tag result = Tag.readValue(name, TagType.TAG_COMPOUND.getId(), input);
+            end(Event.END_COMPOUND, TagType.TAG_COMPOUND);
+            return result;
+        } else if (event == Event.START_LIST) {
+            TagType elementType = getListType();
+            List<Tag> elements = new ArrayList<>(remaining[depth - 1]);
+            for (int i = remaining[depth - 1]; i > 0; i--) {
+                elements.add(Tag.read(input, elementType.getId()));
+            }
+            ListTag<Tag> result = new ListTag<>(name, elementType, elements);
+            end(Event.END_LIST, TagType.TAG_LIST);
+            return result;
+        } else if (pending) {
+            pending = false;
+            return Tag.readValue(name, type.getId(), input);
+        }
+        throw new IllegalStateException("There is no tag to read.");
+    }
+
+    /**
+     * Skips the value of the current event if it was not read, and hands all bytes that were read ahead back to
+     * the underlying source
+     * @throws IOException If the input threw an exception
+     */
+    @Override
+    public void close() throws IOException {
+        if (pending) {
+            input.skipValue(type.getId());
+            pending = false;
+        }
+        input.release();
+    }
+
+    /**
+     * Handles the start of a tag with the given type
+     * @param id The ID of the tag type
+     * @param name The name of the tag, or null if it is a list element
+     * @return The event
+     * @throws IOException If the input threw an exception
+     */
+    private Event start(int id, String name) throws IOException {
+        TagType type = TagType.fromId((byte) id);
+        if (type == null || type == TagType.TAG_END) throw new IllegalStateException("Invalid NBT formatting.");
+        this.type = type;
+        this.name = name;
+
+        if (type == TagType.TAG_COMPOUND) {
+            push(-1, 0);
+            return event = Event.START_COMPOUND;
+        } else if (type == TagType.TAG_LIST) {
+            int elementType = input.readByte();
+            push(elementType, input.readInt());
+            return event = Event.START_LIST;
+        }
+
+        pending = true;
+        // A root tag that is not a compound or list consists of a single event
+        if (depth == 0) done = true;
+        return event = Event.VALUE;
+    }
+
+    /**
+     * Closes the current compound or list
+     * @param event The end event
+     * @param type The type of the container
+     * @return The event
+     */
+    private Event end(Event event, TagType type) {
+        this.type = type;
+        this.name = null;
+        depth--;
+        if (depth == 0) done = true;
+        return this.event = event;
+    }
+
+    /**
+     * Opens a new compound or list
+     * @param elementType The element type ID of a list, or -1 for a compound
+     * @param length The length of a list
+     */
+    private void push(int elementType, int length) {
+        if (depth == elementTypes.length) {
+            elementTypes = Arrays.copyOf(elementTypes, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        elementTypes[depth] = elementType;
+        remaining[depth] = length;
+        depth++;
+    }
+
+    /**
+     * Marks the value of the current VALUE event as consumed
+     * @param expected The type that the value should have
+     */
+    private void consume(TagType expected) {
+        if (!pending || type != expected) {
+            throw new IllegalStateException("Expected an unread " + expected + " value, but the current tag is " + type + ".");
+        }
+        pending = false;
+    }
+
+    private void checkEvent(Event expected) {
+        if (event != expected) {
+            throw new IllegalStateException("Expected event " + expected + ", but is " + event + ".");
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package nl.itslars.mcpenbt.io;
+
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Streaming writer, that emits NBT directly to an output without creating any Tag objects.
+ * Compounds and lists are opened and closed explicitly, and the writer checks that they are nested correctly:
+ * tags in a compound must have a name, and a list must receive exactly the announced amount of elements of its type.
+ * Inside a list, the name argument of the write methods is ignored and can be null.
+ * <pre>{@code
+ * writer.beginCompound("")
+ *         .writeInt("Count", 1)
+ *         .beginList("Pos", TagType.TAG_DOUBLE, 3).writeDouble(null, x).writeDouble(null, y).writeDouble(null, z).endList()
+ *         .endCompound();
+ * }</pre>
+ */
+public class NBTWriter implements Closeable {
+
+    private final NBTOutput output;
+
+    // The element type ID of every open container, or -1 for compounds
+    private int[] elementTypes = new int[16];
+    // The amount of elements that every open list still expects
+    private int[] remaining = new int[16];
+    private int depth;
+    // Whether the root tag has been written completely
+    private boolean done;
+
+    public NBTWriter(NBTOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * Creates a writer that writes directly into the given buffer, starting at its current position
+     * @param buffer The buffer
+     * @return The writer
+     */
+    public static NBTWriter of(ByteBuffer buffer) {
+        return new NBTWriter(NBTOutput.of(buffer));
+    }
+
+    /**
+     * Creates a buffered writer that writes to the given stream. Call {@link #close()} when done writing.
+     * @param stream The output stream
+     * @return The writer
+     */
+    public static NBTWriter of(OutputStream stream) {
+        return new NBTWriter(NBTOutput.of(stream));
+    }
+
+    /**
+     * Opens a compound. Its children are written until {@link #endCompound()} is called.
+     * @param name The name of the compound
+     * @return This writer
+     * @throws IOException If the output threw an exception
+     */
+    public NBTWriter beginCompound(String name) throws IOException {
+        begin(name, TagType.TAG_COMPOUND);
+        push(-1, 0);
+        return this;
+    }
+
+    /**
+     * Closes the innermost compound
+     * @return This writer
+     * @throws IOException If the output threw an exception
+     */
+    public NBTWriter endCompound() throws IOException {
+        if (depth == 0 || elementTypes[depth - 1] >= 0) throw new IllegalStateException("There is no compound to end.");
+        output.writeByte(0);
+        depth--;
+        end();
+        return this;
+    }
+
+    /**
+     * Opens a list. Exactly the given amount of elements of the given type must be written before {@link #endList()}.
+     * @param name The name of the list
+     * @param elementType The type of the elements
+     * @param size The amount of elements
+     * @return This writer
+     * @throws IOException If the output threw an exception
+     */
+    public NBTWriter beginList(String name, TagType elementType, int size) throws IOException {
+        if (size < 0) throw new IllegalArgumentException("The list size cannot be negative.");
+        begin(name, TagType.TAG_LIST);
+        output.writeByte(elementType.getId());
+        output.writeInt(size);
+        push(elementType.getId(), size);
+        return this;
+    }
+
+    /**
+     * Closes the innermost list
+     * @return This writer
+     */
+    public NBTWriter endList() {
+        if (depth == 0 || elementTypes[depth - 1] < 0) throw new IllegalStateException("There is no list to end.");
+        if (remaining[depth - 1] != 0) {
+            throw new IllegalStateException("The list expects " + remaining[depth - 1] + " more elements.");
+        }
+        depth--;
+        end();
+        return this;
+    }
+
+    public NBTWriter writeByte(String name, byte value) throws IOException {
+        begin(name, TagType.TAG_BYTE);
+        output.writeByte(value);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeShort(String name, short value) throws IOException {
+        begin(name, TagType.TAG_SHORT);
+        output.writeShort(value);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeInt(String name, int value) throws IOException {
+        begin(name, TagType.TAG_INT);
+        output.writeInt(value);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeLong(String name, long value) throws IOException {
+        begin(name, TagType.TAG_LONG);
+        output.writeLong(value);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeFloat(String name, float value) throws IOException {
+        begin(name, TagType.TAG_FLOAT);
+        output.writeFloat(value);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeDouble(String name, double value) throws IOException {
+        begin(name, TagType.TAG_DOUBLE);
+        output.writeDouble(value);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeString(String name, String value) throws IOException {
+        begin(name, TagType.TAG_STRING);
+        output.writeString(value);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeByteArray(String name, byte[] values) throws IOException {
+        begin(name, TagType.TAG_BYTE_ARRAY);
+        output.writeInt(values.length);
+        output.writeBytes(values, 0, values.length);
+        end();
+        return this;
+    }
+
+    public NBTWriter writeIntArray(String name, int[] values) throws IOException {
+        begin(name, TagType.TAG_INT_ARRAY);
+        output.writeInt(values.length);
+        output.writeInts(values, 0, values.length);
+        end();
+        return this;
+    }
+
+    /**
+     * Writes an existing tag. In a compound, the tag must have a name. In a list, it must not have one.
+     * @param tag The tag
+     * @return This writer
+     * @throws IOException If the output threw an exception
+     */
+    public NBTWriter writeTag(Tag tag) throws IOException {
+        boolean inList = depth > 0 && elementTypes[depth - 1] >= 0;
+        if (inList && tag.getName() != null) throw new IllegalArgumentException("List elements cannot have a name.");
+        if (!inList && tag.getName() == null) throw new IllegalArgumentException("Tags in a compound must have a name.");
+        // The tag writes its own type ID and name, if it has one
+        begin(null, tag.getType(), false);
+        tag.write(output);
+        end();
+        return this;
+    }
+
+    /**
+     * Checks that all compounds and lists have been closed, and flushes the output.
+     * The underlying stream or channel is not closed.
+     * @throws IOException If the output threw an exception
+     */
+    @Override
+    public void close() throws IOException {
+        if (depth != 0) throw new IllegalStateException("There are " + depth + " compounds or lists that were not ended.");
+        output.flush();
+    }
+
+    /**
+     * Validates and writes the start of a tag
+     * @param name The name of the tag
+     * @param type The type of the tag
+     * @throws IOException If the output threw an exception
+     */
+    private void begin(String name, TagType type) throws IOException {
+        begin(name, type, true);
+    }
+
+    /**
+     * Validates the start of a tag, and writes its type ID and name if it is not a list element
+     * @param name The name of the tag
+     * @param type The type of the tag
+     * @param writeName Whether the type ID and name should be written
+     * @throws IOException If the output threw an exception
+     */
+    private void begin(String name, TagType type, boolean writeName) throws IOException {
+        if (done) throw new IllegalStateException("The root tag has already been written.");
+
+        int top = depth - 1;
+        if (depth > 0 && elementTypes[top] >= 0) {
+            if (elementTypes[top] != type.getId()) {
+                throw new IllegalStateException("Expected a list element of type " + TagType.fromId((byte) elementTypes[top]) + ", but is " + type + ".");
+            }
+            if (remaining[top] == 0) throw new IllegalStateException("The list is already full.");
+            remaining[top]--;
+        } else if (writeName) {
+            if (name == null) throw new IllegalArgumentException("Tags in a compound must have a name.");
+            output.writeByte(type.getId());
+            output.writeString(name);
+        }
+    }
+
+    /**
+     * Marks the end of a tag. If that was the root tag, no more tags can be written.
+     */
+    private void end() {
+        if (depth == 0) done = true;
+    }
+
+    /**
+     * Opens a new compound or list
+     * @param elementType The element type ID of a list, or -1 for a compound
+     * @param length The length of a list
+     */
+    private void push(int elementType, int length) {
+        if (depth == elementTypes.length) {
+            elementTypes = Arrays.copyOf(elementTypes, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        elementTypes[depth] = elementType;
+        remaining[depth] = length;
+        depth++;
+    }
+}
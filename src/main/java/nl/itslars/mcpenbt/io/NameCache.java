@@ -0,0 +1,249 @@
+package nl.itslars.mcpenbt.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of tag names, that is used when names are read from an {@link NBTInput}. It can be shared by multiple
+ * threads without locking, see {@link #get(ByteBuffer, int, int, boolean)}.
+ * Names are looked up on their raw bytes, so a name that is already in the cache is read without allocating anything,
+ * and all tags with that name share the same String instance.
+ * The cache has a fixed amount of slots, in groups of four. Every name can only be stored in one group, and a new
+ * name pushes out the oldest name of its group when the group is full. Long names, which rarely repeat, are not cached.
+ * A lookup takes about as long as decoding the name, so the cache pays off in saved allocations and heap, not in
+ * read time. Therefore, names are not cached by default. A cache can be set for all new inputs with
+ * {@link #setDefault(NameCache)}, or for a single input with {@link NBTInput#setNameCache(NameCache)}.
+ */
+public class NameCache {
+
+    // Names with more bytes than this are never cached
+    static final int MAX_NAME_LENGTH = 64;
+    // The amount of slots that a name can be stored in
+    private static final int WAYS = 4;
+
+    // The cache that new inputs use, or null if new inputs do not use a cache
+    private static volatile NameCache defaultCache;
+
+    // The slots. Entries are immutable, so they can be read and replaced without locking. Concurrent changes to the
+    // same group may lose or duplicate entries, which only costs a miss
+    private final Entry[] entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new, empty cache
+     * @param capacity The maximum amount of names, which is rounded up to a power of two. As names that share slots push
+     * each other out, it should be a few times larger than the amount of distinct names
+     */
+    public NameCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be positive.");
+        int slots = Math.max(WAYS, Integer.highestOneBit(capacity - 1) << 1);
+        this.entries = new Entry[slots];
+    }
+
+    /**
+     * Retrieves the cache that new inputs use
+     * @return The cache, or null if new inputs do not use a cache
+     */
+    public static NameCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Sets the cache that new inputs use, like {@code new NameCache(4096)}. Inputs that were already created keep
+     * their cache.
+     * @param cache The cache, or null to not cache names by default
+     */
+    public static void setDefault(NameCache cache) {
+        defaultCache = cache;
+    }
+
+    /**
+     * Retrieves the name that is encoded in the given bytes of the given buffer, from the cache if it is in there.
+     * The position of the buffer is not changed.
+     * Threads that add names to the same group at the same time race, as the group is shifted without locking. This is
+     * harmless: a name may be pushed out early or be stored twice, and the hit and miss counts are approximate, but a
+     * name is only ever returned for its own bytes.
+     * @param buffer The buffer
+     * @param position The position of the first byte of the name
+     * @param length The amount of bytes of the name
+     * @param modified Whether the name is encoded in Modified UTF-8 instead of UTF-8
+     * @return The name
+     */
+    public String get(ByteBuffer buffer, int position, int length, boolean modified) {
+        if (length > MAX_NAME_LENGTH) return StringCodec.decode(buffer, position, length, modified);
+
+        int hash = hash(buffer, position, length);
+        // The group of slots is ordered from the newest to the oldest name
+        int group = hash & (entries.length - WAYS);
+        for (int i = group; i < group + WAYS; i++) {
+            Entry entry = entries[i];
+            if (entry == null) break;
+            if (entry.matches(hash, buffer, position, length, modified)) {
+                hits.increment();
+                return entry.name;
+            }
+        }
+
+        misses.increment();
+        Entry entry = new Entry(hash, copy(buffer, position, length), modified,
+                StringCodec.decode(buffer, position, length, modified));
+        System.arraycopy(entries, group, entries, group + 1, WAYS - 1);
+        entries[group] = entry;
+        return entry.name;
+    }
+
+    /**
+     * Retrieves the amount of names that were found in the cache
+     * @return The amount of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the amount of names that were not found in the cache, and were added to it.
+     * Names that are too long to be cached are not counted.
+     * @return The amount of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the fraction of names that were found in the cache
+     * @return The hit rate, between 0 and 1. 0 if no names were looked up yet
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Sets the hit and miss counts back to 0
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Removes all names from the cache
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NameCache{hits=" + getHitCount() + ", misses=" + getMissCount() + "}";
+    }
+
+    /**
+     * Computes the hash of the given bytes of the given buffer
+     * @param buffer The buffer
+     * @param position The position of the first byte
+     * @param length The amount of bytes
+     * @return The hash
+     */
+    static int hash(ByteBuffer buffer, int position, int length) {
+        int hash = length;
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + position;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + array[offset + i];
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + buffer.get(position + i);
+            }
+        }
+        // Spread all bits over the low bits, which select the slots
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 15);
+    }
+
+    /**
+     * Copies the given bytes of the given buffer into a new array
+     * @param buffer The buffer
+     * @param position The position of the first byte
+     * @param length The amount of bytes
+     * @return The array
+     */
+    static byte[] copy(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + position, bytes, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(position + i);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks whether the given bytes are equal to the bytes of the given buffer at the given position
+     * @param bytes The bytes
+     * @param buffer The buffer, which must have at least as many bytes from the position on
+     * @param position The position of the first byte
+     * @return True if they are equal, false otherwise
+     */
+    static boolean bytesEqual(byte[] bytes, ByteBuffer buffer, int position) {
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + position;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != array[offset + i]) return false;
+            }
+        } else {
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != buffer.get(position + i)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A cached name, together with its raw bytes
+     */
+    private static final class Entry {
+
+        private final int hash;
+        private final byte[] bytes;
+        // Whether the bytes were decoded as Modified UTF-8. Only names with non-ASCII bytes can decode differently
+        private final boolean modified;
+        private final boolean ascii;
+        private final String name;
+
+        private Entry(int hash, byte[] bytes, boolean modified, String name) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.modified = modified;
+            this.name = name;
+            boolean ascii = true;
+            for (byte b : bytes) {
+                ascii &= b >= 0;
+            }
+            this.ascii = ascii;
+        }
+
+        /**
+         * Checks whether this entry holds the name with the given bytes
+         * @param hash The hash of the bytes
+         * @param buffer The buffer
+         * @param position The position of the first byte
+         * @param length The amount of bytes
+         * @param modified Whether the name is encoded in Modified UTF-8
+         * @return True if it does, false otherwise
+         */
+        private boolean matches(int hash, ByteBuffer buffer, int position, int length, boolean modified) {
+            if (this.hash != hash || bytes.length != length || (!ascii && this.modified != modified)) return false;
+            return bytesEqual(bytes, buffer, position);
+        }
+    }
+}
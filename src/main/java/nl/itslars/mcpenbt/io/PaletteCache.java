@@ -0,0 +1,223 @@
+package nl.itslars.mcpenbt.io;
+
+import nl.itslars.mcpenbt.enums.NBTFormat;
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.tags.CompoundTag;
+import nl.itslars.mcpenbt.tags.Tag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of small root compounds, like the block states in sub-chunk palettes, that repeat over and over again.
+ * It can be shared by multiple threads without locking, see {@link #read(NBTInput)}.
+ * Compounds are looked up on their raw bytes: the compound is first skipped to find where it ends, which is much
+ * cheaper than decoding it. A compound that is already in the cache is not decoded at all, and all occurrences share
+ * the same frozen tag.
+ * The cache has a fixed amount of slots, in groups of four. Every compound can only be stored in one group, which is
+ * ordered from the most to the least recently used compound. A new compound evicts the least recently used compound of
+ * its group when the group is full. Compounds of more than {@value #MAX_COMPOUND_LENGTH} bytes are not cached.
+ * Compounds are not cached by default. A cache can be set for all sub-chunks that are read with
+ * {@link #setDefault(PaletteCache)}.
+ */
+public class PaletteCache {
+
+    /**
+     * Compounds with more bytes than this are never cached
+     */
+    public static final int MAX_COMPOUND_LENGTH = 1024;
+    // The amount of slots that a compound can be stored in
+    private static final int WAYS = 4;
+
+    // The cache that is used when no cache is given, or null if compounds are not cached by default
+    private static volatile PaletteCache defaultCache;
+
+    // The slots. Entries are immutable, so they can be read and replaced without locking. Concurrent changes to the
+    // same group may lose or duplicate entries, which only costs a miss
+    private final Entry[] entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a new, empty cache
+     * @param capacity The maximum amount of compounds, which is rounded up to a power of two. As compounds that share
+     * slots push each other out, it should be a few times larger than the amount of distinct compounds
+     */
+    public PaletteCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be positive.");
+        int slots = Math.max(WAYS, Integer.highestOneBit(capacity - 1) << 1);
+        this.entries = new Entry[slots];
+    }
+
+    /**
+     * Retrieves the cache that is used when no cache is given
+     * @return The cache, or null if compounds are not cached by default
+     */
+    public static PaletteCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Sets the cache that is used when no cache is given, like {@code new PaletteCache(4096)}
+     * @param cache The cache, or null to not cache compounds by default
+     */
+    public static void setDefault(PaletteCache cache) {
+        defaultCache = cache;
+    }
+
+    /**
+     * Reads a root compound from the given input, from the cache if a compound with the same bytes is in there.
+     * Only inputs with a source buffer (see {@link NBTInput#getSource()}) can be looked up; compounds read from a
+     * stream are decoded and frozen, but not cached.
+     * Threads that use the same group at the same time race, as the group is reordered without locking. This is
+     * harmless: a compound may be evicted early or be stored twice, and the hit, miss and eviction counts are
+     * approximate, but a compound is only ever returned for its own bytes.
+     * @param input The input
+     * @return The frozen compound
+     * @throws IOException If the input threw an exception
+     * @throws IllegalStateException If the next tag is not a compound
+     */
+    public CompoundTag read(NBTInput input) throws IOException {
+        ByteBuffer source = input.getSource();
+        if (source == null) return decode(input);
+
+        // Find the end of the compound, without decoding it
+        int start = input.getPosition();
+        if (input.readByte() != TagType.TAG_COMPOUND.getId()) throw new IllegalStateException("Invalid NBT formatting.");
+        input.skip(input.readStringLength());
+        input.skipValue(TagType.TAG_COMPOUND.getId());
+        int length = input.getPosition() - start;
+        if (length > MAX_COMPOUND_LENGTH) {
+            input.setPosition(start);
+            return decode(input);
+        }
+
+        NBTFormat format = input.getFormat();
+        int hash = NameCache.hash(source, start, length);
+        int group = hash & (entries.length - WAYS);
+        for (int i = group; i < group + WAYS; i++) {
+            Entry entry = entries[i];
+            if (entry == null) break;
+            if (entry.matches(hash, format, source, start, length)) {
+                hits.increment();
+                // Move the entry to the front of its group
+                System.arraycopy(entries, group, entries, group + 1, i - group);
+                entries[group] = entry;
+                return entry.tag;
+            }
+        }
+
+        misses.increment();
+        input.setPosition(start);
+        Entry entry = new Entry(hash, format, NameCache.copy(source, start, length), decode(input));
+        if (entries[group + WAYS - 1] != null) evictions.increment();
+        System.arraycopy(entries, group, entries, group + 1, WAYS - 1);
+        entries[group] = entry;
+        return entry.tag;
+    }
+
+    /**
+     * Retrieves the amount of compounds that were found in the cache
+     * @return The amount of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the amount of compounds that were not found in the cache, and were added to it.
+     * Compounds that cannot be cached are not counted.
+     * @return The amount of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the amount of compounds that were removed from the cache to make room for another compound
+     * @return The amount of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Retrieves the fraction of compounds that were found in the cache
+     * @return The hit rate, between 0 and 1. 0 if no compounds were looked up yet
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Sets the hit, miss and eviction counts back to 0
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Removes all compounds from the cache
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PaletteCache{hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    /**
+     * Decodes a root compound from the given input, and freezes it
+     * @param input The input
+     * @return The frozen compound
+     * @throws IOException If the input threw an exception
+     */
+    private static CompoundTag decode(NBTInput input) throws IOException {
+        Tag tag = Tag.read(input);
+        if (!(tag instanceof CompoundTag)) throw new IllegalStateException("Invalid NBT formatting.");
+        return ((CompoundTag) tag).freeze();
+    }
+
+    /**
+     * A cached compound, together with its raw bytes
+     */
+    private static final class Entry {
+
+        private final int hash;
+        // The same bytes mean something else in another format
+        private final NBTFormat format;
+        private final byte[] bytes;
+        private final CompoundTag tag;
+
+        private Entry(int hash, NBTFormat format, byte[] bytes, CompoundTag tag) {
+            this.hash = hash;
+            this.format = format;
+            this.bytes = bytes;
+            this.tag = tag;
+        }
+
+        /**
+         * Checks whether this entry holds the compound with the given bytes
+         * @param hash The hash of the bytes
+         * @param format The format of the bytes
+         * @param buffer The buffer
+         * @param position The position of the first byte
+         * @param length The amount of bytes
+         * @return True if it does, false otherwise
+         */
+        private boolean matches(int hash, NBTFormat format, ByteBuffer buffer, int position, int length) {
+            return this.hash == hash && this.format == format && bytes.length == length
+                    && NameCache.bytesEqual(bytes, buffer, position);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package nl.itslars.mcpenbt.io;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility class for encoding and decoding strings and tag names, independent of the platform default charset.
+ * Bedrock Edition uses standard UTF-8. Java Edition uses Modified UTF-8, in which the null character takes two bytes,
+ * and every half of a surrogate pair is encoded separately in three bytes.
+ * Strings are encoded straight into an output buffer and decoded straight from an input buffer. Runs of ASCII
+ * characters, which most names and IDs consist of, are copied without any further encoding.
+ */
+public class StringCodec {
+
+    private StringCodec() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Computes the amount of bytes of the given string, without encoding it
+     * @param value The string
+     * @param modified Whether to use Modified UTF-8 instead of UTF-8
+     * @return The amount of bytes
+     */
+    public static int encodedLength(String value, boolean modified) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == 0 && modified) bytes++;
+            } else if (c < 0x800) {
+                bytes++;
+            } else if (modified || !Character.isSurrogate(c)) {
+                bytes += 2;
+            } else if (isPair(value, i)) {
+                // Two characters, four bytes
+                bytes += 2;
+                i++;
+            }
+            // An unpaired surrogate is replaced by a single question mark in UTF-8
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes the given string into a new byte array
+     * @param value The string
+     * @param modified Whether to use Modified UTF-8 instead of UTF-8
+     * @return The bytes
+     */
+    public static byte[] encode(String value, boolean modified) {
+        if (!modified) return value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(value, true));
+        int index = 0;
+        while (index < value.length()) {
+            index = putAscii(value, index, value.length(), true, buffer);
+            if (index < value.length()) index = putChar(value, index, true, buffer);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a string from the given bytes of the given buffer. The position of the buffer is not changed.
+     * Malformed bytes are replaced by the replacement character (U+FFFD).
+     * @param buffer The buffer
+     * @param position The position of the first byte
+     * @param length The amount of bytes
+     * @param modified Whether the bytes are Modified UTF-8 instead of UTF-8
+     * @return The string
+     */
+    public static String decode(ByteBuffer buffer, int position, int length, boolean modified) {
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + position;
+            // The decoder of the JDK has its own ASCII fast path
+            if (!modified) return new String(array, offset, length, StandardCharsets.UTF_8);
+            if (isAscii(array, offset, length)) return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+            return decodeModified(buffer, position, length);
+        }
+
+        // Buffers without a backing array, like direct and memory-mapped buffers
+        if (modified) return decodeModified(buffer, position, length);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the run of ASCII characters that starts at the given index into the buffer, at its current position.
+     * Stops at the first character that is not encoded as a single byte.
+     * @param value The string
+     * @param index The index of the first character
+     * @param end The index of the character to stop at, at most the amount of bytes that the buffer has room for
+     * @param modified Whether to use Modified UTF-8 instead of UTF-8
+     * @param buffer The buffer
+     * @return The index of the first character that was not written
+     */
+    static int putAscii(String value, int index, int end, boolean modified, ByteBuffer buffer) {
+        int start = index;
+        int position = buffer.position();
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + position - start;
+            for (; index < end; index++) {
+                char c = value.charAt(index);
+                if (c >= 0x80 || (c == 0 && modified)) break;
+                array[offset + index] = (byte) c;
+            }
+        } else {
+            for (; index < end; index++) {
+                char c = value.charAt(index);
+                if (c >= 0x80 || (c == 0 && modified)) break;
+                buffer.put(position + index - start, (byte) c);
+            }
+        }
+        ((Buffer) buffer).position(position + index - start);
+        return index;
+    }
+
+    /**
+     * Checks whether every character of the given string is encoded as the same single byte
+     * @param value The string
+     * @param modified Whether to use Modified UTF-8 instead of UTF-8, in which the null character takes two bytes
+     * @return True if it is, false otherwise
+     */
+    public static boolean isAscii(String value, boolean modified) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || (c == 0 && modified)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes every character of the given string as a single byte into the backing array of the buffer, at its
+     * current position. The string may only contain ASCII characters, and the buffer must have enough room.
+     * @param value The string
+     * @param buffer The buffer
+     */
+    @SuppressWarnings("deprecation")
+    static void putLatin1(String value, ByteBuffer buffer) {
+        int position = buffer.position();
+        // Copies the low bytes of the characters, without encoding or allocating anything
+        value.getBytes(0, value.length(), buffer.array(), buffer.arrayOffset() + position);
+        ((Buffer) buffer).position(position + value.length());
+    }
+
+    /**
+     * Writes the character (or surrogate pair) at the given index into the buffer, which must have room for 4 bytes
+     * @param value The string
+     * @param index The index of the character
+     * @param modified Whether to use Modified UTF-8 instead of UTF-8
+     * @param buffer The buffer
+     * @return The index of the next character
+     */
+    static int putChar(String value, int index, boolean modified, ByteBuffer buffer) {
+        char c = value.charAt(index);
+        if (c < 0x80 && !(c == 0 && modified)) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (modified || !Character.isSurrogate(c)) {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (isPair(value, index)) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            return index + 2;
+        } else {
+            buffer.put((byte) '?');
+        }
+        return index + 1;
+    }
+
+    /**
+     * Checks whether the character at the given index is the start of a valid surrogate pair
+     * @param value The string
+     * @param index The index
+     * @return True if it is, false otherwise
+     */
+    private static boolean isPair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    /**
+     * Checks whether all given bytes are ASCII characters
+     * @param array The byte array
+     * @param offset The offset of the first byte
+     * @param length The amount of bytes
+     * @return True if they are, false otherwise
+     */
+    private static boolean isAscii(byte[] array, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (array[i] < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes Modified UTF-8, which consists of sequences of one, two and three bytes
+     * @param buffer The buffer
+     * @param position The position of the first byte
+     * @param length The amount of bytes
+     * @return The string
+     */
+    private static String decodeModified(ByteBuffer buffer, int position, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = position + length;
+        int i = position;
+        while (i < end) {
+            int b = buffer.get(i) & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                i++;
+            } else if ((b & 0xE0) == 0xC0 && i + 1 < end && isContinuation(buffer.get(i + 1))) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get(i + 1) & 0x3F));
+                i += 2;
+            } else if ((b & 0xF0) == 0xE0 && i + 2 < end && isContinuation(buffer.get(i + 1))
+                    && isContinuation(buffer.get(i + 2))) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((buffer.get(i + 1) & 0x3F) << 6) | (buffer.get(i + 2) & 0x3F));
+                i += 3;
+            } else {
+                chars[count++] = '\uFFFD';
+                i++;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+}
@@ -1,11 +1,12 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -21,26 +22,46 @@ public class ByteArrayTag extends Tag {
         this.values = values == null ? new byte[]{} : values;
     }
 
+    /**
+     * Retrieves the values of this tag. For a frozen tag, this is a copy
+     * @return The values
+     */
     public byte[] getValues() {
-        return values;
+        return isFrozen() ? values.clone() : values;
     }
 
     public void setValues(byte[] values) {
+        checkMutable();
         this.values = values;
+        changed();
     }
 
     public void setValue(int i, byte value) {
+        checkMutable();
         values[i] = value;
+        changed();
     }
 
     /**
-     * Converts the ByteArrayTag object to a byte array.
+     * Writes the ByteArrayTag object to the given output.
      * 4 bytes for the length of the array, followed by the bytes
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        return ByteBuffer.allocate(4 + values.length).order(ByteOrder.LITTLE_ENDIAN).putInt(values.length).put(values).array();
+    protected void writeValue(NBTOutput output) throws IOException {
+        output.writeInt(values.length);
+        output.writeBytes(values, 0, values.length);
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        return format.intSize(values.length) + values.length;
+    }
+
+    @Override
+    public ByteArrayTag toMutable() {
+        return new ByteArrayTag(getName(), values.clone());
     }
 
     @Override
@@ -53,12 +74,12 @@ public class ByteArrayTag extends Tag {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ByteArrayTag that = (ByteArrayTag) o;
-        return Arrays.equals(values, that.values) && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        return Arrays.equals(values, that.values) && nameEquals(that);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(values);
+        return hashWithName(Arrays.hashCode(values));
     }
 
     /**
@@ -69,14 +90,22 @@ public class ByteArrayTag extends Tag {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a ByteArrayTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
         // Read the length of the byte array
-        byte[] arrayLength = new byte[]{(byte) stream.read(), (byte) stream.read(), (byte) stream.read(), (byte) stream.read()};
-        int length = ByteBuffer.wrap(arrayLength).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        int length = input.readInt();
         // Create and fill a byte array
         byte[] array = new byte[length];
-        for (int i = 0; i < length; i++) {
-            array[i] = (byte) stream.read();
-        }
+        input.readBytes(array, 0, length);
         return new ByteArrayTag(name, array);
     }
 }
@@ -1,10 +1,12 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Objects;
 
 /**
  * Class for representing a Byte NBT Tag
@@ -24,17 +26,30 @@ public class ByteTag extends Tag {
     }
 
     public void setValue(byte value) {
+        checkMutable();
         this.value = value;
+        changed();
     }
 
     /**
-     * Converts the ByteTag to a byte array.
+     * Writes the ByteTag to the given output.
      * 1 byte is used, the actual byte that is represented by this class.
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        return new byte[]{value};
+    protected void writeValue(NBTOutput output) throws IOException {
+        output.writeByte(value);
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        return 1;
+    }
+
+    @Override
+    public ByteTag toMutable() {
+        return new ByteTag(getName(), value);
     }
 
     @Override
@@ -47,12 +62,12 @@ public class ByteTag extends Tag {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ByteTag that = (ByteTag) o;
-        return value == that.value && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        return value == that.value && nameEquals(that);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return hashWithName(Byte.hashCode(value));
     }
 
     /**
@@ -63,6 +78,17 @@ public class ByteTag extends Tag {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
-        return new ByteTag(name, (byte) stream.read());
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a ByteTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
+        return new ByteTag(name, input.readByte());
     }
 }
@@ -1,27 +1,76 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
- * Class for representing a Compound NBT Tag
+ * Class for representing a Compound NBT Tag.
+ * Compounds with more than a few elements look up names through a hash index, which is built on the first lookup.
+ * Lazily read compounds are not indexed, their lookups compare the raw names of the elements that were not decoded yet.
+ * Removing an element takes time linear in the amount of elements, as the elements are kept in the order in which they
+ * are written.
  */
 public class CompoundTag extends Tag implements Iterable<Tag> {
 
-    // The list of elements that this tag encapsulates
+    // Compounds with more elements than this get a hash index for name lookups
+    private static final int INDEX_THRESHOLD = 8;
+
+    // The list of elements that this tag encapsulates. Its order is the order in which the elements are written
     private List<Tag> elements;
+    // A view on the elements list, which drops the name index when it is changed from the outside
+    private final List<Tag> elementsView = new ElementsView();
+    // Maps each element name to the first element with that name. Built on the first lookup, null if not built
+    private volatile Map<String, Tag> index;
+    // Whether the index was built over elements that share a name
+    private boolean duplicateNames;
+    // The amount of elements that the index covers
+    private int indexedSize;
+    // The size of the value in the format it was last computed for, or null if it was not computed yet
+    private CachedSize cachedSize;
+    // The hash of this tag, or null if it was not computed yet
+    private CachedHash cachedHash;
 
+    /**
+     * Creates a new CompoundTag. The given list is copied, so changing it afterwards does not change this tag.
+     * @param name The name of the tag
+     * @param elements The elements
+     */
     public CompoundTag(String name, List<Tag> elements) {
+        this(name);
+        this.elements = new ArrayList<>(elements);
+        joinChildren(this.elements);
+    }
+
+    private CompoundTag(String name) {
         super(name);
-        this.elements = elements;
     }
 
+    /**
+     * Creates a new CompoundTag that uses the given list directly, which no one else may hold on to
+     * @param name The name of the tag
+     * @param elements The elements
+     * @return The resulting tag
+     */
+    static CompoundTag wrap(String name, List<Tag> elements) {
+        CompoundTag result = new CompoundTag(name);
+        result.elements = elements;
+        result.joinChildren(elements);
+        return result;
+    }
+
+    /**
+     * Retrieves the elements of this compound. Changes to the returned list drop the name index and the cached size
+     * and hash.
+     * @return The elements
+     */
     public List<Tag> getElements() {
-        return elements;
+        return elementsView;
     }
 
     /**
@@ -30,7 +79,16 @@ public class CompoundTag extends Tag implements Iterable<Tag> {
      * @return An optional containing the tag if found, and empty otherwise
      */
     public Optional<Tag> getByName(String name) {
-        return elements.stream().filter(tag -> tag.getName().equals(name)).findFirst();
+        return Optional.ofNullable(find(name));
+    }
+
+    /**
+     * Checks whether there is a tag with the given name value
+     * @param name The name value
+     * @return True if there is, false otherwise
+     */
+    public boolean contains(String name) {
+        return find(name) != null;
     }
 
     /**
@@ -38,7 +96,15 @@ public class CompoundTag extends Tag implements Iterable<Tag> {
      * @param tag The tag
      */
     public void add(Tag tag) {
+        checkMutable();
         elements.add(tag);
+        tag.join(this);
+        changed();
+        Map<String, Tag> index = this.index;
+        if (index != null) {
+            duplicateNames |= index.putIfAbsent(tag.getName(), tag) != null;
+            indexedSize++;
+        }
     }
 
     /**
@@ -54,36 +120,454 @@ public class CompoundTag extends Tag implements Iterable<Tag> {
 
     /**
      * Removes the first occurrence of a tag with the given name from the elements list.
+     * This takes time linear in the amount of elements, as the elements after it are moved to keep their order.
      * @param name The tag name
      */
     public void remove(String name) {
-        Optional<Tag> optionalTag = getByName(name);
-        optionalTag.ifPresent(value -> elements.remove(value));
+        checkMutable();
+        if (elements instanceof LazyTagList) {
+            int position = ((LazyTagList) elements).indexOfName(name);
+            if (position >= 0) {
+                // The removed tag is not returned, so it does not have to be decoded
+                ((LazyTagList) elements).removeUndecoded(position);
+                changed();
+            }
+            return;
+        }
+
+        Tag tag = find(name);
+        if (tag == null) return;
+        // Remove the tag by identity, instead of comparing the contents of every element
+        for (int i = 0; i < elements.size(); i++) {
+            if (elements.get(i) == tag) {
+                elements.remove(i);
+                changed();
+                break;
+            }
+        }
+
+        Map<String, Tag> index = this.index;
+        if (index != null) {
+            index.remove(name);
+            indexedSize--;
+            // Another element with the same name should now be found, so the index has to be rebuilt
+            if (duplicateNames) this.index = null;
+        }
+    }
+
+    /**
+     * Retrieves the value of the ByteTag with the given name
+     * @param name The tag name
+     * @param defaultValue The value to return if there is no such tag, or if the tag has another type
+     * @return The value
+     */
+    public byte getByte(String name, byte defaultValue) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_BYTE ? ((ByteTag) tag).getValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves the value of the ShortTag with the given name
+     * @param name The tag name
+     * @param defaultValue The value to return if there is no such tag, or if the tag has another type
+     * @return The value
+     */
+    public short getShort(String name, short defaultValue) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_SHORT ? ((ShortTag) tag).getValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves the value of the IntTag with the given name
+     * @param name The tag name
+     * @param defaultValue The value to return if there is no such tag, or if the tag has another type
+     * @return The value
+     */
+    public int getInt(String name, int defaultValue) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_INT ? ((IntTag) tag).getValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves the value of the LongTag with the given name
+     * @param name The tag name
+     * @param defaultValue The value to return if there is no such tag, or if the tag has another type
+     * @return The value
+     */
+    public long getLong(String name, long defaultValue) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_LONG ? ((LongTag) tag).getValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves the value of the FloatTag with the given name
+     * @param name The tag name
+     * @param defaultValue The value to return if there is no such tag, or if the tag has another type
+     * @return The value
+     */
+    public float getFloat(String name, float defaultValue) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_FLOAT ? ((FloatTag) tag).getValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves the value of the DoubleTag with the given name
+     * @param name The tag name
+     * @param defaultValue The value to return if there is no such tag, or if the tag has another type
+     * @return The value
+     */
+    public double getDouble(String name, double defaultValue) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_DOUBLE ? ((DoubleTag) tag).getValue() : defaultValue;
+    }
+
+    /**
+     * Retrieves the value of the StringTag with the given name
+     * @param name The tag name
+     * @return The value, or null if there is no such tag, or if the tag has another type
+     */
+    public String getString(String name) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_STRING ? ((StringTag) tag).getValue() : null;
+    }
+
+    /**
+     * Retrieves the values of the ByteArrayTag with the given name
+     * @param name The tag name
+     * @return The values, or null if there is no such tag, or if the tag has another type
+     */
+    public byte[] getByteArray(String name) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_BYTE_ARRAY ? ((ByteArrayTag) tag).getValues() : null;
+    }
+
+    /**
+     * Retrieves the values of the IntArrayTag with the given name
+     * @param name The tag name
+     * @return The values, or null if there is no such tag, or if the tag has another type
+     */
+    public int[] getIntArray(String name) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_INT_ARRAY ? ((IntArrayTag) tag).getValues() : null;
+    }
+
+    /**
+     * Retrieves the CompoundTag with the given name
+     * @param name The tag name
+     * @return The tag, or null if there is no such tag, or if the tag has another type
+     */
+    public CompoundTag getCompound(String name) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_COMPOUND ? (CompoundTag) tag : null;
+    }
+
+    /**
+     * Retrieves the ListTag with the given name
+     * @param name The tag name
+     * @param <T> The Tag type that is in the list
+     * @return The tag, or null if there is no such tag, or if the tag has another type
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Tag> ListTag<T> getList(String name) {
+        Tag tag = find(name);
+        return tag != null && tag.getType() == TagType.TAG_LIST ? (ListTag<T>) tag : null;
+    }
+
+    /**
+     * Sets the value of the ByteTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param value The value
+     */
+    public void putByte(String name, byte value) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_BYTE && !tag.isFrozen()) {
+            ((ByteTag) tag).setValue(value);
+        } else {
+            change(name, new ByteTag(name, value));
+        }
+    }
+
+    /**
+     * Sets the value of the ShortTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param value The value
+     */
+    public void putShort(String name, short value) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_SHORT && !tag.isFrozen()) {
+            ((ShortTag) tag).setValue(value);
+        } else {
+            change(name, new ShortTag(name, value));
+        }
+    }
+
+    /**
+     * Sets the value of the IntTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param value The value
+     */
+    public void putInt(String name, int value) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_INT && !tag.isFrozen()) {
+            ((IntTag) tag).setValue(value);
+        } else {
+            change(name, new IntTag(name, value));
+        }
+    }
+
+    /**
+     * Sets the value of the LongTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param value The value
+     */
+    public void putLong(String name, long value) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_LONG && !tag.isFrozen()) {
+            ((LongTag) tag).setValue(value);
+        } else {
+            change(name, new LongTag(name, value));
+        }
+    }
+
+    /**
+     * Sets the value of the FloatTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param value The value
+     */
+    public void putFloat(String name, float value) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_FLOAT && !tag.isFrozen()) {
+            ((FloatTag) tag).setValue(value);
+        } else {
+            change(name, new FloatTag(name, value));
+        }
+    }
+
+    /**
+     * Sets the value of the DoubleTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param value The value
+     */
+    public void putDouble(String name, double value) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_DOUBLE && !tag.isFrozen()) {
+            ((DoubleTag) tag).setValue(value);
+        } else {
+            change(name, new DoubleTag(name, value));
+        }
+    }
+
+    /**
+     * Sets the value of the StringTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param value The value
+     */
+    public void putString(String name, String value) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_STRING && !tag.isFrozen()) {
+            ((StringTag) tag).setValue(value);
+        } else {
+            change(name, new StringTag(name, value));
+        }
+    }
+
+    /**
+     * Sets the values of the ByteArrayTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param values The values
+     */
+    public void putByteArray(String name, byte[] values) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_BYTE_ARRAY && !tag.isFrozen()) {
+            ((ByteArrayTag) tag).setValues(values);
+        } else {
+            change(name, new ByteArrayTag(name, values));
+        }
+    }
+
+    /**
+     * Sets the values of the IntArrayTag with the given name. If there is no such tag, or the tag has another type
+     * or is frozen, it is replaced by a new tag.
+     * @param name The tag name
+     * @param values The values
+     */
+    public void putIntArray(String name, int[] values) {
+        Tag tag = find(name);
+        if (tag != null && tag.getType() == TagType.TAG_INT_ARRAY && !tag.isFrozen()) {
+            ((IntArrayTag) tag).setValues(values);
+        } else {
+            change(name, new IntArrayTag(name, values));
+        }
+    }
+
+    /**
+     * Creates a frozen copy of this frozen compound, in which the first tag with the given name is replaced by the
+     * given tag, at the same position. If there is no such tag, the given tag is added to the back. All other
+     * elements are shared with this compound, not copied. The given tag is frozen as well.
+     * @param name The name of the tag to replace
+     * @param tag The new tag
+     * @return The copy
+     * @throws IllegalStateException If this compound is not frozen
+     */
+    public CompoundTag with(String name, Tag tag) {
+        checkFrozen();
+        tag.freeze();
+        Tag old = find(name);
+        List<Tag> result = new ArrayList<>(elements.size() + 1);
+        for (Tag element : elements) {
+            result.add(element == old ? tag : element);
+        }
+        if (old == null) result.add(tag);
+        return wrap(getName(), result).freeze();
+    }
+
+    /**
+     * Creates a frozen copy of this frozen compound, without the first tag with the given name.
+     * All other elements are shared with this compound, not copied.
+     * @param name The name of the tag to remove
+     * @return The copy, or this compound if there is no such tag
+     * @throws IllegalStateException If this compound is not frozen
+     */
+    public CompoundTag without(String name) {
+        checkFrozen();
+        Tag old = find(name);
+        if (old == null) return this;
+        List<Tag> result = new ArrayList<>(elements.size());
+        for (Tag element : elements) {
+            if (element != old) result.add(element);
+        }
+        return wrap(getName(), result).freeze();
+    }
+
+    @Override
+    public CompoundTag freeze() {
+        super.freeze();
+        return this;
+    }
+
+    @Override
+    void freezeChildren() {
+        // Lazily read elements are decoded into a plain list, as they share their input with the rest of the tree
+        if (elements instanceof LazyTagList) elements = new ArrayList<>(elements);
+        for (Tag element : elements) {
+            element.freeze();
+        }
+    }
+
+    @Override
+    public CompoundTag toMutable() {
+        List<Tag> result = new ArrayList<>(elements.size());
+        for (Tag element : elements) {
+            result.add(copyChild(element));
+        }
+        return wrap(getName(), result);
     }
 
     @Override
     public Iterator<Tag> iterator() {
-        return elements.iterator();
+        return elementsView.iterator();
+    }
+
+    /**
+     * Finds the first tag with the given name value
+     * @param name The name value
+     * @return The tag, or null if there is none
+     */
+    Tag find(String name) {
+        // Lazily read elements are matched on their raw name bytes, so that they do not have to be decoded
+        if (elements instanceof LazyTagList) {
+            int position = ((LazyTagList) elements).indexOfName(name);
+            return position < 0 ? null : elements.get(position);
+        }
+
+        Map<String, Tag> index = this.index;
+        if (index == null || indexedSize != elements.size()) {
+            if (elements.size() <= INDEX_THRESHOLD) {
+                // For small compounds, a linear scan is faster than building an index
+                for (Tag tag : elements) {
+                    if (Objects.equals(tag.getName(), name)) return tag;
+                }
+                return null;
+            }
+            index = buildIndex();
+        }
+        return index.get(name);
     }
 
     /**
-     * Converts the CompoundTag object to a byte array.
-     * It converts the elements of this tag to their byte arrays, appends them, and adds a 0x00 byte at the end
-     * @return The resulting byte array
+     * Builds the name index over the current elements
+     * @return The index
+     */
+    private Map<String, Tag> buildIndex() {
+        Map<String, Tag> index = new HashMap<>(elements.size() * 2);
+        boolean duplicates = false;
+        for (Tag tag : elements) {
+            duplicates |= index.putIfAbsent(tag.getName(), tag) != null;
+        }
+        duplicateNames = duplicates;
+        indexedSize = elements.size();
+        this.index = index;
+        return index;
+    }
+
+    /**
+     * Writes the CompoundTag object to the given output.
+     * It writes the elements of this tag one after another, and adds a 0x00 byte at the end
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        byte[] result = new byte[0];
+    protected void writeValue(NBTOutput output) throws IOException {
+        // Write all elements. Lazily read elements that were never accessed are copied as-is
+        if (elements instanceof LazyTagList) {
+            ((LazyTagList) elements).write(output);
+        } else {
+            for (Tag element : elements) {
+                element.write(output);
+            }
+        }
+
+        // Add a 0x00 byte
+        output.writeByte(0x00);
+    }
 
-        // Append all element bytes
+    @Override
+    protected int valueSize(NBTFormat format) {
+        CachedSize cached = cachedSize;
+        if (cached == null || cached.format != format || !cached.stamp.isCurrent(this)) {
+            cached = new CachedSize(format, new Stamp(this), computeValueSize(format));
+            cachedSize = cached;
+        }
+        return cached.size;
+    }
+
+    /**
+     * Computes the amount of bytes of the value of this tag, without using the cached size
+     * @param format The format
+     * @return The amount of bytes
+     */
+    private int computeValueSize(NBTFormat format) {
+        // All elements, and the end byte
+        if (elements instanceof LazyTagList) return ((LazyTagList) elements).serializedSize(format) + 1;
+        int size = 1;
         for (Tag element : elements) {
-            byte[] bytes = element.getBytes();
-            result = Arrays.copyOf(result, result.length + bytes.length);
-            System.arraycopy(bytes, 0, result, result.length - bytes.length, bytes.length);
+            size += element.serializedSize(format);
         }
+        return size;
+    }
 
-        // Add a 0x00 byte, and return
-        return ByteBuffer.allocate(result.length + 1).put(result).put((byte) 0x00).array();
+    @Override
+    List<? extends Tag> children() {
+        // Untouched lazy elements are written faster in one go
+        return elements instanceof LazyTagList ? null : elements;
     }
 
     @Override
@@ -96,12 +580,110 @@ public class CompoundTag extends Tag implements Iterable<Tag> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         CompoundTag that = (CompoundTag) o;
-        return elements.equals(that.elements) && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        if (elements.size() != that.elements.size() || !nameEquals(that)) return false;
+        // Tags with different hashes are never equal. Only hashes that are already known are compared
+        CachedHash hash = cachedHash;
+        CachedHash thatHash = that.cachedHash;
+        if (hash != null && thatHash != null && hash.hash != thatHash.hash
+                && hash.stamp.isCurrent(this) && thatHash.stamp.isCurrent(that)) return false;
+        return elements.equals(that.elements);
+    }
+
+    /**
+     * Checks whether this compound has the same name and elements as the given compound, regardless of the order of
+     * the elements. Nested compounds, also those in lists, are compared in the same way.
+     * Elements are looked up by name, so compounds with duplicate names (which is invalid NBT) are compared in order.
+     * @param that The other compound
+     * @return True if they are equal, false otherwise
+     */
+    public boolean equalsIgnoreOrder(CompoundTag that) {
+        if (this == that) return true;
+        if (that == null || elements.size() != that.elements.size() || !nameEquals(that)) return false;
+        if (hasDuplicateNames()) return equals(that);
+        // As the names are unique and the sizes are equal, every element of the other compound is matched exactly once
+        for (Tag element : elements) {
+            Tag other = that.find(element.getName());
+            if (other == null || !equalsIgnoreOrder(element, other)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the given tags are equal, regardless of the order of the elements of nested compounds
+     * @param tag The tag
+     * @param other The other tag
+     * @return True if they are equal, false otherwise
+     */
+    private static boolean equalsIgnoreOrder(Tag tag, Tag other) {
+        if (tag instanceof CompoundTag && other instanceof CompoundTag) {
+            return ((CompoundTag) tag).equalsIgnoreOrder((CompoundTag) other);
+        }
+        if (tag instanceof ListTag && other instanceof ListTag) {
+            ListTag<?> list = (ListTag<?>) tag;
+            ListTag<?> otherList = (ListTag<?>) other;
+            TagType type = list.getElementType();
+            // Lists of numbers and strings cannot contain compounds
+            if (type != TagType.TAG_COMPOUND && type != TagType.TAG_LIST) return list.equals(otherList);
+            if (type != otherList.getElementType() || list.size() != otherList.size()
+                    || !list.nameEquals(otherList)) {
+                return false;
+            }
+            Iterator<? extends Tag> iterator = list.iterator();
+            Iterator<? extends Tag> otherIterator = otherList.iterator();
+            while (iterator.hasNext()) {
+                if (!equalsIgnoreOrder(iterator.next(), otherIterator.next())) return false;
+            }
+            return true;
+        }
+        return tag.equals(other);
     }
 
+    /**
+     * Checks whether multiple elements have the same name
+     * @return True if they do, false otherwise
+     */
+    private boolean hasDuplicateNames() {
+        if (elements.size() <= INDEX_THRESHOLD) {
+            for (int i = 0; i < elements.size(); i++) {
+                for (int j = i + 1; j < elements.size(); j++) {
+                    if (Objects.equals(elements.get(i).getName(), elements.get(j).getName())) return true;
+                }
+            }
+            return false;
+        }
+        if (index == null || indexedSize != elements.size()) buildIndex();
+        return duplicateNames;
+    }
+
+    /**
+     * Computes the hash of this tag. The hash is cached until a tag in the tree of this tag is changed.
+     * Changes that are made directly to the array of an array tag are not detected.
+     * @return The hash
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(elements);
+        CachedHash cached = cachedHash;
+        if (cached == null || !cached.stamp.isCurrent(this)) {
+            cached = new CachedHash(new Stamp(this), computeHash());
+            cachedHash = cached;
+        }
+        return cached.hash;
+    }
+
+    @Override
+    void dropStaleCaches() {
+        CachedSize size = cachedSize;
+        if (size != null && !size.stamp.isCurrent(this)) cachedSize = null;
+        CachedHash hash = cachedHash;
+        if (hash != null && !hash.stamp.isCurrent(this)) cachedHash = null;
+    }
+
+    /**
+     * Computes the hash of this tag, without using the cached hash
+     * @return The hash
+     */
+    private int computeHash() {
+        return hashWithName(elements.hashCode());
     }
 
     /**
@@ -112,15 +694,72 @@ public class CompoundTag extends Tag implements Iterable<Tag> {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a CompoundTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
         List<Tag> result = new ArrayList<>();
         // Read and add tags, until we reach an end byte
         Tag nextTag;
         do {
-            nextTag = Tag.read(stream);
+            nextTag = Tag.read(input);
             if (nextTag != null) {
                 result.add(nextTag);
             }
         } while (nextTag != null);
-        return new CompoundTag(name, result);
+        return wrap(name, result);
+    }
+
+    /**
+     * View on the elements list, that drops the name index and cached sizes whenever the list is changed through it
+     */
+    private class ElementsView extends AbstractList<Tag> {
+
+        @Override
+        public Tag get(int index) {
+            return elements.get(index);
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public Tag set(int index, Tag element) {
+            checkMutable();
+            CompoundTag.this.index = null;
+            Tag previous = elements.set(index, element);
+            element.join(CompoundTag.this);
+            changed();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Tag element) {
+            checkMutable();
+            CompoundTag.this.index = null;
+            elements.add(index, element);
+            element.join(CompoundTag.this);
+            changed();
+            modCount++;
+        }
+
+        @Override
+        public Tag remove(int index) {
+            checkMutable();
+            CompoundTag.this.index = null;
+            Tag previous = elements.remove(index);
+            changed();
+            modCount++;
+            return previous;
+        }
     }
 }
@@ -1,12 +1,12 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Objects;
 
 /**
  * Class for representing a Double NBT Tag
@@ -26,17 +26,30 @@ public class DoubleTag extends Tag {
     }
 
     public void setValue(double value) {
+        checkMutable();
         this.value = value;
+        changed();
     }
 
     /**
-     * Converts the DoubleTag to a byte array.
+     * Writes the DoubleTag to the given output.
      * 8 bytes are used, for the double that is represented.
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putDouble(value).array();
+    protected void writeValue(NBTOutput output) throws IOException {
+        output.writeDouble(value);
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        return 8;
+    }
+
+    @Override
+    public DoubleTag toMutable() {
+        return new DoubleTag(getName(), value);
     }
 
     @Override
@@ -49,12 +62,12 @@ public class DoubleTag extends Tag {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         DoubleTag that = (DoubleTag) o;
-        return Double.compare(that.value, value) == 0 && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        return Double.compare(that.value, value) == 0 && nameEquals(that);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return hashWithName(Double.hashCode(value));
     }
 
     /**
@@ -65,13 +78,17 @@ public class DoubleTag extends Tag {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
-        // Read the input stream bytes into a byte array
-        byte[] buffer = new byte[8];
-        for (int i = 0; i < 8; i++) {
-            buffer[i] = (byte) stream.read();
-        }
-        // Convert the byte array to a double
-        double result = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getDouble();
-        return new DoubleTag(name, result);
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a DoubleTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
+        return new DoubleTag(name, input.readDouble());
     }
 }
@@ -1,12 +1,12 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Objects;
 
 /**
  * Class for representing a Float NBT Tag
@@ -26,17 +26,30 @@ public class FloatTag extends Tag {
     }
 
     public void setValue(float value) {
+        checkMutable();
         this.value = value;
+        changed();
     }
 
     /**
-     * Converts the FloatTag to a byte array.
+     * Writes the FloatTag to the given output.
      * 4 bytes are used, for the float that is represented.
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value).array();
+    protected void writeValue(NBTOutput output) throws IOException {
+        output.writeFloat(value);
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        return 4;
+    }
+
+    @Override
+    public FloatTag toMutable() {
+        return new FloatTag(getName(), value);
     }
 
     @Override
@@ -49,12 +62,12 @@ public class FloatTag extends Tag {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         FloatTag that = (FloatTag) o;
-        return Float.compare(that.value, value) == 0 && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        return Float.compare(that.value, value) == 0 && nameEquals(that);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return hashWithName(Float.hashCode(value));
     }
 
     /**
@@ -65,13 +78,17 @@ public class FloatTag extends Tag {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
-        // Read the input stream bytes into a byte array
-        byte[] buffer = new byte[4];
-        for (int i = 0; i < 4; i++) {
-            buffer[i] = (byte) stream.read();
-        }
-        // Convert the byte array to a float
-        float result = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-        return new FloatTag(name, result);
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a FloatTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
+        return new FloatTag(name, input.readFloat());
     }
 }
@@ -1,11 +1,12 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -21,33 +22,53 @@ public class IntArrayTag extends Tag {
         this.values = values == null ? new int[]{} : values;
     }
 
+    /**
+     * Retrieves the values of this tag. For a frozen tag, this is a copy
+     * @return The values
+     */
     public int[] getValues() {
-        return values;
+        return isFrozen() ? values.clone() : values;
     }
 
     public void setValues(int[] values) {
+        checkMutable();
         this.values = values;
+        changed();
     }
 
     public void setValue(int i, int value) {
+        checkMutable();
         values[i] = value;
+        changed();
     }
 
     /**
-     * Converts the IntArrayTag object to a byte array.
+     * Writes the IntArrayTag object to the given output.
      * 4 bytes for the length of the array, followed by the integers (4 bytes each)
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        ByteBuffer valuesBuffer = ByteBuffer.allocate(4 + 4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
-        // Set the length of the array
-        valuesBuffer.putInt(values.length);
-        // Add the integer values
+    protected void writeValue(NBTOutput output) throws IOException {
+        // Write the length of the array
+        output.writeInt(values.length);
+        // Write the integer values
+        output.writeInts(values, 0, values.length);
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        int size = format.intSize(values.length);
+        if (!format.isVarInt()) return size + 4 * values.length;
         for (int value : values) {
-            valuesBuffer.putInt(value);
+            size += format.intSize(value);
         }
-        return valuesBuffer.array();
+        return size;
+    }
+
+    @Override
+    public IntArrayTag toMutable() {
+        return new IntArrayTag(getName(), values.clone());
     }
 
     @Override
@@ -60,12 +81,12 @@ public class IntArrayTag extends Tag {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         IntArrayTag that = (IntArrayTag) o;
-        return Arrays.equals(values, that.values) && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        return Arrays.equals(values, that.values) && nameEquals(that);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(values);
+        return hashWithName(Arrays.hashCode(values));
     }
 
     /**
@@ -76,15 +97,22 @@ public class IntArrayTag extends Tag {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
-        // Read the length of the byte array
-        byte[] arrayLength = new byte[]{(byte) stream.read(), (byte) stream.read(), (byte) stream.read(), (byte) stream.read()};
-        int length = ByteBuffer.wrap(arrayLength).order(ByteOrder.LITTLE_ENDIAN).getInt();
-        // Create and fill a byte array
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a IntArrayTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
+        // Read the length of the integer array
+        int length = input.readInt();
+        // Create and fill an integer array
         int[] array = new int[length];
-        for (int i = 0; i < length; i++) {
-            byte[] buffer = new byte[]{(byte) stream.read(), (byte) stream.read(), (byte) stream.read(), (byte) stream.read()};
-            array[i] = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getInt();
-        }
+        input.readInts(array, 0, length);
         return new IntArrayTag(name, array);
     }
 }
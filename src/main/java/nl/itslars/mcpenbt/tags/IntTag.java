@@ -1,12 +1,12 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Objects;
 
 /**
  * Class for representing a Int NBT Tag
@@ -26,17 +26,30 @@ public class IntTag extends Tag {
     }
 
     public void setValue(int value) {
+        checkMutable();
         this.value = value;
+        changed();
     }
 
     /**
-     * Converts the IntTag to a byte array.
+     * Writes the IntTag to the given output.
      * 4 bytes are used, for the int that is represented.
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    protected void writeValue(NBTOutput output) throws IOException {
+        output.writeInt(value);
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        return format.intSize(value);
+    }
+
+    @Override
+    public IntTag toMutable() {
+        return new IntTag(getName(), value);
     }
 
     @Override
@@ -49,12 +62,12 @@ public class IntTag extends Tag {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         IntTag that = (IntTag) o;
-        return value == that.value && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        return value == that.value && nameEquals(that);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return hashWithName(Integer.hashCode(value));
     }
 
     /**
@@ -65,13 +78,17 @@ public class IntTag extends Tag {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
-        // Read the input stream bytes into a byte array
-        byte[] buffer = new byte[4];
-        for (int i = 0; i < 4; i++) {
-            buffer[i] = (byte) stream.read();
-        }
-        // Convert the byte array to an int
-        int result = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getInt();
-        return new IntTag(name, result);
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a IntTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
+        return new IntTag(name, input.readInt());
     }
 }
@@ -0,0 +1,291 @@
+package nl.itslars.mcpenbt.tags;
+
+import nl.itslars.mcpenbt.enums.NBTFormat;
+import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
+import nl.itslars.mcpenbt.io.StringCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * List of the children of a lazily read compound or list tag.
+ * On creation, only the byte ranges of the children in the source buffer are recorded. A child is decoded the first
+ * time it is retrieved. Children that were never retrieved (and thus cannot have been changed) are written by
+ * copying their original bytes.
+ */
+class LazyTagList extends AbstractList<Tag> implements RandomAccess {
+
+    // The input that children are decoded from. It is shared by all lazy lists of the same tree
+    private final NBTInput input;
+    // The type of the elements if this is the list of a ListTag, or null if this is the list of a CompoundTag.
+    // In the latter case, the byte range of each child includes the type ID and the name.
+    private final TagType elementType;
+    // The compound or list that these are the children of, whose tree decoded children join
+    private Tag owner;
+
+    // The start and end position of every child in the source, where a start of -1 means the child was decoded
+    private int[] starts;
+    private int[] ends;
+    // The decoded children
+    private Tag[] tags;
+    private int size;
+
+    private LazyTagList(NBTInput input, TagType elementType, int capacity) {
+        this.input = input;
+        this.elementType = elementType;
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.tags = new Tag[capacity];
+    }
+
+    /**
+     * Lazily converts the given input to a Tag. Compound and list tags are returned with a LazyTagList,
+     * all other tags are decoded immediately.
+     * @param input The input, which must have a source buffer
+     * @param nextId The expected type of the next tag. If set to -1, this indicates that the next ID has to be read
+     * @return The resulting Tag, or null if the end of a compound was reached
+     * @throws IOException When the input throws an error
+     */
+    static Tag read(NBTInput input, int nextId) throws IOException {
+        String name = null;
+        if (nextId == -1) {
+            nextId = input.readByte();
+            if (nextId == 0) return null;
+            name = input.readName();
+        }
+
+        if (nextId == TagType.TAG_COMPOUND.getId()) {
+            return CompoundTag.wrap(name, scanCompound(input));
+        } else if (nextId == TagType.TAG_LIST.getId()) {
+            int typePosition = input.getPosition();
+            TagType type = TagType.fromId(input.readByte());
+            // Numeric lists are decoded in bulk into a primitive array, which is cheaper than scanning them
+            if (!ListTag.isNumeric(type)) {
+                return ListTag.wrap(name, type, scanList(input, type));
+            }
+            input.setPosition(typePosition);
+        }
+        return Tag.readValue(name, nextId, input);
+    }
+
+    /**
+     * Records the byte ranges of the children of a compound tag, and moves the input to the end of the compound
+     * @param input The input
+     * @return The lazy list of children
+     * @throws IOException When the input throws an error
+     */
+    private static LazyTagList scanCompound(NBTInput input) throws IOException {
+        LazyTagList result = new LazyTagList(input, null, 8);
+        int start = input.getPosition();
+        int nextId;
+        while ((nextId = input.readByte()) != 0) {
+            input.skip(input.readStringLength());
+            input.skipValue(nextId);
+            result.append(start, input.getPosition());
+            start = input.getPosition();
+        }
+        return result;
+    }
+
+    /**
+     * Records the byte ranges of the elements of a list tag, and moves the input to the end of the list
+     * @param input The input, positioned at the list length
+     * @param type The element type
+     * @return The lazy list of elements
+     * @throws IOException When the input throws an error
+     */
+    private static LazyTagList scanList(NBTInput input, TagType type) throws IOException {
+        int length = input.readInt();
+        LazyTagList result = new LazyTagList(input, type, length);
+        int start = input.getPosition();
+        for (int i = 0; i < length; i++) {
+            input.skipValue(type.getId());
+            result.append(start, input.getPosition());
+            start = input.getPosition();
+        }
+        return result;
+    }
+
+    /**
+     * Writes all children to the given output. Children that were never decoded are copied from the source,
+     * if the output has the same format as the source.
+     * @param output The output
+     * @throws IOException If the output threw an exception
+     */
+    void write(NBTOutput output) throws IOException {
+        boolean copy = output.getFormat() == input.getFormat();
+        for (int i = 0; i < size; i++) {
+            if (!copy) {
+                get(i).write(output);
+            } else if (starts[i] >= 0) {
+                output.writeBytes(input.getSource(), starts[i], ends[i] - starts[i]);
+            } else {
+                tags[i].write(output);
+            }
+        }
+    }
+
+    /**
+     * Computes the amount of bytes of all children in the given format. Children that were never decoded are measured
+     * by their byte range in the source, if the format is the same as the source.
+     * @param format The format
+     * @return The amount of bytes
+     */
+    int serializedSize(NBTFormat format) {
+        boolean copy = format == input.getFormat();
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += copy && starts[i] >= 0 ? ends[i] - starts[i] : get(i).serializedSize(format);
+        }
+        return total;
+    }
+
+    /**
+     * Finds the position of the first child with the given name, in the list of a compound tag.
+     * Children that were not decoded yet are matched on the raw bytes of their name.
+     * @param name The name
+     * @return The position, or -1 if there is no such child
+     */
+    int indexOfName(String name) {
+        ByteBuffer source = input.getSource();
+        byte[] nameBytes = null;
+        for (int i = 0; i < size; i++) {
+            if (starts[i] < 0) {
+                if (Objects.equals(tags[i].getName(), name)) return i;
+                continue;
+            }
+            if (name == null) continue;
+            if (nameBytes == null) nameBytes = StringCodec.encode(name, input.getFormat().isModifiedUtf8());
+
+            // The name length is located directly behind the type ID, followed by the name itself
+            int nameStart = starts[i] + 1;
+            int nameLength;
+            if (input.getFormat().isVarInt()) {
+                nameLength = 0;
+                byte b;
+                int shift = 0;
+                do {
+                    b = source.get(nameStart++);
+                    nameLength |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+            } else {
+                nameLength = source.getShort(nameStart) & 0xFFFF;
+                nameStart += 2;
+            }
+            if (nameLength != nameBytes.length) continue;
+            int j = 0;
+            while (j < nameBytes.length && source.get(nameStart + j) == nameBytes[j]) j++;
+            if (j == nameBytes.length) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the compound or list that these are the children of
+     * @param owner The owner
+     */
+    void setOwner(Tag owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public Tag get(int index) {
+        checkIndex(index, size);
+        if (starts[index] >= 0) {
+            try {
+                input.setPosition(starts[index]);
+                tags[index] = read(input, elementType == null ? -1 : elementType.getId());
+            } catch (IOException e) {
+                // Cannot happen, the source is kept in memory
+                throw new UncheckedIOException(e);
+            }
+            // From now on, the tag may be changed, so it has to be written from the decoded object
+            starts[index] = -1;
+            if (owner != null) tags[index].join(owner);
+        }
+        return tags[index];
+    }
+
+    @Override
+    public Tag set(int index, Tag tag) {
+        Tag previous = get(index);
+        tags[index] = tag;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Tag tag) {
+        checkIndex(index, size + 1);
+        grow();
+        System.arraycopy(starts, index, starts, index + 1, size - index);
+        System.arraycopy(ends, index, ends, index + 1, size - index);
+        System.arraycopy(tags, index, tags, index + 1, size - index);
+        starts[index] = -1;
+        tags[index] = tag;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Tag remove(int index) {
+        Tag previous = get(index);
+        removeUndecoded(index);
+        return previous;
+    }
+
+    /**
+     * Removes the child at the given index, without decoding it
+     * @param index The index
+     */
+    void removeUndecoded(int index) {
+        checkIndex(index, size);
+        System.arraycopy(starts, index + 1, starts, index, size - index - 1);
+        System.arraycopy(ends, index + 1, ends, index, size - index - 1);
+        System.arraycopy(tags, index + 1, tags, index, size - index - 1);
+        tags[--size] = null;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an undecoded child with the given byte range to the back of the list
+     * @param start The start position of the child in the source
+     * @param end The end position of the child in the source
+     */
+    private void append(int start, int end) {
+        grow();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * Makes sure that there is room for at least one more child
+     */
+    private void grow() {
+        if (size == starts.length) {
+            int capacity = Math.max(8, size * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+        }
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
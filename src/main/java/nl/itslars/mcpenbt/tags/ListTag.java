@@ -1,11 +1,12 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.*;
 
 /**
@@ -17,41 +18,432 @@ public class ListTag<T extends Tag> extends Tag implements Iterable<T> {
 
     // The tag type that is in this list
     private TagType elementType;
-    // The list of elements that this list represents
+    // The list of elements that this list represents. Null while the list is backed by primitive values
     private List<T> elements;
+    // For lists of numeric tags that were read, or created through one of the ofX methods, the element values are
+    // stored in a primitive array (byte[], short[], int[], long[], float[] or double[]) instead of in tag objects.
+    // Null if the elements list is used
+    private Object values;
+    // The size of the value in the format it was last computed for, or null if it was not computed yet
+    private CachedSize cachedSize;
+    // The hash of this tag, or null if it was not computed yet
+    private CachedHash cachedHash;
+    // A view on the elements list, which drops the cached size and hash when it is changed from the outside
+    private final List<T> elementsView = new ElementsView();
 
+    /**
+     * Creates a new ListTag. The given list is copied, so changing it afterwards does not change this tag.
+     * @param name The name of the tag
+     * @param elementType The type of the elements
+     * @param elements The elements
+     */
     public ListTag(String name, TagType elementType, List<T> elements) {
+        this(name, elementType);
+        this.elements = new ArrayList<>(elements);
+        joinChildren(this.elements);
+    }
+
+    private ListTag(String name, TagType elementType) {
         super(name);
         this.elementType = elementType;
-        this.elements = elements;
     }
 
+    /**
+     * Creates a new ListTag that uses the given list directly, which no one else may hold on to
+     * @param name The name of the tag
+     * @param elementType The type of the elements
+     * @param elements The elements
+     * @param <T> The Tag type that is in the list
+     * @return The resulting tag
+     */
+    static <T extends Tag> ListTag<T> wrap(String name, TagType elementType, List<T> elements) {
+        ListTag<T> result = new ListTag<>(name, elementType);
+        result.elements = elements;
+        result.joinChildren(elements);
+        return result;
+    }
+
+    /**
+     * Creates a list of ByteTags, backed by the given array
+     * @param name The name of the tag
+     * @param values The values
+     * @return The resulting tag
+     */
+    public static ListTag<ByteTag> ofBytes(String name, byte... values) {
+        return withValues(name, TagType.TAG_BYTE, values);
+    }
+
+    /**
+     * Creates a list of ShortTags, backed by the given array
+     * @param name The name of the tag
+     * @param values The values
+     * @return The resulting tag
+     */
+    public static ListTag<ShortTag> ofShorts(String name, short... values) {
+        return withValues(name, TagType.TAG_SHORT, values);
+    }
+
+    /**
+     * Creates a list of IntTags, backed by the given array
+     * @param name The name of the tag
+     * @param values The values
+     * @return The resulting tag
+     */
+    public static ListTag<IntTag> ofInts(String name, int... values) {
+        return withValues(name, TagType.TAG_INT, values);
+    }
+
+    /**
+     * Creates a list of LongTags, backed by the given array
+     * @param name The name of the tag
+     * @param values The values
+     * @return The resulting tag
+     */
+    public static ListTag<LongTag> ofLongs(String name, long... values) {
+        return withValues(name, TagType.TAG_LONG, values);
+    }
+
+    /**
+     * Creates a list of FloatTags, backed by the given array
+     * @param name The name of the tag
+     * @param values The values
+     * @return The resulting tag
+     */
+    public static ListTag<FloatTag> ofFloats(String name, float... values) {
+        return withValues(name, TagType.TAG_FLOAT, values);
+    }
+
+    /**
+     * Creates a list of DoubleTags, backed by the given array
+     * @param name The name of the tag
+     * @param values The values
+     * @return The resulting tag
+     */
+    public static ListTag<DoubleTag> ofDoubles(String name, double... values) {
+        return withValues(name, TagType.TAG_DOUBLE, values);
+    }
+
+    public TagType getElementType() {
+        return elementType;
+    }
+
+    /**
+     * Retrieves the elements of this list as tags.
+     * If the list is backed by primitive values, these are converted to tags first, and from then on the returned list
+     * backs this list. Changes to the returned list drop the cached size and hash.
+     * For a frozen list, the returned list cannot be changed.
+     * @return The elements
+     */
+    @SuppressWarnings("unchecked")
     public List<T> getElements() {
-        return elements;
+        if (isFrozen()) return Collections.unmodifiableList((List<T>) asTags());
+        inflate();
+        return elementsView;
+    }
+
+    /**
+     * Retrieves the amount of elements in this list
+     * @return The size
+     */
+    public int size() {
+        return values == null ? elements.size() : valuesLength();
+    }
+
+    /**
+     * Retrieves the value of the ByteTag at the given index, without creating a tag for primitive-backed lists
+     * @param index The index
+     * @return The value
+     */
+    public byte getByte(int index) {
+        checkElementType(TagType.TAG_BYTE);
+        return values == null ? ((ByteTag) elements.get(index)).getValue() : ((byte[]) values)[index];
+    }
+
+    /**
+     * Sets the value of the ByteTag at the given index
+     * @param index The index
+     * @param value The value
+     */
+    public void setByte(int index, byte value) {
+        checkElementType(TagType.TAG_BYTE);
+        checkMutable();
+        if (values == null) {
+            ((ByteTag) elements.get(index)).setValue(value);
+        } else {
+            ((byte[]) values)[index] = value;
+            changed();
+        }
+    }
+
+    /**
+     * Retrieves the value of the ShortTag at the given index, without creating a tag for primitive-backed lists
+     * @param index The index
+     * @return The value
+     */
+    public short getShort(int index) {
+        checkElementType(TagType.TAG_SHORT);
+        return values == null ? ((ShortTag) elements.get(index)).getValue() : ((short[]) values)[index];
     }
 
+    /**
+     * Sets the value of the ShortTag at the given index
+     * @param index The index
+     * @param value The value
+     */
+    public void setShort(int index, short value) {
+        checkElementType(TagType.TAG_SHORT);
+        checkMutable();
+        if (values == null) {
+            ((ShortTag) elements.get(index)).setValue(value);
+        } else {
+            ((short[]) values)[index] = value;
+            changed();
+        }
+    }
+
+    /**
+     * Retrieves the value of the IntTag at the given index, without creating a tag for primitive-backed lists
+     * @param index The index
+     * @return The value
+     */
+    public int getInt(int index) {
+        checkElementType(TagType.TAG_INT);
+        return values == null ? ((IntTag) elements.get(index)).getValue() : ((int[]) values)[index];
+    }
+
+    /**
+     * Sets the value of the IntTag at the given index
+     * @param index The index
+     * @param value The value
+     */
+    public void setInt(int index, int value) {
+        checkElementType(TagType.TAG_INT);
+        checkMutable();
+        if (values == null) {
+            ((IntTag) elements.get(index)).setValue(value);
+        } else {
+            ((int[]) values)[index] = value;
+            changed();
+        }
+    }
+
+    /**
+     * Retrieves the value of the LongTag at the given index, without creating a tag for primitive-backed lists
+     * @param index The index
+     * @return The value
+     */
+    public long getLong(int index) {
+        checkElementType(TagType.TAG_LONG);
+        return values == null ? ((LongTag) elements.get(index)).getValue() : ((long[]) values)[index];
+    }
+
+    /**
+     * Sets the value of the LongTag at the given index
+     * @param index The index
+     * @param value The value
+     */
+    public void setLong(int index, long value) {
+        checkElementType(TagType.TAG_LONG);
+        checkMutable();
+        if (values == null) {
+            ((LongTag) elements.get(index)).setValue(value);
+        } else {
+            ((long[]) values)[index] = value;
+            changed();
+        }
+    }
+
+    /**
+     * Retrieves the value of the FloatTag at the given index, without creating a tag for primitive-backed lists
+     * @param index The index
+     * @return The value
+     */
+    public float getFloat(int index) {
+        checkElementType(TagType.TAG_FLOAT);
+        return values == null ? ((FloatTag) elements.get(index)).getValue() : ((float[]) values)[index];
+    }
+
+    /**
+     * Sets the value of the FloatTag at the given index
+     * @param index The index
+     * @param value The value
+     */
+    public void setFloat(int index, float value) {
+        checkElementType(TagType.TAG_FLOAT);
+        checkMutable();
+        if (values == null) {
+            ((FloatTag) elements.get(index)).setValue(value);
+        } else {
+            ((float[]) values)[index] = value;
+            changed();
+        }
+    }
+
+    /**
+     * Retrieves the value of the DoubleTag at the given index, without creating a tag for primitive-backed lists
+     * @param index The index
+     * @return The value
+     */
+    public double getDouble(int index) {
+        checkElementType(TagType.TAG_DOUBLE);
+        return values == null ? ((DoubleTag) elements.get(index)).getValue() : ((double[]) values)[index];
+    }
+
+    /**
+     * Sets the value of the DoubleTag at the given index
+     * @param index The index
+     * @param value The value
+     */
+    public void setDouble(int index, double value) {
+        checkElementType(TagType.TAG_DOUBLE);
+        checkMutable();
+        if (values == null) {
+            ((DoubleTag) elements.get(index)).setValue(value);
+        } else {
+            ((double[]) values)[index] = value;
+            changed();
+        }
+    }
+
+    /**
+     * Iterates over the elements of this list. Changes to the tags write through to this list.
+     * A list that is backed by primitive values is converted to tags first, like {@link #getElements()} does. To read
+     * such a list without converting it, use the getX methods.
+     * @return The iterator
+     */
     @Override
     public Iterator<T> iterator() {
-        return elements.iterator();
+        return getElements().iterator();
     }
 
     /**
-     * Converts the ListTag object to a byte array.
+     * Writes the ListTag object to the given output.
      * 1 byte for the type of tag, 4 bytes for the list length, and additionally all list elements
      *
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        // Create the type and length buffer
-        byte[] list = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN).put(elementType.getId()).putInt(elements.size()).array();
-        // Add all elements to the buffer
+    protected void writeValue(NBTOutput output) throws IOException {
+        // Write the type and length
+        output.writeByte(elementType.getId());
+        output.writeInt(size());
+        if (values != null) {
+            writeValues(output);
+            return;
+        }
+        // Write all elements. Lazily read elements that were never accessed are copied as-is
+        if (elements instanceof LazyTagList) {
+            ((LazyTagList) elements).write(output);
+        } else {
+            for (T t : elements) {
+                t.write(output);
+            }
+        }
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        CachedSize cached = cachedSize;
+        if (cached == null || cached.format != format || !cached.stamp.isCurrent(this)) {
+            cached = new CachedSize(format, new Stamp(this), computeValueSize(format));
+            cachedSize = cached;
+        }
+        return cached.size;
+    }
+
+    /**
+     * Computes the amount of bytes of the value of this tag, without using the cached size
+     * @param format The format
+     * @return The amount of bytes
+     */
+    private int computeValueSize(NBTFormat format) {
+        int size = 1 + format.intSize(size());
+        if (values != null) return size + valuesSize(format);
+        if (elements instanceof LazyTagList) return size + ((LazyTagList) elements).serializedSize(format);
         for (T t : elements) {
-            byte[] bytes = t.getBytes();
-            list = Arrays.copyOf(list, list.length + bytes.length);
-            System.arraycopy(bytes, 0, list, list.length - bytes.length, bytes.length);
+            size += t.serializedSize(format);
+        }
+        return size;
+    }
+
+    @Override
+    List<? extends Tag> children() {
+        // Primitive values and untouched lazy elements are written faster in one go
+        return values != null || elements instanceof LazyTagList ? null : elements;
+    }
+
+    /**
+     * Creates a frozen copy of this frozen list, in which the element at the given index is replaced by the given tag.
+     * All other elements are shared with this list, not copied. The given tag is frozen as well.
+     * @param index The index
+     * @param element The new element
+     * @return The copy
+     * @throws IllegalStateException If this list is not frozen
+     */
+    public ListTag<T> with(int index, T element) {
+        checkFrozen();
+        checkElementType(element.getType());
+        if (values != null) {
+            if (index < 0 || index >= valuesLength()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + valuesLength());
+            }
+            ListTag<T> result = withValues(getName(), elementType, copyValues(valuesLength()));
+            result.setValueFrom(index, element);
+            return result.freeze();
+        }
+        List<T> result = new ArrayList<>(elements);
+        result.set(index, element);
+        element.freeze();
+        return wrap(getName(), elementType, result).freeze();
+    }
+
+    /**
+     * Creates a frozen copy of this frozen list, with the given tag added to the back.
+     * All other elements are shared with this list, not copied. The given tag is frozen as well.
+     * @param element The new element
+     * @return The copy
+     * @throws IllegalStateException If this list is not frozen
+     */
+    public ListTag<T> withAdded(T element) {
+        checkFrozen();
+        checkElementType(element.getType());
+        if (values != null) {
+            ListTag<T> result = withValues(getName(), elementType, copyValues(valuesLength() + 1));
+            result.setValueFrom(valuesLength(), element);
+            return result.freeze();
+        }
+        List<T> result = new ArrayList<>(elements.size() + 1);
+        result.addAll(elements);
+        result.add(element);
+        element.freeze();
+        return wrap(getName(), elementType, result).freeze();
+    }
+
+    @Override
+    public ListTag<T> freeze() {
+        super.freeze();
+        return this;
+    }
+
+    @Override
+    void freezeChildren() {
+        if (values != null) return;
+        // Lazily read elements are decoded into a plain list, as they share their input with the rest of the tree
+        if (elements instanceof LazyTagList) elements = new ArrayList<>(elements);
+        for (T element : elements) {
+            element.freeze();
+        }
+    }
+
+    @Override
+    public ListTag<T> toMutable() {
+        if (values != null) return withValues(getName(), elementType, copyValues(valuesLength()));
+        List<T> result = new ArrayList<>(elements.size());
+        for (T element : elements) {
+            result.add(copyChild(element));
         }
-        return list;
+        return wrap(getName(), elementType, result);
     }
 
     @Override
@@ -64,37 +456,428 @@ public class ListTag<T extends Tag> extends Tag implements Iterable<T> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ListTag<?> that = (ListTag<?>) o;
-        return elementType == that.elementType &&
-                elements.equals(that.elements) && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        if (elementType != that.elementType || size() != that.size() || !nameEquals(that)) return false;
+        // Tags with different hashes are never equal. Only hashes that are already known are compared
+        CachedHash hash = cachedHash;
+        CachedHash thatHash = that.cachedHash;
+        if (hash != null && thatHash != null && hash.hash != thatHash.hash
+                && hash.stamp.isCurrent(this) && thatHash.stamp.isCurrent(that)) return false;
+        return elementsEqual(that);
     }
 
+    /**
+     * Computes the hash of this tag. The hash is cached until a tag in the tree of this tag is changed.
+     * Changes that are made directly to the array of an array tag are not detected.
+     * @return The hash
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(elementType, elements);
+        CachedHash cached = cachedHash;
+        if (cached == null || !cached.stamp.isCurrent(this)) {
+            cached = new CachedHash(new Stamp(this), computeHash());
+            cachedHash = cached;
+        }
+        return cached.hash;
+    }
+
+    @Override
+    void dropStaleCaches() {
+        CachedSize size = cachedSize;
+        if (size != null && !size.stamp.isCurrent(this)) cachedSize = null;
+        CachedHash hash = cachedHash;
+        if (hash != null && !hash.stamp.isCurrent(this)) cachedHash = null;
+    }
+
+    /**
+     * Computes the hash of this tag, without using the cached hash
+     * @return The hash
+     */
+    private int computeHash() {
+        return hashWithName(31 * elementType.getId() + elementsHash());
+    }
+
+    /**
+     * Computes the hash of the elements, like {@link List#hashCode()}. Primitive values are hashed like the tags they
+     * represent, without creating those tags.
+     * @return The hash
+     */
+    private int elementsHash() {
+        if (values == null) {
+            int hash = 1;
+            for (T element : elements) {
+                hash = 31 * hash + element.hashCode();
+            }
+            return hash;
+        }
+        switch (elementType) {
+            case TAG_BYTE:
+                return Arrays.hashCode((byte[]) values);
+            case TAG_SHORT:
+                return Arrays.hashCode((short[]) values);
+            case TAG_INT:
+                return Arrays.hashCode((int[]) values);
+            case TAG_LONG:
+                return Arrays.hashCode((long[]) values);
+            case TAG_FLOAT:
+                return Arrays.hashCode((float[]) values);
+            default:
+                return Arrays.hashCode((double[]) values);
+        }
     }
 
     /**
      * Converts the given input stream to a ListTag
-     *
-     * @param name   The name that this tag should get
+     * @param name The name that this tag should get
      * @param stream The input stream
      * @return The resulting tag
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a ListTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
         // Read the Tag Type of this list
-        int nextId = stream.read();
-        TagType type = TagType.fromId((byte) nextId);
+        TagType type = TagType.fromId(input.readByte());
 
         // read the list length
-        byte[] arrayLength = new byte[]{(byte) stream.read(), (byte) stream.read(), (byte) stream.read(), (byte) stream.read()};
-        int length = ByteBuffer.wrap(arrayLength).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        int length = input.readInt();
+        // Lists of numeric tags are decoded into a primitive array in one go
+        if (isNumeric(type)) {
+            return withValues(name, type, readValues(type, length, input));
+        }
         // Create and fill the actual ArrayList
         List<Tag> result = new ArrayList<>();
         for (int i = 0; i < length; i++) {
-            result.add(Tag.read(stream, type.getId()));
+            result.add(Tag.read(input, type.getId()));
+        }
+
+        return wrap(name, type, result);
+    }
+
+    /**
+     * Checks whether lists of the given element type are backed by primitive values when they are read
+     * @param type The element type
+     * @return True if the type is a numeric type, false otherwise
+     */
+    static boolean isNumeric(TagType type) {
+        return type != TagType.TAG_END && type.getSize() > 0;
+    }
+
+    /**
+     * Creates a list that is backed by the given primitive array
+     * @param name The name of the tag
+     * @param type The element type, which should match the array type
+     * @param values The primitive array
+     * @param <T> The Tag type that is in the list
+     * @return The resulting tag
+     */
+    private static <T extends Tag> ListTag<T> withValues(String name, TagType type, Object values) {
+        ListTag<T> result = new ListTag<>(name, type);
+        result.values = values;
+        return result;
+    }
+
+    /**
+     * Reads the given amount of numeric values into a new primitive array
+     * @param type The element type
+     * @param length The amount of values
+     * @param input The input
+     * @return The primitive array
+     * @throws IOException If the input threw an exception
+     */
+    private static Object readValues(TagType type, int length, NBTInput input) throws IOException {
+        switch (type) {
+            case TAG_BYTE:
+                byte[] bytes = new byte[length];
+                input.readBytes(bytes, 0, length);
+                return bytes;
+            case TAG_SHORT:
+                short[] shorts = new short[length];
+                input.readShorts(shorts, 0, length);
+                return shorts;
+            case TAG_INT:
+                int[] ints = new int[length];
+                input.readInts(ints, 0, length);
+                return ints;
+            case TAG_LONG:
+                long[] longs = new long[length];
+                input.readLongs(longs, 0, length);
+                return longs;
+            case TAG_FLOAT:
+                float[] floats = new float[length];
+                input.readFloats(floats, 0, length);
+                return floats;
+            case TAG_DOUBLE:
+                double[] doubles = new double[length];
+                input.readDoubles(doubles, 0, length);
+                return doubles;
+            default:
+                throw new IllegalArgumentException("Not a numeric type: " + type);
+        }
+    }
+
+    /**
+     * Writes the primitive values of this list to the given output
+     * @param output The output
+     * @throws IOException If the output threw an exception
+     */
+    private void writeValues(NBTOutput output) throws IOException {
+        int length = valuesLength();
+        switch (elementType) {
+            case TAG_BYTE:
+                output.writeBytes((byte[]) values, 0, length);
+                break;
+            case TAG_SHORT:
+                output.writeShorts((short[]) values, 0, length);
+                break;
+            case TAG_INT:
+                output.writeInts((int[]) values, 0, length);
+                break;
+            case TAG_LONG:
+                output.writeLongs((long[]) values, 0, length);
+                break;
+            case TAG_FLOAT:
+                output.writeFloats((float[]) values, 0, length);
+                break;
+            case TAG_DOUBLE:
+                output.writeDoubles((double[]) values, 0, length);
+                break;
+        }
+    }
+
+    /**
+     * Computes the amount of bytes of the primitive values of this list in the given format
+     * @param format The format
+     * @return The amount of bytes
+     */
+    private int valuesSize(NBTFormat format) {
+        int length = valuesLength();
+        if (!format.isVarInt() || elementType == TagType.TAG_BYTE || elementType == TagType.TAG_SHORT
+                || elementType == TagType.TAG_FLOAT || elementType == TagType.TAG_DOUBLE) {
+            return length * elementType.getSize();
+        }
+        int size = 0;
+        if (elementType == TagType.TAG_INT) {
+            for (int value : (int[]) values) {
+                size += format.intSize(value);
+            }
+        } else {
+            for (long value : (long[]) values) {
+                size += format.longSize(value);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copies the primitive array that backs this list
+     * @param length The length of the copy, which is padded with zeros
+     * @return The copy
+     */
+    private Object copyValues(int length) {
+        switch (elementType) {
+            case TAG_BYTE:
+                return Arrays.copyOf((byte[]) values, length);
+            case TAG_SHORT:
+                return Arrays.copyOf((short[]) values, length);
+            case TAG_INT:
+                return Arrays.copyOf((int[]) values, length);
+            case TAG_LONG:
+                return Arrays.copyOf((long[]) values, length);
+            case TAG_FLOAT:
+                return Arrays.copyOf((float[]) values, length);
+            default:
+                return Arrays.copyOf((double[]) values, length);
+        }
+    }
+
+    /**
+     * Sets the primitive value at the given index to the value of the given tag
+     * @param index The index
+     * @param tag The tag, which has the element type of this list
+     */
+    private void setValueFrom(int index, Tag tag) {
+        switch (elementType) {
+            case TAG_BYTE:
+                ((byte[]) values)[index] = ((ByteTag) tag).getValue();
+                break;
+            case TAG_SHORT:
+                ((short[]) values)[index] = ((ShortTag) tag).getValue();
+                break;
+            case TAG_INT:
+                ((int[]) values)[index] = ((IntTag) tag).getValue();
+                break;
+            case TAG_LONG:
+                ((long[]) values)[index] = ((LongTag) tag).getValue();
+                break;
+            case TAG_FLOAT:
+                ((float[]) values)[index] = ((FloatTag) tag).getValue();
+                break;
+            default:
+                ((double[]) values)[index] = ((DoubleTag) tag).getValue();
+        }
+    }
+
+    /**
+     * Retrieves the length of the primitive array that backs this list
+     * @return The length
+     */
+    private int valuesLength() {
+        switch (elementType) {
+            case TAG_BYTE:
+                return ((byte[]) values).length;
+            case TAG_SHORT:
+                return ((short[]) values).length;
+            case TAG_INT:
+                return ((int[]) values).length;
+            case TAG_LONG:
+                return ((long[]) values).length;
+            case TAG_FLOAT:
+                return ((float[]) values).length;
+            default:
+                return ((double[]) values).length;
+        }
+    }
+
+    /**
+     * Creates a tag for the primitive value at the given index
+     * @param index The index
+     * @return The tag
+     */
+    private Tag valueTag(int index) {
+        switch (elementType) {
+            case TAG_BYTE:
+                return new ByteTag(null, ((byte[]) values)[index]);
+            case TAG_SHORT:
+                return new ShortTag(null, ((short[]) values)[index]);
+            case TAG_INT:
+                return new IntTag(null, ((int[]) values)[index]);
+            case TAG_LONG:
+                return new LongTag(null, ((long[]) values)[index]);
+            case TAG_FLOAT:
+                return new FloatTag(null, ((float[]) values)[index]);
+            default:
+                return new DoubleTag(null, ((double[]) values)[index]);
+        }
+    }
+
+    /**
+     * Converts the primitive values of this list to tags, after which the list is backed by those tags
+     */
+    @SuppressWarnings("unchecked")
+    private void inflate() {
+        if (values == null) return;
+        int length = valuesLength();
+        List<T> result = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            result.add((T) valueTag(i));
+        }
+        elements = result;
+        values = null;
+        // The tags write through to this list from now on
+        joinChildren(result);
+    }
+
+    /**
+     * Retrieves the elements of this list as tags, without changing the backing of this list
+     * @return The elements. The tags of a primitive-backed list are frozen, as changing them could not change the list
+     */
+    private List<? extends Tag> asTags() {
+        if (values == null) return elements;
+        return new AbstractList<Tag>() {
+            @Override
+            public Tag get(int index) {
+                return valueTag(index).freeze();
+            }
+
+            @Override
+            public int size() {
+                return valuesLength();
+            }
+        };
+    }
+
+    /**
+     * Checks whether the elements of this list are equal to those of the given list
+     * @param that The other list, with the same element type
+     * @return True if the elements are equal, false otherwise
+     */
+    private boolean elementsEqual(ListTag<?> that) {
+        if (values == null || that.values == null) return asTags().equals(that.asTags());
+        switch (elementType) {
+            case TAG_BYTE:
+                return Arrays.equals((byte[]) values, (byte[]) that.values);
+            case TAG_SHORT:
+                return Arrays.equals((short[]) values, (short[]) that.values);
+            case TAG_INT:
+                return Arrays.equals((int[]) values, (int[]) that.values);
+            case TAG_LONG:
+                return Arrays.equals((long[]) values, (long[]) that.values);
+            case TAG_FLOAT:
+                return Arrays.equals((float[]) values, (float[]) that.values);
+            default:
+                return Arrays.equals((double[]) values, (double[]) that.values);
+        }
+    }
+
+    /**
+     * Checks that the elements of this list have the given type
+     * @param type The type
+     */
+    private void checkElementType(TagType type) {
+        if (elementType != type) {
+            throw new IllegalArgumentException("Expected element type " + type + ", but is " + elementType);
+        }
+    }
+
+    /**
+     * View on the elements list, that drops the cached size and hash whenever the list is changed through it
+     */
+    private class ElementsView extends AbstractList<T> {
+
+        @Override
+        public T get(int index) {
+            return elements.get(index);
         }
 
-        return new ListTag<>(name, type, result);
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public T set(int index, T element) {
+            checkMutable();
+            T previous = elements.set(index, element);
+            element.join(ListTag.this);
+            changed();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, T element) {
+            checkMutable();
+            elements.add(index, element);
+            element.join(ListTag.this);
+            changed();
+            modCount++;
+        }
+
+        @Override
+        public T remove(int index) {
+            checkMutable();
+            T previous = elements.remove(index);
+            changed();
+            modCount++;
+            return previous;
+        }
     }
 }
@@ -0,0 +1,116 @@
+package nl.itslars.mcpenbt.tags;
+
+import nl.itslars.mcpenbt.enums.NBTFormat;
+import nl.itslars.mcpenbt.io.NBTOutput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task that writes a range of sibling tags into their regions of a shared, pre-sized buffer.
+ * The offset of every sibling is known in advance (a prefix sum of their sizes). Ranges that are too small to be worth
+ * splitting are written on the current thread. Otherwise, the range is split in two halves of about the same amount
+ * of bytes, and a single large compound or list is descended into.
+ */
+class ParallelTagWriter extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // Ranges of siblings and subtrees with less bytes than this are written on a single thread
+    static final int THRESHOLD = 1 << 16;
+
+    private final ByteBuffer buffer;
+    private final List<? extends Tag> tags;
+    // The start position of every tag in the buffer, followed by the end position of the last tag
+    private final int[] offsets;
+    private final int from;
+    private final int to;
+
+    ParallelTagWriter(ByteBuffer buffer, List<? extends Tag> tags, int[] offsets, int from, int to) {
+        this.buffer = buffer;
+        this.tags = tags;
+        this.offsets = offsets;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        try {
+            if (to - from == 1) {
+                writeTag(tags.get(from), offsets[from], offsets[to] - offsets[from]);
+            } else if (offsets[to] - offsets[from] < THRESHOLD) {
+                NBTOutput output = NBTOutput.of(viewAt(offsets[from]));
+                for (int i = from; i < to; i++) {
+                    tags.get(i).write(output);
+                }
+            } else {
+                // Split at the tag that contains the middle byte, but keep both halves non-empty
+                int middle = (offsets[from] + offsets[to]) >>> 1;
+                int split = Arrays.binarySearch(offsets, from, to, middle);
+                if (split < 0) split = -split - 1;
+                split = Math.max(from + 1, Math.min(to - 1, split));
+                invokeAll(new ParallelTagWriter(buffer, tags, offsets, from, split),
+                        new ParallelTagWriter(buffer, tags, offsets, split, to));
+            }
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a single tag. If it is a large compound or list, its children are written in parallel.
+     * @param tag The tag
+     * @param offset The position of the tag in the buffer
+     * @param size The amount of bytes of the tag
+     * @throws IOException If the output threw an exception
+     */
+    private void writeTag(Tag tag, int offset, int size) throws IOException {
+        List<? extends Tag> children = tag.children();
+        ByteBuffer view = viewAt(offset);
+        NBTOutput output = NBTOutput.of(view);
+        if (size < THRESHOLD || children == null || children.isEmpty()) {
+            tag.write(output);
+            return;
+        }
+
+        // Write everything in front of the children
+        if (tag.getName() != null) {
+            output.writeByte(tag.getType().getId());
+            output.writeString(tag.getName());
+        }
+        if (tag instanceof ListTag) {
+            output.writeByte(((ListTag<?>) tag).getElementType().getId());
+            output.writeInt(children.size());
+        }
+
+        int[] childOffsets = new int[children.size() + 1];
+        childOffsets[0] = offset + view.position();
+        for (int i = 0; i < children.size(); i++) {
+            childOffsets[i + 1] = childOffsets[i] + children.get(i).serializedSize(NBTFormat.LITTLE_ENDIAN);
+        }
+        new ParallelTagWriter(buffer, children, childOffsets, 0, children.size()).compute();
+
+        // Write the end byte of a compound behind the children
+        if (tag instanceof CompoundTag) {
+            buffer.put(childOffsets[children.size()], (byte) 0);
+        }
+    }
+
+    /**
+     * Creates a view of the buffer that starts at the given position. Its own position is 0.
+     * @param position The position
+     * @return The view
+     */
+    private ByteBuffer viewAt(int position) {
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(position);
+        return view.slice();
+    }
+}
@@ -1,12 +1,13 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
+import nl.itslars.mcpenbt.io.StringCodec;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Objects;
 
 /**
  * Class for representing a String NBT Tag
@@ -26,18 +27,31 @@ public class StringTag extends Tag {
     }
 
     public void setValue(String value) {
+        checkMutable();
         this.value = value;
+        changed();
     }
 
     /**
-     * Converts the StringTag to a byte array.
+     * Writes the StringTag to the given output.
      * 2 bytes are used to indicate the string length, followed by the actual string bytes
-     * @return The resulting byte array
+     * @param output The output
+     * @throws IOException If the output threw an exception
      */
     @Override
-    protected byte[] toBytes() {
-        byte[] stringBytes = value.getBytes();
-        return ByteBuffer.allocate(2 + stringBytes.length).order(ByteOrder.LITTLE_ENDIAN).putShort((short) stringBytes.length).put(stringBytes).array();
+    protected void writeValue(NBTOutput output) throws IOException {
+        output.writeString(value);
+    }
+
+    @Override
+    protected int valueSize(NBTFormat format) {
+        int length = StringCodec.encodedLength(value, format.isModifiedUtf8());
+        return format.stringLengthSize(length) + length;
+    }
+
+    @Override
+    public StringTag toMutable() {
+        return new StringTag(getName(), value);
     }
 
     @Override
@@ -50,12 +64,12 @@ public class StringTag extends Tag {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         StringTag that = (StringTag) o;
-        return value.equals(that.value) && ((getName() == null && that.getName() == null) || (getName().equals(that.getName())));
+        return value.equals(that.value) && nameEquals(that);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return hashWithName(value.hashCode());
     }
 
     /**
@@ -66,14 +80,17 @@ public class StringTag extends Tag {
      * @throws IOException If the InputStream threw an exception
      */
     public static Tag read(String name, InputStream stream) throws IOException {
-        // Read the string length
-        byte[] stringLength = new byte[]{(byte) stream.read(), (byte) stream.read()};
-        short length = ByteBuffer.wrap(stringLength).order(ByteOrder.LITTLE_ENDIAN).getShort();
-        byte[] stringBuffer = new byte[length];
-        // Fill the string buffer with the string bytes
-        for (int i = 0; i < length; i++) {
-            stringBuffer[i] = (byte) stream.read();
-        }
-        return new StringTag(name, new String(stringBuffer));
+        return readFromStream(stream, input -> read(name, input));
+    }
+
+    /**
+     * Converts the given input to a StringTag
+     * @param name The name that this tag should get
+     * @param input The input
+     * @return The resulting tag
+     * @throws IOException If the input threw an exception
+     */
+    public static Tag read(String name, NBTInput input) throws IOException {
+        return new StringTag(name, input.readString());
     }
 }
@@ -1,12 +1,20 @@
 package nl.itslars.mcpenbt.tags;
 
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.ByteArrayNBTOutput;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
+import nl.itslars.mcpenbt.io.StringCodec;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Abstract class for representing any NBT Tag
@@ -15,6 +23,11 @@ public abstract class Tag {
 
     // The name (key) of this tag. Can be set to null, when no name is used (in (byte/int) list NBT)
     private String name;
+    // Whether this tag and all of its children are immutable
+    private boolean frozen;
+    // The version of the tree that this tag is in, which is shared by all tags of the tree and moves on whenever one
+    // of them changes. Null if this tag was never put in a compound or list, and for frozen tags
+    private TreeVersion version;
 
     public Tag(String name) {
         this.name = name;
@@ -24,35 +37,304 @@ public abstract class Tag {
         return name;
     }
 
+    /**
+     * Makes this tag and all of its children immutable, after which every method that would change them throws an
+     * UnsupportedOperationException. Frozen tags can be shared by multiple trees and threads without copying them.
+     * Like any object, a frozen tree must be handed to other threads safely, for example through a final field or a
+     * concurrent collection. Children that are already frozen are not visited again.
+     * @return This tag
+     */
+    public Tag freeze() {
+        if (!frozen) {
+            freezeChildren();
+            dropStaleCaches();
+            frozen = true;
+            // A frozen tag never changes, so it does not have to move its tree on
+            version = null;
+        }
+        return this;
+    }
+
+    /**
+     * Checks whether this tag is immutable
+     * @return True if it is frozen, false otherwise
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Creates a mutable copy of this tag. Frozen children are not copied, but shared with this tag. They can be
+     * replaced in the copy, or changed after calling this method on them as well. Mutable children are copied.
+     * For a frozen tree, only the tag itself is copied.
+     * @return The copy
+     */
+    public abstract Tag toMutable();
+
+    /**
+     * Freezes the children of this tag, right before the tag itself is frozen
+     */
+    void freezeChildren() {
+    }
+
+    /**
+     * Checks that this tag can be changed
+     * @throws UnsupportedOperationException If this tag is frozen
+     */
+    void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("The tag is frozen, use toMutable() to get a mutable copy.");
+        }
+    }
+
+    /**
+     * Checks that this tag is frozen, before a frozen copy of it is made that shares its children
+     * @throws IllegalStateException If this tag is not frozen
+     */
+    void checkFrozen() {
+        if (!frozen) {
+            throw new IllegalStateException("The tag is not frozen, use freeze() first.");
+        }
+    }
+
+    /**
+     * Creates a copy of the given child for a mutable copy of its parent
+     * @param tag The child
+     * @param <T> The type of the child
+     * @return The child itself if it is frozen, and a mutable copy otherwise
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Tag> T copyChild(T tag) {
+        return tag.isFrozen() ? tag : (T) tag.toMutable();
+    }
+
     /**
      * Converts this NBT Tag to a byte array
      * @return The byte array
      */
     public byte[] getBytes() {
-        // If there is no name, we return only the actual value of the NBT tag
-        if (name == null) return toBytes();
-
-        // Convert the name to bytes
-        byte[] tagName = name.getBytes();
-        // Retrieve the NBT tag value
-        byte[] tagValue = toBytes();
-        // Create the array. It consists of:
-        // 1 byte, indicating the ID. Followed by a short that indicates the name length.
-        // This is followed by the tag name, which is followed by the tag value.
-        return ByteBuffer.allocate(tagName.length + tagValue.length + 3)
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .put(getType().getId())
-                .putShort((short) tagName.length)
-                .put(tagName)
-                .put(tagValue)
-                .array();
-    }
-
-    /**
-     * Abstract method for converting each NBT Tag to the associated value byte array
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput(serializedSize());
+        try {
+            write(output);
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Converts the value of this NBT Tag to a byte array, without the type ID and name
      * @return The byte array
      */
-    protected abstract byte[] toBytes();
+    public byte[] getValueBytes() {
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput(valueSize(NBTFormat.LITTLE_ENDIAN));
+        try {
+            writeValue(output);
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes this NBT Tag to the given output, in a single pass over the tag tree.
+     * If the tag has a name, it is preceded by 1 byte indicating the ID, a short that indicates the name length,
+     * and the tag name. If there is no name, only the actual value of the NBT tag is written.
+     * @param output The output
+     * @throws IOException If the output threw an exception
+     */
+    public void write(NBTOutput output) throws IOException {
+        if (name != null) {
+            output.writeByte(getType().getId());
+            output.writeString(name);
+        }
+        writeValue(output);
+    }
+
+    /**
+     * Writes this NBT Tag to the given output stream
+     * @param stream The output stream
+     * @throws IOException If the output stream threw an exception
+     */
+    public void write(OutputStream stream) throws IOException {
+        NBTOutput output = NBTOutput.of(stream);
+        write(output);
+        output.flush();
+    }
+
+    /**
+     * Writes this NBT Tag to the given data output, like a RandomAccessFile.
+     * This is not an overload of {@link #write(OutputStream)}, so that a DataOutputStream can be passed to either.
+     * @param dataOutput The data output
+     * @throws IOException If the data output threw an exception
+     */
+    public void writeTo(DataOutput dataOutput) throws IOException {
+        NBTOutput output = NBTOutput.ofDataOutput(dataOutput);
+        write(output);
+        output.flush();
+    }
+
+    /**
+     * Writes this NBT Tag into the given buffer, starting at its current position.
+     * The order of the buffer is set to little-endian.
+     * @param buffer The buffer
+     * @throws java.nio.BufferOverflowException If the tag does not fit in the buffer
+     */
+    public void write(ByteBuffer buffer) {
+        try {
+            write(NBTOutput.of(buffer));
+        } catch (IOException e) {
+            // Cannot happen, the output is kept in memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes this NBT Tag into the given buffer, starting at its current position, using the threads of the given pool.
+     * First, the size of every subtree is computed, so that every child of a large compound or list gets its own
+     * region of the buffer. Then, large children (and ranges of smaller ones) are written concurrently. The result is
+     * identical to that of {@link #write(ByteBuffer)}. The tag must not be changed while it is being written.
+     * The order of the buffer is left unchanged.
+     * @param buffer The buffer
+     * @param pool The pool
+     * @throws java.nio.BufferOverflowException If the tag does not fit in the buffer
+     */
+    public void write(ByteBuffer buffer, ForkJoinPool pool) {
+        int size = serializedSize(NBTFormat.LITTLE_ENDIAN);
+        if (buffer.remaining() < size) throw new BufferOverflowException();
+        int start = buffer.position();
+        pool.invoke(new ParallelTagWriter(buffer, Collections.singletonList(this), new int[]{start, start + size}, 0, 1));
+        ((Buffer) buffer).position(start + size);
+    }
+
+    /**
+     * Converts this NBT Tag to a byte array, using the threads of the given pool.
+     * See {@link #write(ByteBuffer, ForkJoinPool)}.
+     * @param pool The pool
+     * @return The byte array
+     */
+    public byte[] getBytes(ForkJoinPool pool) {
+        byte[] result = new byte[serializedSize(NBTFormat.LITTLE_ENDIAN)];
+        write(ByteBuffer.wrap(result), pool);
+        return result;
+    }
+
+    /**
+     * Abstract method for writing the value of each NBT Tag to the given output
+     * @param output The output
+     * @throws IOException If the output threw an exception
+     */
+    protected abstract void writeValue(NBTOutput output) throws IOException;
+
+    /**
+     * Computes the exact amount of bytes that this NBT Tag takes when it is written (without a header), including the
+     * type ID and name if it has a name. The sizes of compounds and lists are cached until they or their children are
+     * changed.
+     * Changes to the arrays of ByteArrayTags and IntArrayTags that were not made through the tags themselves are not
+     * detected.
+     * @return The amount of bytes
+     */
+    public int serializedSize() {
+        return serializedSize(NBTFormat.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Computes the exact amount of bytes that this NBT Tag takes when it is written in the given format.
+     * See {@link #serializedSize()}.
+     * @param format The format
+     * @return The amount of bytes
+     */
+    public int serializedSize(NBTFormat format) {
+        int size = valueSize(format);
+        if (name != null) {
+            int nameLength = StringCodec.encodedLength(name, format.isModifiedUtf8());
+            size += 1 + format.stringLengthSize(nameLength) + nameLength;
+        }
+        return size;
+    }
+
+    /**
+     * Abstract method for computing the amount of bytes of the value of each NBT Tag in the given format
+     * @param format The format
+     * @return The amount of bytes
+     */
+    protected abstract int valueSize(NBTFormat format);
+
+    /**
+     * Marks that this tag was changed, which invalidates the cached sizes and hashes of all compounds and lists in its
+     * tree
+     */
+    void changed() {
+        TreeVersion version = this.version;
+        if (version != null) version.root().value++;
+    }
+
+    /**
+     * Drops the cached size and hash of this tag if its tree was changed since they were cached, right before this tag
+     * is frozen and they become valid forever
+     */
+    void dropStaleCaches() {
+    }
+
+    /**
+     * Retrieves the version of the tree that this tag is in, and gives this tag a tree of its own if it has none
+     * @return The version
+     */
+    TreeVersion version() {
+        TreeVersion version = this.version;
+        if (version == null) {
+            version = new TreeVersion();
+            this.version = version;
+            return version;
+        }
+        TreeVersion root = version.root();
+        if (root != version) this.version = root;
+        return root;
+    }
+
+    /**
+     * Puts this tag in the tree of the given compound or list, after it was added to it. If this tag already is in
+     * another tree, both trees share one version from now on. Frozen tags never change, and do not join.
+     * @param parent The parent
+     */
+    void join(Tag parent) {
+        if (frozen) return;
+        TreeVersion parentVersion = parent.version();
+        TreeVersion version = this.version;
+        if (version == null) {
+            this.version = parentVersion;
+            return;
+        }
+        TreeVersion root = version.root();
+        if (root != parentVersion) {
+            root.forward = parentVersion;
+            this.version = parentVersion;
+        }
+    }
+
+    /**
+     * Puts all given children in the tree of this tag. The children of a lazy list join once they are decoded.
+     * @param children The children
+     */
+    void joinChildren(List<? extends Tag> children) {
+        if (children instanceof LazyTagList) {
+            ((LazyTagList) children).setOwner(this);
+            return;
+        }
+        for (Tag child : children) {
+            child.join(this);
+        }
+    }
+
+    /**
+     * Retrieves the children of this tag, if they can be written separately of each other (by the parallel writer)
+     * @return The children, or null if this tag has no such children
+     */
+    List<? extends Tag> children() {
+        return null;
+    }
 
     /**
      * Abstract method that returns the TagType of the current NBT tag
@@ -189,54 +471,233 @@ public abstract class Tag {
      * @throws IOException When the input stream throws an error
      */
     public static Tag read(InputStream stream, int nextId) throws IOException {
-        // Checks if the stream has available data, and if not, throws an exception
-        if (stream.available() == 0) throw new IllegalStateException("Invalid NBT formatting.");
+        return readFromStream(stream, input -> read(input, nextId));
+    }
+
+    /**
+     * Converts the given input to a Tag
+     * @param input The input
+     * @return The resulting Tag
+     * @throws IOException When the input throws an error
+     */
+    public static Tag read(NBTInput input) throws IOException {
+        return read(input, -1);
+    }
 
+    /**
+     * Converts the given input to a Tag
+     * @param input The input
+     * @param nextId The expected type of the next tag. If set to -1, this indicates that the next ID has to be read
+     * @return The resulting Tag
+     * @throws IOException When the input throws an error
+     */
+    public static Tag read(NBTInput input, int nextId) throws IOException {
         String nextName = null;
         // Check if the next ID is -1
         if (nextId == -1) {
-            nextId = stream.read();
+            nextId = input.readByte();
             // If the next ID is 0, it indicates the end of a compound tag, and we return
             if (nextId == 0) return null;
 
-            // Read the length of the tag name
-            byte[] stringLength = new byte[]{(byte) stream.read(), (byte) stream.read()};
-            short length = ByteBuffer.wrap(stringLength).order(ByteOrder.LITTLE_ENDIAN).getShort();
             // Read the tag name
-            byte[] stringBuffer = new byte[length];
-            for (int i = 0; i < length; i++) {
-                stringBuffer[i] = (byte) stream.read();
-            }
-            nextName = new String(stringBuffer);
+            nextName = input.readName();
         }
 
+        return readValue(nextName, nextId, input);
+    }
+
+    /**
+     * Converts the given input to a Tag, that has its values decoded only when they are accessed.
+     * The input must have a source buffer, which the resulting tag keeps referring to. Compound and list tags
+     * record where their children start, and decode a child the first time it is retrieved.
+     * Children that were never retrieved are written by copying their original bytes.
+     * Lazy tags are not thread-safe, not even for reading.
+     * @param input The input
+     * @return The resulting Tag
+     * @throws IOException When the input throws an error
+     */
+    public static Tag readLazy(NBTInput input) throws IOException {
+        if (input.getSource() == null) throw new IllegalArgumentException("Lazy reading requires a buffer input.");
+        // The lazy tags get their own input, so that decoding children never moves the given input
+        NBTInput lazyInput = NBTInput.of(input.getSource(), input.getFormat());
+        lazyInput.setPosition(input.getPosition());
+        Tag result = LazyTagList.read(lazyInput, -1);
+        input.setPosition(lazyInput.getPosition());
+        return result;
+    }
+
+    /**
+     * Converts the given input to the value of a Tag, for which the type ID (and name) have already been read
+     * @param name The name that the tag should get
+     * @param id The ID of the tag type
+     * @param input The input
+     * @return The resulting Tag
+     * @throws IOException When the input throws an error
+     */
+    public static Tag readValue(String name, int id, NBTInput input) throws IOException {
         // Switch based on the ID. Every different value activates a different parser
-        switch (nextId) {
+        switch (id) {
             case 1:
-                return ByteTag.read(nextName, stream);
+                return ByteTag.read(name, input);
             case 2:
-                return ShortTag.read(nextName, stream);
+                return ShortTag.read(name, input);
             case 3:
-                return IntTag.read(nextName, stream);
+                return IntTag.read(name, input);
             case 4:
-                return LongTag.read(nextName, stream);
+                return LongTag.read(name, input);
             case 5:
-                return FloatTag.read(nextName, stream);
+                return FloatTag.read(name, input);
             case 6:
-                return DoubleTag.read(nextName, stream);
+                return DoubleTag.read(name, input);
             case 7:
-                return ByteArrayTag.read(nextName, stream);
+                return ByteArrayTag.read(name, input);
             case 8:
-                return StringTag.read(nextName, stream);
+                return StringTag.read(name, input);
             case 9:
-                return ListTag.read(nextName, stream);
+                return ListTag.read(name, input);
             case 10:
-                return CompoundTag.read(nextName, stream);
+                return CompoundTag.read(name, input);
             case 11:
-                return IntArrayTag.read(nextName, stream);
+                return IntArrayTag.read(name, input);
             default:
                 // If a wrong ID was given, the NBT formatting was wrong.
                 throw new IllegalStateException("Invalid NBT formatting.");
         }
     }
+
+    /**
+     * Reads a tag from the given stream through a buffered input, and hands the bytes that were read ahead back to
+     * the stream (if it supports that)
+     * @param stream The input stream
+     * @param reader The function that reads the tag from the input
+     * @return The resulting Tag
+     * @throws IOException When the input stream throws an error
+     */
+    static Tag readFromStream(InputStream stream, TagReader reader) throws IOException {
+        NBTInput input = NBTInput.of(stream);
+        try {
+            return reader.read(input);
+        } finally {
+            input.release();
+        }
+    }
+
+    /**
+     * Checks whether this tag has the same name as the given tag
+     * @param that The other tag
+     * @return True if the names are equal (or both null), false otherwise
+     */
+    protected boolean nameEquals(Tag that) {
+        return Objects.equals(name, that.name);
+    }
+
+    /**
+     * Combines the hash of the name of this tag with the given hash of its value
+     * @param valueHash The hash of the value
+     * @return The hash of this tag
+     */
+    protected int hashWithName(int valueHash) {
+        return 31 * Objects.hashCode(name) + valueHash;
+    }
+
+    /**
+     * Functional interface for reading a tag from an NBTInput
+     */
+    @FunctionalInterface
+    interface TagReader {
+
+        Tag read(NBTInput input) throws IOException;
+    }
+
+    /**
+     * The version of a tree of tags. The version of a tree that was joined into another tree forwards to the version of
+     * that tree.
+     * A version does not refer to any tag, so discarded trees are not kept alive by the tags that were in them.
+     * Tags that are removed from a tree stay in it, so changing them only invalidates more caches than needed.
+     */
+    static final class TreeVersion {
+
+        // The version that this version was joined into, or null if it is a root
+        private TreeVersion forward;
+        private long value;
+
+        /**
+         * Finds the root version, and shortens the path to it along the way
+         * @return The root version
+         */
+        TreeVersion root() {
+            TreeVersion version = this;
+            while (version.forward != null) {
+                if (version.forward.forward != null) version.forward = version.forward.forward;
+                version = version.forward;
+            }
+            return version;
+        }
+    }
+
+    /**
+     * The value of the version of a tree, at the moment that something was cached
+     */
+    static final class Stamp {
+
+        // The root version, or null if the tag was frozen
+        private final TreeVersion version;
+        private final long value;
+
+        /**
+         * Takes the current version of the tree of the given tag
+         * @param tag The tag
+         */
+        Stamp(Tag tag) {
+            this.version = tag.isFrozen() ? null : tag.version();
+            this.value = version == null ? 0 : version.value;
+        }
+
+        /**
+         * Checks whether the tree of the given tag is unchanged since this stamp was taken.
+         * Caches of frozen tags are always valid; they are checked once more right before a tag is frozen.
+         * @param tag The tag
+         * @return True if it is unchanged, false otherwise
+         */
+        boolean isCurrent(Tag tag) {
+            if (tag.isFrozen()) return true;
+            if (version == null) return false;
+            TreeVersion root = tag.version();
+            return root == version && root.value == value;
+        }
+    }
+
+    /**
+     * The size of the value of a compound or list, which is valid until a tag in its tree is changed, or forever once
+     * the compound or list is frozen. The fields are final, so that a frozen tag can cache its size while it is shared
+     * by multiple threads
+     */
+    static final class CachedSize {
+
+        final NBTFormat format;
+        final Stamp stamp;
+        final int size;
+
+        CachedSize(NBTFormat format, Stamp stamp, int size) {
+            this.format = format;
+            this.stamp = stamp;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The hash of a compound or list, which is valid until a tag in its tree is changed, or forever once the compound
+     * or list is frozen. The fields are final, so that a frozen tag can cache its hash while it is shared by multiple
+     * threads
+     */
+    static final class CachedHash {
+
+        final Stamp stamp;
+        final int hash;
+
+        CachedHash(Stamp stamp, int hash) {
+            this.stamp = stamp;
+            this.hash = hash;
+        }
+    }
 }
@@ -1,15 +1,36 @@
 package nl.itslars.mcpenbt;
+import nl.itslars.mcpenbt.chunk.SubChunk;
+import nl.itslars.mcpenbt.chunk.SubChunkStorage;
+import nl.itslars.mcpenbt.enums.ChangeType;
 import nl.itslars.mcpenbt.enums.HeaderType;
+import nl.itslars.mcpenbt.enums.NBTFormat;
 import nl.itslars.mcpenbt.enums.TagType;
+import nl.itslars.mcpenbt.io.ByteArrayNBTOutput;
+import nl.itslars.mcpenbt.io.NBTInput;
+import nl.itslars.mcpenbt.io.NBTOutput;
+import nl.itslars.mcpenbt.io.NBTReader;
+import nl.itslars.mcpenbt.io.NBTWriter;
+import nl.itslars.mcpenbt.io.NameCache;
+import nl.itslars.mcpenbt.io.PaletteCache;
+import nl.itslars.mcpenbt.io.StringCodec;
 import nl.itslars.mcpenbt.tags.*;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 /**
  * Unit test for NBT Utils
@@ -170,6 +191,107 @@ public class NBTUtilTest {
         Assert.assertArrayEquals(result1, result2);
     }
 
+    /**
+     * Tests that writing to a stream, channel and buffer produces the same bytes as writing to a byte array
+     * @throws IOException If one of the outputs threw an exception
+     */
+    @Test
+    public void testWriteOutputs() throws IOException {
+        List<Tag> elements = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            elements.add(new IntArrayTag("test" + i, i, -i));
+        }
+        Tag tag = new CompoundTag("test", elements);
+        byte[] expected = NBTUtil.write(tag, HeaderType.LEVEL_DAT);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NBTUtil.write(tag, HeaderType.LEVEL_DAT, stream);
+        Assert.assertArrayEquals(expected, stream.toByteArray());
+
+        ByteArrayOutputStream channelStream = new ByteArrayOutputStream();
+        NBTUtil.write(tag, HeaderType.LEVEL_DAT, Channels.newChannel(channelStream));
+        Assert.assertArrayEquals(expected, channelStream.toByteArray());
+
+        // A DataOutputStream is both an OutputStream and a DataOutput
+        ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+        tag.write(new DataOutputStream(dataStream));
+        tag.writeTo(new DataOutputStream(dataStream));
+        byte[] single = NBTUtil.write(tag);
+        byte[] written = dataStream.toByteArray();
+        Assert.assertEquals(single.length * 2, written.length);
+        Assert.assertArrayEquals(single, Arrays.copyOfRange(written, 0, single.length));
+        Assert.assertArrayEquals(single, Arrays.copyOfRange(written, single.length, written.length));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length - 8);
+        tag.write(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        byte[] bufferBytes = new byte[expected.length - 8];
+        ((ByteBuffer) buffer.flip()).get(bufferBytes);
+        Assert.assertArrayEquals(NBTUtil.write(tag), bufferBytes);
+    }
+
+    /**
+     * Tests reading consecutive tags from one stream, and reading from a stream that returns few bytes per read
+     * @throws IOException If the stream threw an exception
+     */
+    @Test
+    public void testStreamInput() throws IOException {
+        byte[] array = new byte[20000];
+        ThreadLocalRandom.current().nextBytes(array);
+        Tag tag1 = new ByteArrayTag("test", array);
+        Tag tag2 = new StringTag("test", "test");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        tag1.write(output);
+        tag2.write(output);
+
+        // Both tags should be read from the same stream, one after another
+        ByteArrayInputStream stream = new ByteArrayInputStream(output.toByteArray());
+        Assert.assertEquals(tag1, Tag.read(stream));
+        Assert.assertEquals(tag2, Tag.read(stream));
+        Assert.assertEquals(0, stream.available());
+
+        // A stream that only returns a single byte per read
+        InputStream slowStream = new FilterInputStream(new ByteArrayInputStream(output.toByteArray())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        Assert.assertEquals(tag1, Tag.read(slowStream));
+        Assert.assertEquals(tag2, Tag.read(slowStream));
+
+        // A stream without mark support is not read further than the tag, like a FileInputStream
+        byte[] levelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        Tag compound = NBTUtil.read(true, levelDat);
+        output = new ByteArrayOutputStream();
+        compound.write(output);
+        tag2.write(output);
+        compound.write(output);
+        InputStream unmarkedStream = new FilterInputStream(new ByteArrayInputStream(output.toByteArray())) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        Assert.assertEquals(compound, Tag.read(unmarkedStream));
+        Assert.assertEquals(tag2, Tag.read(unmarkedStream));
+        Assert.assertEquals(compound, Tag.read(unmarkedStream));
+        Assert.assertEquals(-1, unmarkedStream.read());
+
+        // Skipping a list that is larger than an int of bytes does not wrap around, and end tags are not values
+        NBTInput hugeList = NBTInput.of(new ByteArrayInputStream(
+                new byte[]{4, 1, 0, 0, 0x20, 0, 0, 0, 0, 0, 0, 0, 0}), NBTFormat.LITTLE_ENDIAN);
+        try {
+            hugeList.skipValue(TagType.TAG_LIST.getId());
+            Assert.fail();
+        } catch (IllegalStateException ignored) {}
+        NBTInput endList = NBTInput.of(new ByteArrayInputStream(new byte[]{0, 2, 0, 0, 0, 0, 0}), NBTFormat.LITTLE_ENDIAN);
+        try {
+            endList.skipValue(TagType.TAG_LIST.getId());
+            Assert.fail();
+        } catch (IllegalStateException ignored) {}
+    }
+
     @Test
     public void testEquality() {
         Tag tag1 = new CompoundTag("test", Collections.singletonList(new IntTag("test", 3)));
@@ -194,4 +316,1127 @@ public class NBTUtilTest {
         // Check byte array equality
         Assert.assertArrayEquals(newLevelDat, originalLevelDat);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests reading the original level.dat file from a heap buffer, a direct buffer and a memory-mapped file
+     * @throws IOException If the file could not be read
+     */
+    @Test
+    public void testBufferInput() throws IOException {
+        Path path = new File("./src/test/level.dat").toPath();
+        byte[] originalLevelDat = Files.readAllBytes(path);
+
+        ByteBuffer heapBuffer = ByteBuffer.wrap(originalLevelDat);
+        Assert.assertArrayEquals(originalLevelDat, NBTUtil.write(NBTUtil.read(true, heapBuffer), HeaderType.LEVEL_DAT));
+        Assert.assertFalse(heapBuffer.hasRemaining());
+        Assert.assertEquals(ByteOrder.BIG_ENDIAN, heapBuffer.order());
+
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(originalLevelDat.length);
+        directBuffer.put(originalLevelDat).flip();
+        Assert.assertArrayEquals(originalLevelDat, NBTUtil.write(NBTUtil.read(true, directBuffer), HeaderType.LEVEL_DAT));
+
+        Assert.assertArrayEquals(originalLevelDat, NBTUtil.write(NBTUtil.readMapped(true, path), HeaderType.LEVEL_DAT));
+    }
+
+    /**
+     * Tests lazily reading the original level.dat file, both untouched and after changing a value
+     * @throws IOException If the file could not be read
+     */
+    @Test
+    public void testLazyRead() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+
+        // An untouched lazy tree is written back as-is
+        Tag lazyTag = NBTUtil.readLazy(true, originalLevelDat);
+        Assert.assertArrayEquals(originalLevelDat, NBTUtil.write(lazyTag, HeaderType.LEVEL_DAT));
+
+        // Changing a nested value gives the same result as changing it in an eagerly read tree
+        CompoundTag eagerTag = (CompoundTag) NBTUtil.read(true, originalLevelDat);
+        Assert.assertEquals(eagerTag, lazyTag);
+        for (CompoundTag compound : Arrays.asList(eagerTag, lazyTag.getAsCompound())) {
+            compound.getByName("abilities").get().getAsCompound().getByName("flySpeed").get().getAsFloat().setValue(1);
+            compound.change("LevelName", new StringTag("LevelName", "Lazy"));
+        }
+        Assert.assertArrayEquals(NBTUtil.write(eagerTag), NBTUtil.write(lazyTag));
+        Assert.assertEquals(eagerTag, NBTUtil.readLazy(false, NBTUtil.write(lazyTag)));
+
+        // Removing elements returns them, decoding them if they were never retrieved
+        CompoundTag removed = NBTUtil.readLazy(true, originalLevelDat).getAsCompound();
+        CompoundTag eager = NBTUtil.read(true, originalLevelDat).getAsCompound();
+        Tag first = removed.getElements().get(0);
+        Assert.assertSame(first, removed.getElements().remove(0));
+        Assert.assertEquals(eager.getElements().get(1), removed.getElements().remove(0));
+        removed.remove("LevelName");
+        CompoundTag expected = (CompoundTag) NBTUtil.read(true, originalLevelDat);
+        expected.getElements().remove(0);
+        expected.getElements().remove(0);
+        expected.remove("LevelName");
+        Assert.assertArrayEquals(NBTUtil.write(expected), NBTUtil.write(removed));
+    }
+
+    /**
+     * Tests name lookups in a compound that is large enough to get a name index
+     */
+    @Test
+    public void testCompoundLookup() {
+        CompoundTag compound = new CompoundTag("test", new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            compound.add(new IntTag("test" + i, i));
+        }
+        Assert.assertEquals(42, compound.getByName("test42").get().getAsInt().getValue());
+        Assert.assertFalse(compound.contains("test100"));
+
+        // Changing a tag moves it to the back, and keeps all other elements in order
+        compound.change("test42", new IntTag("test42", -42));
+        Assert.assertEquals(-42, compound.getByName("test42").get().getAsInt().getValue());
+        Assert.assertEquals("test43", compound.getElements().get(42).getName());
+        Assert.assertEquals("test42", compound.getElements().get(99).getName());
+
+        compound.remove("test0");
+        Assert.assertFalse(compound.contains("test0"));
+        Assert.assertEquals(99, compound.getElements().size());
+
+        // Duplicate names resolve to the first occurrence, also after removing it
+        compound.add(new IntTag("test1", -1));
+        compound.remove("test1");
+        Assert.assertEquals(-1, compound.getByName("test1").get().getAsInt().getValue());
+
+        // Changes through the elements list are seen by lookups as well
+        compound.getElements().set(0, new IntTag("replaced", 0));
+        Assert.assertTrue(compound.contains("replaced"));
+        Assert.assertFalse(compound.contains("test2"));
+    }
+
+    /**
+     * Tests the typed getters and setters of a compound
+     */
+    @Test
+    public void testCompoundTypedAccess() {
+        CompoundTag compound = new CompoundTag("test", new ArrayList<>());
+        compound.putInt("int", 3);
+        compound.putLong("long", 4L);
+        compound.putString("string", "test");
+        compound.putIntArray("intArray", new int[]{1, 2});
+        compound.add(new CompoundTag("compound", new ArrayList<>()));
+
+        Assert.assertEquals(3, compound.getInt("int", 0));
+        Assert.assertEquals(4L, compound.getLong("long", 0));
+        Assert.assertEquals("test", compound.getString("string"));
+        Assert.assertArrayEquals(new int[]{1, 2}, compound.getIntArray("intArray"));
+        Assert.assertNotNull(compound.getCompound("compound"));
+
+        // Missing tags and tags of another type result in the default value
+        Assert.assertEquals(-1, compound.getInt("missing", -1));
+        Assert.assertEquals(-1, compound.getInt("long", -1));
+        Assert.assertNull(compound.getList("compound"));
+
+        // Setting an existing tag keeps its position, setting a tag of another type replaces it
+        compound.putInt("int", 5);
+        Assert.assertEquals(5, compound.getElements().get(0).getAsInt().getValue());
+        compound.putDouble("int", 1.5);
+        Assert.assertEquals(1.5, compound.getDouble("int", 0), 0);
+        Assert.assertEquals(5, compound.getElements().size());
+    }
+
+    /**
+     * Tests lists that are backed by primitive values
+     */
+    @Test
+    public void testPrimitiveList() {
+        ListTag<DoubleTag> pos = ListTag.ofDoubles("Pos", 1.5, 64, -3.25);
+        pos.setDouble(1, 65);
+        Assert.assertEquals(65, pos.getDouble(1), 0);
+
+        // A primitive-backed list is written and read like a list of tags
+        List<Tag> elements = Arrays.asList(new DoubleTag(null, 1.5), new DoubleTag(null, 65), new DoubleTag(null, -3.25));
+        ListTag<Tag> tagList = new ListTag<>("Pos", TagType.TAG_DOUBLE, elements);
+        Assert.assertArrayEquals(NBTUtil.write(tagList), NBTUtil.write(pos));
+        Assert.assertEquals(tagList, pos);
+        Assert.assertEquals(tagList.hashCode(), pos.hashCode());
+        ListTag<DoubleTag> readList = NBTUtil.read(false, NBTUtil.write(pos)).getAsList();
+        Assert.assertEquals(pos, readList);
+        Assert.assertEquals(-3.25, readList.getDouble(2), 0);
+
+        // Tags that are changed while iterating write through to the list
+        double sum = 0;
+        for (DoubleTag element : readList) {
+            sum += element.getValue();
+            element.setValue(element.getValue() * 2);
+        }
+        Assert.assertEquals(63.25, sum, 0);
+        Assert.assertEquals(3, readList.getDouble(0), 0);
+        Assert.assertEquals(-6.5, readList.getDouble(2), 0);
+
+        // Tags retrieved from the elements list write through to the list
+        readList.getElements().get(0).setValue(2);
+        Assert.assertEquals(2, readList.getDouble(0), 0);
+        Assert.assertEquals(3, readList.size());
+    }
+
+    /**
+     * Tests reading, writing and transcoding the big-endian and network formats
+     */
+    @Test
+    public void testFormats() throws IOException {
+        CompoundTag compound = new CompoundTag("", new ArrayList<>());
+        compound.putInt("a", -2);
+        compound.putLong("b", 300);
+        Assert.assertArrayEquals(new byte[]{10, 0, 3, 1, 'a', 3, 4, 1, 'b', (byte) 0xD8, 4, 0},
+                NBTUtil.write(compound, NBTFormat.NETWORK_VARINT));
+        Assert.assertArrayEquals(new byte[]{3, 0, 1, 'a', 0, 0, 0, 1},
+                NBTUtil.write(new IntTag("a", 1), NBTFormat.BIG_ENDIAN));
+
+        // VarInts only need room for their own bytes, so an output of exactly the right size does not grow
+        ByteArrayNBTOutput exact = new ByteArrayNBTOutput(16, NBTFormat.NETWORK_VARINT);
+        for (int i = 0; i < 16; i++) {
+            exact.writeInt(1);
+        }
+        Assert.assertSame(exact.toByteArray(), exact.toByteArray());
+
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        Tag levelDat = NBTUtil.read(true, originalLevelDat);
+        byte[] littleEndian = NBTUtil.write(levelDat);
+        for (NBTFormat format : NBTFormat.values()) {
+            byte[] bytes = NBTUtil.write(levelDat, format);
+            Assert.assertEquals(levelDat, NBTUtil.read(format, bytes));
+            Assert.assertEquals(levelDat, NBTUtil.read(format, new ByteArrayInputStream(bytes)));
+            Assert.assertArrayEquals(bytes, NBTUtil.transcode(NBTFormat.LITTLE_ENDIAN, format, littleEndian));
+            Assert.assertArrayEquals(littleEndian, NBTUtil.transcode(format, NBTFormat.LITTLE_ENDIAN, bytes));
+
+            // Channels are written in the given format as well
+            ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+            NBTOutput channelOutput = NBTOutput.of(Channels.newChannel(channelBytes), format);
+            levelDat.write(channelOutput);
+            channelOutput.flush();
+            Assert.assertArrayEquals(bytes, channelBytes.toByteArray());
+
+            // Lazy trees are converted when written in another format
+            Tag lazyTag = Tag.readLazy(NBTInput.of(bytes, format));
+            Assert.assertEquals(levelDat.getAsCompound().getByName("LevelName"), lazyTag.getAsCompound().getByName("LevelName"));
+            Assert.assertArrayEquals(littleEndian, NBTUtil.write(lazyTag));
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NBTUtil.transcode(NBTFormat.LITTLE_ENDIAN, new ByteArrayInputStream(littleEndian), NBTFormat.NETWORK_VARINT, stream);
+        Assert.assertArrayEquals(NBTUtil.write(levelDat, NBTFormat.NETWORK_VARINT), stream.toByteArray());
+    }
+
+    /**
+     * Tests walking through the original level.dat file with a pull reader
+     */
+    @Test
+    public void testReader() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        CompoundTag levelDat = (CompoundTag) NBTUtil.read(true, originalLevelDat);
+
+        // Every value is visited, and the reader ends directly behind the root
+        ByteBuffer buffer = ByteBuffer.wrap(originalLevelDat, 8, originalLevelDat.length - 8);
+        int values = 0;
+        try (NBTReader reader = NBTReader.of(buffer)) {
+            Assert.assertEquals(NBTReader.Event.START_COMPOUND, reader.next());
+            while (reader.hasNext()) {
+                NBTReader.Event event = reader.next();
+                if (event == NBTReader.Event.VALUE) {
+                    values++;
+                    if ("LevelName".equals(reader.getName())) {
+                        Assert.assertEquals(levelDat.getString("LevelName"), reader.readString());
+                    }
+                } else if (event == NBTReader.Event.START_COMPOUND && "abilities".equals(reader.getName())) {
+                    // Subtrees can be skipped as a whole
+                    reader.skipValue();
+                    Assert.assertEquals(NBTReader.Event.END_COMPOUND, reader.getEvent());
+                    Assert.assertEquals(1, reader.getDepth());
+                }
+            }
+        }
+        Assert.assertTrue(values > 10);
+        Assert.assertFalse(buffer.hasRemaining());
+
+        // Values and subtrees can be decoded on demand
+        try (NBTReader reader = NBTReader.of(NBTUtil.write(levelDat))) {
+            reader.next();
+            while (reader.next() != NBTReader.Event.END_COMPOUND) {
+                if ("LevelName".equals(reader.getName())) {
+                    Assert.assertEquals(levelDat.getString("LevelName"), reader.readString());
+                } else if ("abilities".equals(reader.getName())) {
+                    Assert.assertEquals(levelDat.getCompound("abilities"), reader.readTag());
+                } else if (reader.getEvent() == NBTReader.Event.START_LIST) {
+                    Assert.assertEquals(levelDat.getList(reader.getName()).size(), reader.getListLength());
+                    Assert.assertEquals(levelDat.getList(reader.getName()), reader.readTag());
+                } else if (reader.getEvent() == NBTReader.Event.START_COMPOUND) {
+                    reader.skipValue();
+                }
+            }
+            Assert.assertFalse(reader.hasNext());
+        }
+    }
+
+    /**
+     * Tests building NBT with the streaming writer
+     */
+    @Test
+    public void testWriter() throws IOException {
+        CompoundTag expected = new CompoundTag("", new ArrayList<>());
+        expected.putString("id", "Chest");
+        expected.putInt("x", -12);
+        expected.putByteArray("data", new byte[]{1, 2, 3});
+        expected.add(ListTag.ofDoubles("Pos", 1.5, 64, -3.25));
+        CompoundTag item = new CompoundTag(null, new ArrayList<>());
+        item.putShort("Damage", (short) 3);
+        expected.add(new ListTag<>("Items", TagType.TAG_COMPOUND, new ArrayList<>(Collections.singletonList(item))));
+        expected.add(new IntArrayTag("ints", new int[]{4, 5}));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (NBTWriter writer = NBTWriter.of(stream)) {
+            writer.beginCompound("")
+                    .writeString("id", "Chest")
+                    .writeInt("x", -12)
+                    .writeByteArray("data", new byte[]{1, 2, 3})
+                    .beginList("Pos", TagType.TAG_DOUBLE, 3).writeDouble(null, 1.5).writeDouble(null, 64).writeDouble(null, -3.25).endList()
+                    .beginList("Items", TagType.TAG_COMPOUND, 1).beginCompound(null).writeShort("Damage", (short) 3).endCompound().endList()
+                    .writeTag(new IntArrayTag("ints", new int[]{4, 5}))
+                    .endCompound();
+        }
+        Assert.assertArrayEquals(NBTUtil.write(expected), stream.toByteArray());
+
+        // Wrong nesting is rejected
+        NBTWriter writer = NBTWriter.of(ByteBuffer.allocate(64));
+        writer.beginCompound("").beginList("list", TagType.TAG_INT, 1);
+        try {
+            writer.writeShort(null, (short) 1);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        try {
+            writer.endList();
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        writer.writeInt(null, 1).endList();
+        try {
+            writer.endList();
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        writer.endCompound();
+        try {
+            writer.writeInt("x", 1);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    /**
+     * Tests extracting single tags from the original level.dat file by their path
+     */
+    @Test
+    public void testExtract() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        CompoundTag levelDat = (CompoundTag) NBTUtil.read(true, originalLevelDat);
+
+        Assert.assertEquals(levelDat.getByName("LevelName").get(), NBTUtil.extract("LevelName", true, originalLevelDat));
+        Tag flySpeed = levelDat.getCompound("abilities").getByName("flySpeed").get();
+        Assert.assertEquals(flySpeed, NBTUtil.extract("abilities.flySpeed", true, originalLevelDat));
+        Assert.assertEquals(flySpeed, NBTUtil.extract("abilities.flySpeed", true, new ByteArrayInputStream(originalLevelDat)));
+        Assert.assertNull(NBTUtil.extract("abilities.missing", true, originalLevelDat));
+        Assert.assertNull(NBTUtil.extract("LevelName.child", true, originalLevelDat));
+
+        // List elements are found by their index
+        CompoundTag compound = new CompoundTag("", new ArrayList<>());
+        CompoundTag item = new CompoundTag(null, new ArrayList<>());
+        item.putString("Name", "minecraft:stone");
+        compound.add(new ListTag<>("Items", TagType.TAG_COMPOUND, new ArrayList<>(Arrays.asList(new CompoundTag(null, new ArrayList<>()), item))));
+        compound.add(ListTag.ofInts("ints", 1, 2, 3));
+        NBTPath path = NBTPath.compile("Items[1].Name");
+        ByteBuffer buffer = ByteBuffer.wrap(NBTUtil.write(compound));
+        Assert.assertEquals(new StringTag("Name", "minecraft:stone"), NBTUtil.extract(path, false, buffer));
+        Assert.assertEquals(new IntTag(null, 3), NBTUtil.extract("ints[2]", false, NBTUtil.write(compound)));
+        Assert.assertNull(NBTUtil.extract("Items[2]", false, NBTUtil.write(compound)));
+
+        for (String invalid : new String[]{"a..b", ".a", "a.", "a[x]", "a[1]b", "a[1"}) {
+            try {
+                NBTPath.compile(invalid);
+                Assert.fail(invalid);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Tests patching values of the original level.dat file in place
+     */
+    @Test
+    public void testPatch() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        CompoundTag expected = (CompoundTag) NBTUtil.read(true, originalLevelDat);
+        expected.getCompound("abilities").putFloat("flySpeed", 0.5f);
+        expected.putString("LevelName", "A much longer level name");
+
+        // Fixed-size values are overwritten in place, other values shift the rest of the bytes
+        byte[] bytes = originalLevelDat.clone();
+        NBTPath flySpeed = NBTPath.compile("abilities.flySpeed");
+        Assert.assertSame(bytes, NBTPatcher.patch(bytes, true, flySpeed, new FloatTag(null, 0.5f)));
+        bytes = NBTPatcher.patch(bytes, true, NBTPath.compile("LevelName"), new StringTag(null, "A much longer level name"));
+        Assert.assertArrayEquals(NBTUtil.write(expected, HeaderType.LEVEL_DAT), bytes);
+        Assert.assertNull(NBTPatcher.patch(bytes, true, NBTPath.compile("missing"), new IntTag(null, 1)));
+        try {
+            NBTPatcher.patch(bytes, true, flySpeed, new IntTag(null, 1));
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(originalLevelDat.clone());
+        Assert.assertTrue(NBTPatcher.patch(buffer, true, flySpeed, new FloatTag(null, 0.5f)));
+        Assert.assertEquals(0.5f, NBTUtil.extract(flySpeed, true, buffer).getAsFloat().getValue(), 0);
+
+        // Files are patched with positional writes, and shrink or grow when needed
+        Path file = Files.createTempFile("level", ".dat");
+        try {
+            Files.write(file, originalLevelDat);
+            Assert.assertTrue(NBTPatcher.patch(file, true, flySpeed, new FloatTag(null, 0.5f)));
+            Assert.assertTrue(NBTPatcher.patch(file, true, NBTPath.compile("LevelName"), new StringTag(null, "A much longer level name")));
+            Assert.assertArrayEquals(bytes, Files.readAllBytes(file));
+            String originalName = ((CompoundTag) NBTUtil.read(true, originalLevelDat)).getString("LevelName");
+            Assert.assertTrue(NBTPatcher.patch(file, true, NBTPath.compile("LevelName"), new StringTag(null, originalName)));
+            Assert.assertTrue(NBTPatcher.patch(file, true, flySpeed, expected.getCompound("abilities").getByName("flySpeed").get()));
+            Assert.assertTrue(NBTPatcher.patch(file, true, flySpeed, ((CompoundTag) NBTUtil.read(true, originalLevelDat)).getCompound("abilities").getByName("flySpeed").get()));
+            Assert.assertArrayEquals(originalLevelDat, Files.readAllBytes(file));
+
+            // The position of a channel is left alone
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                channel.position(3);
+                Assert.assertTrue(NBTPatcher.patch(channel, true, NBTPath.compile("LevelName"), new StringTag(null, "A much longer level name")));
+                Assert.assertEquals(3, channel.position());
+            }
+            Assert.assertArrayEquals(NBTPatcher.patch(originalLevelDat.clone(), true, NBTPath.compile("LevelName"),
+                    new StringTag(null, "A much longer level name")), Files.readAllBytes(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Tests reading and writing batches of NBT on multiple threads
+     */
+    @Test
+    public void testBatch() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        Tag levelDat = NBTUtil.read(true, originalLevelDat);
+        List<Tag> tags = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CompoundTag compound = new CompoundTag("", new ArrayList<>());
+            compound.putInt("index", i);
+            tags.add(i % 10 == 0 ? levelDat : compound);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<NBTResult<byte[]>> written = NBTUtil.writeAll(tags, pool);
+            List<byte[]> blobs = new ArrayList<>();
+            for (int i = 0; i < tags.size(); i++) {
+                Assert.assertTrue(written.get(i).isSuccess());
+                Assert.assertArrayEquals(NBTUtil.write(tags.get(i)), written.get(i).getValue());
+                blobs.add(written.get(i).getValue());
+            }
+            // A failing item does not affect the others
+            blobs.set(5, new byte[]{10, 0});
+            // Neither does an error, like running out of stack on deeply nested lists
+            ByteBuffer nested = ByteBuffer.allocate(3 + 100000 * 5).order(ByteOrder.LITTLE_ENDIAN);
+            nested.put((byte) 9).putShort((short) 0);
+            while (nested.hasRemaining()) {
+                nested.put((byte) 9).putInt(1);
+            }
+            blobs.set(7, nested.array());
+
+            List<NBTResult<Tag>> read = NBTUtil.readAll(false, blobs, pool);
+            List<NBTResult<Tag>> readBuffers = NBTUtil.readAll(false, blobs.stream().map(ByteBuffer::wrap), pool);
+            for (int i = 0; i < tags.size(); i++) {
+                if (i == 5) {
+                    Assert.assertFalse(read.get(i).isSuccess());
+                    Assert.assertTrue(read.get(i).getError() instanceof IllegalStateException);
+                    continue;
+                }
+                if (i == 7) {
+                    Assert.assertTrue(read.get(i).getError() instanceof StackOverflowError);
+                    continue;
+                }
+                Assert.assertEquals(tags.get(i), read.get(i).getValue());
+                Assert.assertEquals(tags.get(i), readBuffers.get(i).getValue());
+            }
+
+            Assert.assertEquals(levelDat, NBTUtil.readAll(true, Collections.singletonList(originalLevelDat), pool).get(0).getValue());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests writing large trees in parallel
+     */
+    @Test
+    public void testParallelWrite() throws IOException {
+        CompoundTag structure = new CompoundTag("", new ArrayList<>());
+        List<Tag> blocks = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            CompoundTag block = new CompoundTag(null, new ArrayList<>());
+            block.putString("name", "minecraft:block_" + (i % 37));
+            block.putInt("x", i);
+            block.add(ListTag.ofInts("pos", i, i * 2, i * 3));
+            blocks.add(block);
+        }
+        structure.add(new ListTag<>("blocks", TagType.TAG_COMPOUND, blocks));
+        structure.putIntArray("palette", new int[100000]);
+        for (int i = 0; i < 1000; i++) {
+            structure.putString("key" + i, "value" + i);
+        }
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        structure.add(NBTUtil.readLazy(true, originalLevelDat));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            byte[] expected = NBTUtil.write(structure);
+            Assert.assertArrayEquals(expected, NBTUtil.writeParallel(structure, pool));
+
+            // The tag is written behind the current position of a buffer, without changing its order
+            ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length + 10);
+            buffer.position(10);
+            structure.write(buffer, pool);
+            Assert.assertFalse(buffer.hasRemaining());
+            Assert.assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+            byte[] written = new byte[expected.length];
+            buffer.position(10);
+            buffer.get(written);
+            Assert.assertArrayEquals(expected, written);
+
+            // Small trees are written on the calling thread
+            Tag levelDat = NBTUtil.read(true, originalLevelDat);
+            Assert.assertArrayEquals(NBTUtil.write(levelDat), NBTUtil.writeParallel(levelDat, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests computing the serialized size of tags, and dropping cached sizes when tags are changed
+     */
+    @Test
+    public void testSerializedSize() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        CompoundTag levelDat = NBTUtil.read(true, originalLevelDat).getAsCompound();
+        Assert.assertEquals(originalLevelDat.length, NBTUtil.serializedSize(levelDat, HeaderType.LEVEL_DAT));
+        Assert.assertEquals(originalLevelDat.length - 8, levelDat.serializedSize());
+        Assert.assertEquals(originalLevelDat.length - 8, NBTUtil.readLazy(true, originalLevelDat).serializedSize());
+        for (NBTFormat format : NBTFormat.values()) {
+            Assert.assertEquals(NBTUtil.write(levelDat, format).length, levelDat.serializedSize(format));
+        }
+
+        // Every change that can change the size is detected, also in nested tags
+        CompoundTag abilities = levelDat.getCompound("abilities");
+        abilities.putString("extra", "value");
+        Assert.assertEquals(NBTUtil.write(levelDat).length, levelDat.serializedSize());
+        abilities.getElements().remove(0);
+        Assert.assertEquals(NBTUtil.write(levelDat).length, levelDat.serializedSize());
+        ((StringTag) abilities.getByName("extra").get()).setValue("a longer value");
+        Assert.assertEquals(NBTUtil.write(levelDat).length, levelDat.serializedSize());
+        abilities.remove("extra");
+        Assert.assertEquals(NBTUtil.write(levelDat).length, levelDat.serializedSize());
+
+        ListTag<IntTag> list = ListTag.ofInts("list", 1, 2, 3);
+        levelDat.add(list);
+        Assert.assertEquals(NBTUtil.write(levelDat, NBTFormat.NETWORK_VARINT).length, levelDat.serializedSize(NBTFormat.NETWORK_VARINT));
+        list.setInt(0, Integer.MIN_VALUE);
+        Assert.assertEquals(NBTUtil.write(levelDat, NBTFormat.NETWORK_VARINT).length, levelDat.serializedSize(NBTFormat.NETWORK_VARINT));
+        list.getElements().add(new IntTag(null, 4));
+        Assert.assertEquals(NBTUtil.write(levelDat).length, levelDat.serializedSize());
+        list.getElements().get(0).setValue(5);
+        Assert.assertEquals(NBTUtil.write(levelDat, NBTFormat.NETWORK_VARINT).length, levelDat.serializedSize(NBTFormat.NETWORK_VARINT));
+
+        // The lists that were given to the constructors are copied, so changing them does not go unnoticed
+        List<Tag> given = new ArrayList<>(Collections.singletonList(new StringTag(null, "a")));
+        CompoundTag holder = new CompoundTag("", new ArrayList<>());
+        holder.add(new ListTag<>("given", TagType.TAG_STRING, given));
+        int size = holder.serializedSize();
+        int hash = holder.hashCode();
+        given.set(0, new StringTag(null, "longer"));
+        Assert.assertEquals(size, holder.serializedSize());
+        Assert.assertEquals(hash, holder.hashCode());
+        holder.getList("given").getElements().set(0, new StringTag(null, "longer"));
+        Assert.assertEquals(NBTUtil.write(holder).length, holder.serializedSize());
+        Assert.assertNotEquals(hash, holder.hashCode());
+
+        // Writing with a header to a stream uses the computed size
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NBTUtil.write(levelDat, HeaderType.LEVEL_DAT, stream);
+        Assert.assertArrayEquals(NBTUtil.write(levelDat, HeaderType.LEVEL_DAT), stream.toByteArray());
+        Assert.assertEquals(levelDat, NBTUtil.read(true, stream.toByteArray()));
+    }
+
+    /**
+     * Tests frozen tags, and copying them with structural sharing
+     */
+    @Test
+    public void testFreeze() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        CompoundTag template = NBTUtil.readLazy(true, originalLevelDat).getAsCompound().freeze();
+        Assert.assertTrue(template.isFrozen());
+        Assert.assertTrue(template.getCompound("abilities").isFrozen());
+        Assert.assertEquals(NBTUtil.read(true, originalLevelDat), template);
+        Assert.assertArrayEquals(Arrays.copyOfRange(originalLevelDat, 8, originalLevelDat.length), NBTUtil.write(template));
+
+        // Nothing in a frozen tree can be changed
+        CompoundTag abilities = template.getCompound("abilities");
+        assertFrozen(() -> template.putInt("SpawnX", 5));
+        assertFrozen(() -> template.remove("SpawnX"));
+        assertFrozen(() -> template.getElements().clear());
+        assertFrozen(() -> abilities.getElements().get(0).getAsByte().setValue((byte) 1));
+        ListTag<IntTag> ints = ListTag.ofInts("ints", 1, 2, 3).freeze();
+        assertFrozen(() -> ints.setInt(0, 5));
+        assertFrozen(() -> ints.getElements().add(new IntTag(null, 4)));
+        IntArrayTag array = (IntArrayTag) new IntArrayTag("array", 1, 2).freeze();
+        array.getValues()[0] = 5;
+        Assert.assertEquals(1, array.getValues()[0]);
+
+        // Copies share all tags that were not replaced
+        CompoundTag copy = template.with("LevelName", new StringTag("LevelName", "Copy"));
+        Assert.assertEquals("Copy", copy.getString("LevelName"));
+        Assert.assertNotEquals("Copy", template.getString("LevelName"));
+        Assert.assertSame(abilities, copy.getCompound("abilities"));
+        Assert.assertEquals(template.getElements().size(), copy.getElements().size());
+        Assert.assertEquals(NBTUtil.write(template).length + 4 - template.getString("LevelName").length(), NBTUtil.write(copy).length);
+        Assert.assertEquals(template.getElements().size() + 1, copy.with("Extra", new IntTag("Extra", 1)).getElements().size());
+        Assert.assertFalse(copy.without("LevelName").contains("LevelName"));
+        Assert.assertSame(copy, copy.without("Missing"));
+        try {
+            new CompoundTag("", new ArrayList<>()).with("a", new IntTag("a", 1));
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+
+        ListTag<IntTag> changedInts = ints.with(1, new IntTag(null, 5)).withAdded(new IntTag(null, 6));
+        Assert.assertEquals(ListTag.ofInts("ints", 1, 5, 3, 6), changedInts);
+        Assert.assertEquals(ListTag.ofInts("ints", 1, 2, 3), ints);
+        ListTag<CompoundTag> compounds = new ListTag<>("compounds", TagType.TAG_COMPOUND, new ArrayList<>(Collections.singletonList(abilities))).freeze();
+        Assert.assertSame(abilities, compounds.withAdded(abilities).getElements().get(1));
+
+        // Mutable copies only copy the tag itself, and frozen children are replaced when they are changed
+        CompoundTag mutable = template.toMutable();
+        Assert.assertFalse(mutable.isFrozen());
+        Assert.assertSame(abilities, mutable.getCompound("abilities"));
+        mutable.putInt("SpawnX", 12345);
+        Assert.assertEquals(12345, mutable.getInt("SpawnX", 0));
+        Assert.assertNotEquals(12345, template.getInt("SpawnX", 0));
+        mutable.change("abilities", abilities.toMutable());
+        mutable.getCompound("abilities").putByte("flying", (byte) 1);
+        Assert.assertEquals(0, abilities.getByte("flying", (byte) 0));
+        ints.toMutable().setInt(0, 5);
+        Assert.assertEquals(1, ints.getInt(0));
+    }
+
+    private static void assertFrozen(Runnable action) {
+        try {
+            action.run();
+            Assert.fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    /**
+     * Tests sharing tag names through a name cache
+     */
+    @Test
+    public void testNameCache() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        NameCache cache = new NameCache(1024);
+
+        NBTInput input = NBTInput.of(originalLevelDat);
+        input.setNameCache(cache);
+        input.skip(8);
+        CompoundTag first = Tag.read(input).getAsCompound();
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(first.getElements().size() + first.getCompound("abilities").getElements().size()
+                + 1, cache.getMissCount(), 10);
+
+        // A second read resolves all names to the same instances, from a stream as well
+        input = NBTInput.of(new ByteArrayInputStream(originalLevelDat));
+        input.setNameCache(cache);
+        input.skip(8);
+        CompoundTag second = Tag.read(input).getAsCompound();
+        Assert.assertEquals(first, second);
+        for (int i = 0; i < first.getElements().size(); i++) {
+            Assert.assertSame(first.getElements().get(i).getName(), second.getElements().get(i).getName());
+        }
+        Assert.assertEquals(cache.getMissCount(), cache.getHitCount());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0);
+        cache.resetStatistics();
+        Assert.assertEquals(0, cache.getHitRate(), 0);
+
+        // The default cache is used by NBTUtil, and names of other formats match their raw bytes as well
+        NameCache.setDefault(cache);
+        try {
+            Tag bigEndian = NBTUtil.read(NBTFormat.BIG_ENDIAN, NBTUtil.write(first, NBTFormat.BIG_ENDIAN));
+            Assert.assertEquals(first, bigEndian);
+            Assert.assertSame(first.getElements().get(0).getName(), bigEndian.getAsCompound().getElements().get(0).getName());
+            Assert.assertEquals(1, cache.getHitRate(), 0);
+        } finally {
+            NameCache.setDefault(null);
+        }
+
+        // A small cache stays bounded, and long names are not cached
+        NameCache small = new NameCache(2);
+        CompoundTag names = new CompoundTag("", new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            names.putInt("name" + i, i);
+        }
+        names.putInt(String.join("", Collections.nCopies(100, "a")), 0);
+        input = NBTInput.of(NBTUtil.write(names));
+        input.setNameCache(small);
+        Assert.assertEquals(names, Tag.read(input));
+        Assert.assertEquals(101, small.getMissCount());
+    }
+
+    /**
+     * Tests encoding and decoding strings in UTF-8 and Modified UTF-8
+     */
+    @Test
+    public void testStringCodec() throws IOException {
+        String[] strings = {"", "minecraft:stone", "caf\u00e9", "\u20ac100", "smile \uD83D\uDE00", "nul\u0000byte",
+                String.join("", Collections.nCopies(10000, "\u00e9a"))};
+        for (String string : strings) {
+            // Bedrock formats use standard UTF-8
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(utf8.length, StringCodec.encodedLength(string, false));
+            Assert.assertArrayEquals(utf8, StringCodec.encode(string, false));
+            ByteArrayNBTOutput output = new ByteArrayNBTOutput(16, NBTFormat.NETWORK_VARINT);
+            output.writeString(string);
+            NBTInput input = NBTInput.of(output.toByteArray(), NBTFormat.NETWORK_VARINT);
+            Assert.assertEquals(utf8.length, input.readStringLength());
+            input.setPosition(0);
+            Assert.assertEquals(string, input.readString());
+
+            // Java Edition uses Modified UTF-8, exactly like DataOutput.writeUTF
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new DataOutputStream(expected).writeUTF(string);
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            NBTOutput streamOutput = NBTOutput.of(stream, NBTFormat.BIG_ENDIAN);
+            streamOutput.writeString(string);
+            streamOutput.flush();
+            Assert.assertArrayEquals(expected.toByteArray(), stream.toByteArray());
+            Assert.assertEquals(expected.size() - 2, StringCodec.encodedLength(string, true));
+            Assert.assertEquals(string, NBTInput.of(new ByteArrayInputStream(stream.toByteArray()), NBTFormat.BIG_ENDIAN).readString());
+
+            // Direct buffers are decoded without a backing array
+            for (NBTFormat format : NBTFormat.values()) {
+                StringTag tag = new StringTag("name", string);
+                byte[] bytes = NBTUtil.write(tag, format);
+                Assert.assertEquals(bytes.length, tag.serializedSize(format));
+                ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+                direct.put(bytes).flip();
+                Assert.assertEquals(tag, NBTUtil.read(format, direct));
+            }
+        }
+
+        // Unpaired surrogates are replaced in UTF-8, but kept in Modified UTF-8
+        Assert.assertEquals("a?", NBTUtil.read(NBTFormat.LITTLE_ENDIAN, NBTUtil.write(new StringTag("s", "a\uD800"), NBTFormat.LITTLE_ENDIAN)).getAsString().getValue());
+        Assert.assertEquals("a\uD800", NBTUtil.read(NBTFormat.BIG_ENDIAN, NBTUtil.write(new StringTag("s", "a\uD800"), NBTFormat.BIG_ENDIAN)).getAsString().getValue());
+
+        // Transcoding re-encodes strings and names between UTF-8 and Modified UTF-8
+        CompoundTag compound = new CompoundTag("n\u0000me", new ArrayList<>());
+        compound.putString("smile \uD83D\uDE00", "nul\u0000byte \uD83D\uDE00");
+        byte[] bigEndian = NBTUtil.transcode(NBTFormat.LITTLE_ENDIAN, NBTFormat.BIG_ENDIAN, NBTUtil.write(compound));
+        Assert.assertArrayEquals(NBTUtil.write(compound, NBTFormat.BIG_ENDIAN), bigEndian);
+        Assert.assertEquals(compound, NBTUtil.read(NBTFormat.BIG_ENDIAN, bigEndian));
+        Tag extracted = NBTPath.compile("smile \uD83D\uDE00").extract(NBTInput.of(bigEndian, NBTFormat.BIG_ENDIAN));
+        Assert.assertEquals("nul\u0000byte \uD83D\uDE00", extracted.getAsString().getValue());
+    }
+
+    /**
+     * Tests reading and writing consecutive root tags, like a Bedrock block palette
+     */
+    @Test
+    public void testConcatenatedRoots() {
+        List<Tag> palette = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CompoundTag block = new CompoundTag("", new ArrayList<>());
+            block.putString("name", "minecraft:block_" + i);
+            block.add(new CompoundTag("states", new ArrayList<>()));
+            block.putInt("version", 17959425 + i);
+            palette.add(block);
+        }
+
+        for (NBTFormat format : NBTFormat.values()) {
+            byte[] bytes = NBTUtil.writeConcatenated(palette, format);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            Assert.assertEquals(palette, NBTUtil.readConcatenated(format, buffer));
+            Assert.assertEquals(bytes.length, buffer.position());
+
+            // Every root knows where it was stored
+            Iterator<NBTRoot> iterator = NBTUtil.iterate(format, ByteBuffer.wrap(bytes));
+            int offset = 0;
+            for (Tag tag : palette) {
+                NBTRoot root = iterator.next();
+                Assert.assertEquals(tag, root.getTag());
+                Assert.assertEquals(offset, root.getOffset());
+                Assert.assertEquals(tag.serializedSize(format), root.getLength());
+                offset += root.getLength();
+            }
+            Assert.assertFalse(iterator.hasNext());
+
+            List<Tag> parallel = NBTUtil.stream(format, ByteBuffer.wrap(bytes), true)
+                    .map(NBTRoot::getTag).collect(Collectors.toList());
+            Assert.assertEquals(palette, parallel);
+        }
+
+        // The single tag format is a sequence of one root
+        Assert.assertArrayEquals(NBTUtil.write(palette.get(0)), NBTUtil.writeConcatenated(palette.subList(0, 1)));
+        Assert.assertTrue(NBTUtil.readConcatenated(ByteBuffer.allocate(0)).isEmpty());
+
+        // Trailing bytes that do not form a tag are rejected
+        byte[] bytes = NBTUtil.writeConcatenated(palette);
+        try {
+            NBTUtil.readConcatenated(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length + 1)));
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        try {
+            NBTUtil.stream(NBTFormat.LITTLE_ENDIAN, ByteBuffer.wrap(bytes, 0, bytes.length - 1), true).count();
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    /**
+     * Tests decoding and encoding Bedrock sub-chunks
+     */
+    @Test
+    public void testSubChunk() throws IOException {
+        CompoundTag air = block("minecraft:air");
+        CompoundTag stone = block("minecraft:stone");
+
+        // A sub-chunk with 4 bits per block and a duplicate palette entry, as Bedrock writes it
+        ByteArrayNBTOutput output = new ByteArrayNBTOutput();
+        output.writeByte(8);
+        output.writeByte(1);
+        output.writeByte(4 << 1);
+        for (int word = 0; word < 512; word++) {
+            // Blocks 8 * word up to 8 * word + 7, lowest bits first
+            output.writeInt(word == 0 ? 0x00000210 : 0);
+        }
+        output.writeInt(3);
+        air.write(output);
+        stone.write(output);
+        block("minecraft:stone").write(output);
+        SubChunk subChunk = SubChunk.read(output.toByteArray());
+
+        SubChunkStorage storage = subChunk.getStorages().get(0);
+        Assert.assertEquals(2, storage.getPalette().size());
+        Assert.assertEquals(air, storage.getBlock(0, 0, 0));
+        Assert.assertEquals(stone, storage.getBlock(0, 1, 0));
+        Assert.assertEquals(stone, storage.getBlock(0, 2, 0));
+        Assert.assertEquals(air, storage.getBlock(15, 15, 15));
+        Assert.assertTrue(storage.getBlock(0, 1, 0).isFrozen());
+
+        // Two used entries take a single bit per block
+        byte[] bytes = subChunk.getBytes();
+        Assert.assertEquals(1 << 1, bytes[2]);
+        Assert.assertEquals(3 + 128 * 4 + 4 + NBTUtil.writeConcatenated(storage.getPalette()).length, bytes.length);
+        Assert.assertArrayEquals(storage.getIndices(), SubChunk.read(bytes).getStorages().get(0).getIndices());
+
+        // Palette sizes that do not divide the words, and unused entries
+        SubChunkStorage filled = new SubChunkStorage(air);
+        for (int i = 0; i < 7; i++) {
+            filled.setBlock(i, i, i, block("minecraft:block_" + i));
+        }
+        filled.setBlock(0, 0, 0, air);
+        Assert.assertEquals(8, filled.getPalette().size());
+        SubChunk versioned = new SubChunk(9, -4, new ArrayList<>(Collections.singletonList(filled)));
+        bytes = versioned.getBytes();
+        Assert.assertEquals(-4, bytes[2]);
+        Assert.assertEquals(3 << 1, bytes[3]);
+        SubChunk read = SubChunk.read(bytes);
+        Assert.assertEquals(-4, read.getY());
+        SubChunkStorage readStorage = read.getStorages().get(0);
+        Assert.assertEquals(7, readStorage.getPalette().size());
+        for (int i = 0; i < SubChunkStorage.SIZE; i++) {
+            Assert.assertEquals(filled.getPalette().get(filled.getIndices()[i]), readStorage.getPalette().get(readStorage.getIndices()[i]));
+        }
+
+        // A single block takes no bits at all
+        bytes = new SubChunk(1, 0, Collections.singletonList(new SubChunkStorage(air))).getBytes();
+        Assert.assertEquals(2 + NBTUtil.write(air).length, bytes.length);
+        Assert.assertEquals(air, SubChunk.read(bytes).getStorages().get(0).getBlock(3, 4, 5));
+
+        try {
+            SubChunk.read((byte) 8, (byte) 1, (byte) 1);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    /**
+     * Tests the cache of palette compounds
+     */
+    @Test
+    public void testPaletteCache() throws IOException {
+        List<Tag> blocks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            blocks.add(block("minecraft:block_" + i));
+        }
+        byte[] bytes = NBTUtil.writeConcatenated(blocks);
+
+        // Repeated compounds are decoded once, and shared
+        PaletteCache cache = new PaletteCache(1024);
+        NBTInput input = NBTInput.of(bytes);
+        List<CompoundTag> first = new ArrayList<>();
+        while (input.hasRemaining()) {
+            first.add(cache.read(input));
+        }
+        Assert.assertEquals(blocks, first);
+        Assert.assertTrue(first.get(0).isFrozen());
+        input = NBTInput.of(bytes);
+        for (CompoundTag block : first) {
+            Assert.assertSame(block, cache.read(input));
+        }
+        Assert.assertFalse(input.hasRemaining());
+        Assert.assertEquals(5, cache.getHitCount());
+        Assert.assertEquals(5, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0);
+
+        // The same bytes in another format are another compound
+        Assert.assertNotSame(first.get(0), cache.read(NBTInput.of(NBTUtil.write(blocks.get(0), NBTFormat.BIG_ENDIAN), NBTFormat.BIG_ENDIAN)));
+        // Streams are not cached
+        Assert.assertEquals(blocks.get(0), cache.read(NBTInput.of(new ByteArrayInputStream(bytes))));
+        Assert.assertEquals(6, cache.getMissCount());
+
+        // A single group of four evicts the least recently used compound
+        PaletteCache small = new PaletteCache(4);
+        for (int i = 0; i < 4; i++) {
+            small.read(NBTInput.of(NBTUtil.write(blocks.get(i))));
+        }
+        CompoundTag kept = small.read(NBTInput.of(NBTUtil.write(blocks.get(0))));
+        small.read(NBTInput.of(NBTUtil.write(blocks.get(4))));
+        Assert.assertEquals(1, small.getEvictionCount());
+        Assert.assertSame(kept, small.read(NBTInput.of(NBTUtil.write(blocks.get(0)))));
+        small.read(NBTInput.of(NBTUtil.write(blocks.get(1))));
+        Assert.assertEquals(2, small.getHitCount());
+        Assert.assertEquals(6, small.getMissCount());
+        small.resetStatistics();
+        small.clear();
+        Assert.assertEquals(0, small.getEvictionCount());
+
+        // Sub-chunks share the palette entries of the cache
+        SubChunkStorage storage = new SubChunkStorage(block("minecraft:air"));
+        storage.setBlock(1, 2, 3, block("minecraft:block_0"));
+        byte[] subChunk = new SubChunk(8, 0, Collections.singletonList(storage)).getBytes();
+        SubChunkStorage read = SubChunk.read(subChunk).getStorages().get(0);
+        Assert.assertEquals(first.get(0), read.getBlock(1, 2, 3));
+        PaletteCache.setDefault(cache);
+        try {
+            read = SubChunk.read(subChunk).getStorages().get(0);
+        } finally {
+            PaletteCache.setDefault(null);
+        }
+        Assert.assertSame(first.get(0), read.getBlock(1, 2, 3));
+        Assert.assertSame(read.getPalette().get(1), SubChunkStorage.read(ByteBuffer.wrap(subChunk, 2, subChunk.length - 2), cache).getPalette().get(1));
+        Assert.assertEquals(1, read.getPaletteIndex(block("minecraft:block_0")));
+    }
+
+    /**
+     * Tests the cached hashes of compounds and lists, and comparing compounds regardless of order
+     */
+    @Test
+    public void testStructuralHash() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        CompoundTag levelDat = NBTUtil.read(true, originalLevelDat).getAsCompound();
+        CompoundTag copy = NBTUtil.read(true, originalLevelDat).getAsCompound();
+        Assert.assertEquals(levelDat.hashCode(), copy.hashCode());
+        Assert.assertEquals(levelDat, copy);
+        Map<Tag, String> map = new HashMap<>();
+        map.put(levelDat, "level");
+        Assert.assertEquals("level", map.get(copy));
+
+        // Changes to nested tags change the hash
+        int hash = levelDat.hashCode();
+        ByteTag nested = (ByteTag) levelDat.getCompound("abilities").getByName("mayfly").get();
+        nested.setValue((byte) (nested.getValue() + 1));
+        Assert.assertNotEquals(hash, levelDat.hashCode());
+        Assert.assertNotEquals(levelDat, copy);
+        nested.setValue((byte) (nested.getValue() - 1));
+        Assert.assertEquals(hash, levelDat.hashCode());
+        Assert.assertEquals(levelDat, copy);
+        copy.getCompound("abilities").putFloat("walkSpeed", 0.5f);
+        Assert.assertNotEquals(levelDat, copy);
+
+        // A tag that is held by multiple parents changes all of them
+        IntTag shared = new IntTag("shared", 1);
+        CompoundTag first = new CompoundTag("", new ArrayList<>(Collections.singletonList(shared)));
+        ListTag<CompoundTag> second = new ListTag<>("list", TagType.TAG_COMPOUND, new ArrayList<>());
+        second.getElements().add(new CompoundTag(null, new ArrayList<>(Collections.singletonList(shared))));
+        int firstHash = first.hashCode();
+        int secondHash = second.hashCode();
+        shared.setValue(2);
+        Assert.assertNotEquals(firstHash, first.hashCode());
+        Assert.assertNotEquals(secondHash, second.hashCode());
+        first.remove("shared");
+        secondHash = second.hashCode();
+        shared.setValue(3);
+        Assert.assertNotEquals(secondHash, second.hashCode());
+        Assert.assertEquals(new ListTag<>("list", TagType.TAG_COMPOUND, Collections.singletonList(
+                new CompoundTag(null, Collections.singletonList(new IntTag("shared", 3))))), second);
+
+        // Parents that are thrown away are not kept alive by the tags they held
+        WeakReference<CompoundTag> discarded = new WeakReference<>(
+                new CompoundTag("discarded", Collections.singletonList(shared)));
+        for (int i = 0; i < 100 && discarded.get() != null; i++) {
+            System.gc();
+        }
+        Assert.assertNull(discarded.get());
+        shared.setValue(4);
+
+        // Children of lazily read trees change their parents once they are decoded
+        CompoundTag lazy = NBTUtil.readLazy(true, originalLevelDat).getAsCompound();
+        hash = lazy.hashCode();
+        int size = lazy.serializedSize();
+        lazy.getCompound("abilities").putInt("added", 1);
+        Assert.assertNotEquals(hash, lazy.hashCode());
+        Assert.assertEquals(size + 12, lazy.serializedSize());
+        Assert.assertEquals(NBTUtil.write(lazy).length, lazy.serializedSize());
+
+        // Names are part of the hash, and may be null
+        Assert.assertNotEquals(new IntTag("a", 1).hashCode(), new IntTag("b", 1).hashCode());
+        Assert.assertNotEquals(new IntTag(null, 1), new IntTag("a", 1));
+        Assert.assertNotEquals(new IntTag("a", 1), new IntTag(null, 1));
+
+        // Lists of primitive values are equal to lists of tags
+        ListTag<IntTag> values = ListTag.ofInts("list", 1, 2, 3);
+        ListTag<IntTag> tags = new ListTag<>("list", TagType.TAG_INT, new ArrayList<>(Arrays.asList(
+                new IntTag(null, 1), new IntTag(null, 2), new IntTag(null, 3))));
+        Assert.assertEquals(values, tags);
+        Assert.assertEquals(values.hashCode(), tags.hashCode());
+        values.setInt(2, 4);
+        Assert.assertNotEquals(values.hashCode(), tags.hashCode());
+        Assert.assertNotEquals(values, tags);
+        ListTag<FloatTag> floats = ListTag.ofFloats("floats", 1f);
+        hash = floats.hashCode();
+        floats.setFloat(0, 2f);
+        Assert.assertNotEquals(hash, floats.hashCode());
+
+        // Frozen tags keep their hash
+        CompoundTag frozen = NBTUtil.read(true, originalLevelDat).getAsCompound().freeze();
+        Assert.assertEquals(frozen.hashCode(), NBTUtil.read(true, originalLevelDat).hashCode());
+        Assert.assertEquals(frozen, NBTUtil.read(true, originalLevelDat));
+
+        // Compounds in another order
+        CompoundTag reversed = NBTUtil.read(true, originalLevelDat).getAsCompound();
+        reverse(reversed);
+        reverse(reversed.getCompound("abilities"));
+        Assert.assertNotEquals(frozen, reversed);
+        Assert.assertTrue(frozen.equalsIgnoreOrder(reversed));
+        Assert.assertTrue(reversed.equalsIgnoreOrder(frozen));
+        reversed.getCompound("abilities").putFloat("walkSpeed", 0.5f);
+        Assert.assertFalse(frozen.equalsIgnoreOrder(reversed));
+
+        CompoundTag inList = new CompoundTag("", new ArrayList<>());
+        inList.add(new ListTag<>("list", TagType.TAG_COMPOUND, new ArrayList<>(Collections.singletonList(reversed))));
+        CompoundTag inOtherList = new CompoundTag("", new ArrayList<>());
+        inOtherList.add(new ListTag<>("list", TagType.TAG_COMPOUND, new ArrayList<>(Collections.singletonList(reversed.toMutable()))));
+        reverse(inOtherList.getList("list").getElements().get(0).getAsCompound());
+        Assert.assertTrue(inList.equalsIgnoreOrder(inOtherList));
+
+        // Duplicate names are compared in order
+        CompoundTag duplicates = new CompoundTag("", new ArrayList<>(Arrays.asList(new IntTag("a", 1), new IntTag("a", 1))));
+        CompoundTag unique = new CompoundTag("", new ArrayList<>(Arrays.asList(new IntTag("a", 1), new IntTag("b", 1))));
+        Assert.assertFalse(duplicates.equalsIgnoreOrder(unique));
+        Assert.assertFalse(unique.equalsIgnoreOrder(duplicates));
+    }
+
+    /**
+     * Test computing, writing and applying diffs
+     */
+    @Test
+    public void testNBTDiff() throws IOException {
+        byte[] originalLevelDat = Files.readAllBytes(new File("./src/test/level.dat").toPath());
+        CompoundTag from = NBTUtil.read(true, originalLevelDat).getAsCompound();
+        List<CompoundTag> blocks = new ArrayList<>();
+        for (String name : Arrays.asList("minecraft:air", "minecraft:dirt")) {
+            CompoundTag block = new CompoundTag(null, new ArrayList<>());
+            block.putString("name", name);
+            blocks.add(block);
+        }
+        from.add(new ListTag<>("blocks", TagType.TAG_COMPOUND, blocks));
+        from.putInt("type.changed", 1);
+        byte[] fromBytes = NBTUtil.write(from, HeaderType.LEVEL_DAT);
+        Assert.assertTrue(NBTDiff.compute(from, NBTUtil.read(true, fromBytes)).isEmpty());
+
+        CompoundTag to = NBTUtil.read(true, fromBytes).getAsCompound();
+        to.getCompound("abilities").putFloat("walkSpeed", 0.5f);
+        to.remove("LevelName");
+        to.putString("added", "value");
+        to.change("type.changed", new StringTag("type.changed", "now a string"));
+        to.getList("blocks").getElements().get(1).getAsCompound().putString("name", "minecraft:stone");
+
+        NBTDiff diff = NBTDiff.compute(from, to);
+        Assert.assertEquals(5, diff.getChanges().size());
+        Map<String, ChangeType> types = new HashMap<>();
+        for (NBTChange change : diff.getChanges()) {
+            types.put(change.getPath().toString(), change.getType());
+        }
+        Assert.assertEquals(ChangeType.REMOVED, types.get("LevelName"));
+        Assert.assertEquals(ChangeType.ADDED, types.get("added"));
+        Assert.assertEquals(ChangeType.CHANGED, types.get("type.changed"));
+        Assert.assertEquals(ChangeType.CHANGED, types.get("abilities.walkSpeed"));
+        Assert.assertEquals(ChangeType.CHANGED, types.get("blocks[1].name"));
+
+        // The patch is much smaller than the tree, and names with dots survive
+        byte[] patch = diff.getBytes();
+        Assert.assertTrue(patch.length < fromBytes.length / 4);
+        NBTDiff read = NBTDiff.read(patch);
+        Assert.assertEquals(diff.toString(), read.toString());
+
+        // Apply to a mutable tree, a frozen tree and raw bytes
+        CompoundTag mutable = NBTUtil.read(true, fromBytes).getAsCompound();
+        Assert.assertSame(mutable, read.apply(mutable));
+        Assert.assertTrue(mutable.equalsIgnoreOrder(to));
+        CompoundTag frozen = NBTUtil.read(true, fromBytes).getAsCompound().freeze();
+        CompoundTag applied = read.apply(frozen).getAsCompound();
+        Assert.assertTrue(applied.isFrozen());
+        Assert.assertTrue(applied.equalsIgnoreOrder(to));
+        Assert.assertEquals(from, frozen);
+        Assert.assertSame(frozen.getList("lastOpenedWithVersion"), applied.getList("lastOpenedWithVersion"));
+        Assert.assertNotNull(applied.getList("lastOpenedWithVersion"));
+        byte[] patched = read.apply(fromBytes.clone(), true);
+        Assert.assertTrue(NBTUtil.read(true, patched).getAsCompound().equalsIgnoreOrder(to));
+        Assert.assertEquals(patched.length - 8, ByteBuffer.wrap(patched).order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+
+        // A diff does not apply to another tree
+        try {
+            diff.apply(to);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            diff.apply(NBTUtil.write(to), false);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        // The root itself is replaced
+        NBTDiff root = NBTDiff.compute(from, new IntTag("other", 1));
+        Assert.assertEquals(new IntTag("other", 1), NBTDiff.read(root.getBytes()).apply(from));
+        Assert.assertArrayEquals(NBTUtil.write(new IntTag("other", 1)), root.apply(NBTUtil.write(from), false));
+    }
+
+    private static void reverse(CompoundTag compound) {
+        List<Tag> elements = new ArrayList<>(compound.getElements());
+        Collections.reverse(elements);
+        compound.getElements().clear();
+        compound.getElements().addAll(elements);
+    }
+
+    private static CompoundTag block(String name) {
+        CompoundTag block = new CompoundTag("", new ArrayList<>());
+        block.putString("name", name);
+        block.add(new CompoundTag("states", new ArrayList<>()));
+        block.putInt("version", 17959425);
+        return block;
+    }
+}